@@ -28,11 +28,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,6 +44,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -187,6 +190,15 @@ public class Config extends Properties {
 
   String[] args; // our original (non-nullified) command line args
 
+  // the dirs we looked at while searching for project properties (only
+  // set while recording a ConfigSnapshot)
+  ArrayList<File> probedDirs;
+
+  // resolved ctors of instantiated classes, including the fallbacks. Values are
+  // soft so that they don't keep classes of discarded JPFClassLoaders alive
+  static final WeakHashMap<Class<?>,SoftReference<HashMap<String,Constructor<?>>>> ctorCache =
+    new WeakHashMap<Class<?>,SoftReference<HashMap<String,Constructor<?>>>>();
+
 
   /**
    * the standard Config constructor that processes the whole properties stack
@@ -196,20 +208,37 @@ public class Config extends Properties {
     this.args = args;
     String[] a = args.clone(); // we might nullify some of them
 
+    File snapshotDir = getSnapshotDir(a);
     String appProperties = getAppPropertiesLocation(a);
     String siteProperties = getSitePropertiesLocation(a, appProperties);
 
-    //--- the site properties
-    if (siteProperties != null){
-      loadProperties( siteProperties);
+    ConfigSnapshot snapshot = null;
+    if (snapshotDir != null){
+      snapshot = new ConfigSnapshot(snapshotDir, siteProperties, appProperties);
     }
 
-    //--- get the project properties from current dir + site configured extensions
-    loadProjectProperties();
+    if (snapshot == null || !snapshot.restore(this)){
+      if (snapshot != null){
+        probedDirs = new ArrayList<File>();
+      }
+
+      //--- the site properties
+      if (siteProperties != null){
+        loadProperties( siteProperties);
+      }
 
-    //--- the application properties
-    if (appProperties != null){
-      loadProperties( appProperties);
+      //--- get the project properties from current dir + site configured extensions
+      loadProjectProperties();
+
+      //--- the application properties
+      if (appProperties != null){
+        loadProperties( appProperties);
+      }
+
+      if (snapshot != null){
+        snapshot.store(this, probedDirs);
+        probedDirs = null;
+      }
     }
 
     //--- at last, the (rest of the) command line properties
@@ -252,6 +281,37 @@ public class Config extends Properties {
   }
 
 
+  /*
+   * the config snapshot has to be enabled before we load any properties, i.e.
+   * this can only be a command line arg "+jpf.config_cache[=<dir>]"
+   */
+  File getSnapshotDir (String[] args){
+    String key = "+jpf.config_cache";
+
+    for (int i=0; i<args.length; i++){
+      String a = args[i];
+      if (a != null && a.startsWith(key)){
+        String dir = null;
+
+        if (a.length() == key.length()){
+          dir = FileUtils.getUserDir("config").getPath();
+        } else if (a.charAt(key.length()) == '='){
+          dir = expandString(null, a.substring(key.length()+1));
+          if (FALSE.equals(normalize(dir))){
+            dir = null;
+          }
+        } else {
+          continue;
+        }
+
+        args[i] = null; // processed
+        return (dir != null) ? new File(dir) : null;
+      }
+    }
+
+    return null;
+  }
+
   String getAppPropertiesLocation(String[] args){
     String path = null;
 
@@ -479,6 +539,7 @@ public class Config extends Properties {
 
   protected void addJPFdirs (List<File> jpfDirs, File dir){
     while (dir != null) {
+      addProbedDir(dir);
       File jpfProp = new File(dir, "jpf.properties");
       if (jpfProp.isFile()) {
         registerJPFdir(jpfDirs, dir);
@@ -498,6 +559,7 @@ public class Config extends Properties {
   protected void addCurrentJPFdir(List<File> jpfDirs){
     File dir = new File(System.getProperty("user.dir"));
     while (dir != null) {
+      addProbedDir(dir);
       File jpfProp = new File(dir, "jpf.properties");
       if (jpfProp.isFile()) {
         registerJPFdir(jpfDirs, dir);
@@ -552,6 +614,12 @@ public class Config extends Properties {
     return true;
   }
 
+  protected void addProbedDir (File dir){
+    if (probedDirs != null && !probedDirs.contains(dir)){
+      probedDirs.add(dir);
+    }
+  }
+
   static File root = new File(File.separator);
 
   protected File getParentFile(File f){
@@ -909,6 +977,14 @@ public class Config extends Properties {
     return oldValue;
   }
 
+  /**
+   * restore an entry that is already expanded and normalized (no
+   * notification since this only happens during initialization)
+   */
+  void putResolved (String k, String v){
+    super.put(k, v);
+  }
+
   private Object put0 (String k, Object v){
     entrySequence.add(k);
     return super.put(k, v);
@@ -1942,26 +2018,18 @@ public class Config extends Properties {
       }
     }
 
-    while (o == null) {
-      try {
-        ctor = cls.getConstructor(argTypes);
-        o = ctor.newInstance(args);
-      } catch (NoSuchMethodException nmx) {
-         
-        if ((argTypes.length > 1) || ((argTypes.length == 1) && (argTypes[0] != Config.class))) {
-          // fallback 1: try a single Config param
-          argTypes = CONFIG_ARGTYPES;
-          args = CONFIG_ARGS;
+    if (o == null) {
+      ctor = getConstructor(key, cls, argTypes);
 
-        } else if (argTypes.length > 0) {
-          // fallback 2: try the default ctor
-          argTypes = NO_ARGTYPES;
-          args = NO_ARGS;
+      Class<?>[] ctorArgTypes = ctor.getParameterTypes();
+      if (ctorArgTypes.length == 0){
+        args = NO_ARGS;
+      } else if (!Arrays.equals(ctorArgTypes, argTypes)){
+        args = CONFIG_ARGS;
+      }
 
-        } else {
-          // Ok, there is no suitable ctor, bail out
-          throw new JPFConfigException(key, cls, "no suitable ctor found");
-        }
+      try {
+        o = ctor.newInstance(args);
       } catch (IllegalAccessException iacc) {
         throw new JPFConfigException(key, cls, "\n> ctor not accessible: "
             + getMethodSignature(ctor));
@@ -1999,6 +2067,61 @@ public class Config extends Properties {
     return type.cast(o); // safe according to above
   }
 
+  /**
+   * get the ctor we use to instantiate 'cls', which is the first one of
+   * <cls>(<argTypes>), <cls>(Config) and <cls>(). Since this is called for
+   * every instantiation and the fallbacks go through NoSuchMethodExceptions,
+   * we cache the resolved ctors
+   */
+  Constructor<?> getConstructor (String key, Class<?> cls, Class<?>[] argTypes) throws JPFConfigException {
+    String sig = Arrays.toString(argTypes);
+    HashMap<String,Constructor<?>> map = null;
+    Constructor<?> ctor;
+
+    synchronized (ctorCache){
+      SoftReference<HashMap<String,Constructor<?>>> ref = ctorCache.get(cls);
+      if (ref != null){
+        map = ref.get();
+      }
+      if (map == null){
+        map = new HashMap<String,Constructor<?>>();
+        ctorCache.put(cls, new SoftReference<HashMap<String,Constructor<?>>>(map));
+      }
+
+      ctor = map.get(sig);
+      if (ctor != null){
+        return ctor;
+      }
+    }
+
+    Class<?>[] types = argTypes;
+    while (ctor == null){
+      try {
+        ctor = cls.getConstructor(types);
+      } catch (NoSuchMethodException nmx) {
+
+        if ((types.length > 1) || ((types.length == 1) && (types[0] != Config.class))) {
+          // fallback 1: try a single Config param
+          types = CONFIG_ARGTYPES;
+
+        } else if (types.length > 0) {
+          // fallback 2: try the default ctor
+          types = NO_ARGTYPES;
+
+        } else {
+          // Ok, there is no suitable ctor, bail out
+          throw new JPFConfigException(key, cls, "no suitable ctor found");
+        }
+      }
+    }
+
+    synchronized (ctorCache){
+      map.put(sig, ctor);
+    }
+
+    return ctor;
+  }
+
   public String getMethodSignature(Constructor<?> ctor) {
     StringBuilder sb = new StringBuilder(ctor.getName());
     sb.append('(');
@@ -0,0 +1,262 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf;
+
+import gov.nasa.jpf.util.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a persistent snapshot of the resolved Config entries that result from the
+ * site, project and application properties, i.e. everything except the
+ * command line args (which are always processed, since they usually change).
+ *
+ * Snapshots are stored in files that are keyed by the site and application
+ * properties locations, the current dir and the host classpath (which determine
+ * the project dirs we scan). A snapshot is valid if none of its source
+ * files has changed, and none of the directories we probed for jpf.properties
+ * files was modified (which would be the case if a jpf.properties got added
+ * or removed). If it is valid, we skip the project dir scanning, reading,
+ * @include processing and ${..} expansion of all property files.
+ *
+ * Since we need to know about this before we load any property file, it can
+ * only be enabled from the command line, with "+jpf.config_cache[=<dir>]".
+ *
+ * Snapshot entries are used as if they came from the property files, i.e.
+ * they can set native_classpath, listeners etc. We therefore only use
+ * snapshot files and dirs that are owned by the current user and are not
+ * writable by anybody else (the default dir is ${user.home}/.jpf/config),
+ * and only snapshots that record the property files they were created from
+ */
+public class ConfigSnapshot {
+
+  static final int MAGIC = 0x4a50460c;
+  static final int VERSION = 1;
+
+  File file;
+
+  public ConfigSnapshot (File dir, String siteProperties, String appProperties){
+    file = new File(dir, "config-" + computeKey(siteProperties, appProperties) + ".snap");
+  }
+
+  public File getFile (){
+    return file;
+  }
+
+  static String computeKey (String siteProperties, String appProperties){
+    try {
+      MessageDigest md = MessageDigest.getInstance("MD5");
+
+      update(md, siteProperties);
+      update(md, appProperties);
+      update(md, System.getProperty("user.dir"));
+      update(md, System.getProperty("java.class.path"));
+
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest()){
+        sb.append(Integer.toHexString((b >> 4) & 0xf));
+        sb.append(Integer.toHexString(b & 0xf));
+      }
+      return sb.toString();
+
+    } catch (NoSuchAlgorithmException nsax){
+      // MD5 is a required algorithm, we can't get here
+      throw new JPFException(nsax);
+    }
+  }
+
+  static void update (MessageDigest md, String s){
+    if (s != null){
+      for (int i=0; i<s.length(); i++){
+        char c = s.charAt(i);
+        md.update((byte)(c >> 8));
+        md.update((byte)c);
+      }
+    }
+    md.update((byte)0);
+  }
+
+  /**
+   * if we have a valid snapshot, replace all entries and sources of 'config'
+   * with it and return true
+   */
+  public boolean restore (Config config){
+    if (!file.isFile()){
+      return false;
+    }
+
+    if (!FileUtils.isPrivate(file.getParentFile()) || !FileUtils.isPrivate(file)){
+      config.log("ignoring config snapshot that is not private to the current user: " + file.getPath());
+      return false;
+    }
+
+    try {
+      DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION){
+          config.log("not a config snapshot: " + file.getPath());
+          return false;
+        }
+
+        int nSources = in.readInt();
+        if (nSources <= 0){
+          config.log("ignoring config snapshot without sources: " + file.getPath());
+          return false;
+        }
+        ArrayList<Object> sources = new ArrayList<Object>(nSources);
+        for (int i=0; i<nSources; i++){
+          File f = new File(in.readUTF());
+          long lastModified = in.readLong();
+          long length = in.readLong();
+          if (f.lastModified() != lastModified || f.length() != length){
+            config.log("config snapshot outdated by source: " + f.getPath());
+            return false;
+          }
+          sources.add(f);
+        }
+
+        int nDirs = in.readInt();
+        for (int i=0; i<nDirs; i++){
+          File dir = new File(in.readUTF());
+          long lastModified = in.readLong();
+          if (dir.lastModified() != lastModified){
+            config.log("config snapshot outdated by dir: " + dir.getPath());
+            return false;
+          }
+        }
+
+        int nSeq = in.readInt();
+        ArrayList<String> seq = new ArrayList<String>(nSeq);
+        for (int i=0; i<nSeq; i++){
+          seq.add(in.readUTF());
+        }
+
+        int nEntries = in.readInt();
+        String[] entries = new String[nEntries*2];
+        for (int i=0; i<entries.length; i++){
+          entries[i] = in.readUTF();
+        }
+
+        //--- everything is up-to-date, restore
+        config.log("restoring config snapshot: " + file.getPath());
+
+        config.clear();
+        config.entrySequence.clear();
+        config.entrySequence.addAll(seq);
+        config.sources.clear();
+        config.sources.addAll(sources);
+        for (int i=0; i<entries.length; i+=2){
+          config.putResolved(entries[i], entries[i+1]);
+        }
+
+        return true;
+
+      } finally {
+        in.close();
+      }
+
+    } catch (IOException iox){
+      config.log("cannot read config snapshot: " + file.getPath() + " : " + iox.getMessage());
+    }
+
+    return false;
+  }
+
+  /**
+   * store the current state of 'config', which has to be initialized from
+   * property files only. Failing to do so is not an error, we just don't
+   * have a snapshot in the next run
+   */
+  public void store (Config config, List<File> probedDirs){
+    if (config.sources.isEmpty()){
+      return; // nothing to check if it has changed, restore() would reject it
+    }
+    for (Object src : config.sources){
+      if (!(src instanceof File)){
+        return; // we can't check if it has changed
+      }
+    }
+
+    File dir = file.getParentFile();
+    if (!FileUtils.ensurePrivateDir(dir)){
+      config.log("config snapshot dir does not exist or is not private: " + dir.getPath());
+      return;
+    }
+
+    // write to a temp file first, so that concurrent runs never see partial snapshots
+    File tmp = new File(file.getPath() + ".tmp" + System.nanoTime());
+    try {
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(config.sources.size());
+        for (Object src : config.sources){
+          File f = (File)src;
+          out.writeUTF(f.getPath());
+          out.writeLong(f.lastModified());
+          out.writeLong(f.length());
+        }
+
+        out.writeInt(probedDirs.size());
+        for (File d : probedDirs){
+          out.writeUTF(d.getPath());
+          out.writeLong(d.lastModified());
+        }
+
+        out.writeInt(config.entrySequence.size());
+        for (String k : config.entrySequence){
+          out.writeUTF(k);
+        }
+
+        out.writeInt(config.size());
+        for (Map.Entry<Object,Object> e : config.entrySet()){
+          out.writeUTF((String)e.getKey());
+          out.writeUTF((String)e.getValue());
+        }
+
+      } finally {
+        out.close();
+      }
+
+      if (!tmp.renameTo(file)){
+        tmp.delete();
+      } else {
+        config.log("stored config snapshot: " + file.getPath());
+      }
+
+    } catch (IOException iox){
+      config.log("cannot store config snapshot: " + file.getPath() + " : " + iox.getMessage());
+      tmp.delete();
+    }
+  }
+}
@@ -42,6 +42,15 @@ public class Error {
     threadList = l;
   }
 
+  /**
+   * errors that are replayed from a ResultCache don't have a path or threads
+   */
+  Error (int id, Property prop, String details) {
+    this.id = id;
+    property = prop;
+    errorMessage = details;
+  }
+
   public int getId() {
     return id;
   }
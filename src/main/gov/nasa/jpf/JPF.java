@@ -105,6 +105,9 @@ public class JPF implements Runnable {
   /** the report generator */
   Reporter reporter;
 
+  /** the (optional) persistent verification result cache */
+  ResultCache resultCache;
+
   Status status = Status.NEW;
 
   /** a list of listeners that get automatically added from VM, Search or Reporter initialization */
@@ -290,6 +293,11 @@ public class JPF implements Runnable {
       }
       
       addListeners();
+
+      if (config.getBoolean("jpf.result_cache", false)){
+        resultCache = new ResultCache(config);
+        addListener(resultCache);
+      }
       
       config.addChangeListener(new ConfigListener());
       
@@ -612,10 +620,21 @@ public class JPF implements Runnable {
     RunRegistry.getDefaultRegistry().reset();
 
     if (isRunnable()) {
+      if (resultCache != null){
+        if (resultCache.replay(this)){
+          status = Status.DONE;
+          config.jpfRunTerminated();
+          return;
+        }
+        resultCache.startRecording();
+      }
+
+      boolean isCompleted = false;
       try {
         if (vm.initialize()) {
           status = Status.RUNNING;
           search.search();
+          isCompleted = true;
         }
       } catch (OutOfMemoryError oom) {
         
@@ -658,6 +677,10 @@ public class JPF implements Runnable {
       } finally {
         status = Status.DONE;
 
+        if (resultCache != null){
+          resultCache.stopRecording(this, isCompleted);
+        }
+
         config.jpfRunTerminated();
         cleanUp();        
       }
@@ -0,0 +1,337 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf;
+
+import gov.nasa.jpf.util.FileUtils;
+import gov.nasa.jpf.util.JPFLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * a resident JPF server that runs verification jobs it receives over a local
+ * socket, so that consecutive jobs don't have to start a new host VM and
+ * load the JPF classes again. Jobs are sent by gov.nasa.jpf.tool.RunDaemonClient.
+ *
+ * Each job gets its own Config and JPF object, i.e. jobs are as isolated as
+ * consecutive JPF runs within the same process (as in TestJPF). In particular,
+ * each job still creates its own ClassInfo universe, i.e. it has to load and
+ * initialize the system and model classes of the SUT again. The only JPF
+ * cache that survives jobs is the process wide constant pool cache
+ * (vm.cp_cache), which we turn on for all jobs that don't explicitly set it.
+ * Since JPF uses static VM state, jobs are executed one at a time, in order
+ * of arrival.
+ *
+ * The daemon is a JPFShell, i.e. it can be started with
+ *
+ *   > bin/jpf +shell=gov.nasa.jpf.JPFDaemon [+jpf.daemon.port=<port>]
+ *
+ * Since the daemon runs arbitrary jobs with the permissions of its owner,
+ * listening on the loopback interface is not enough - other local users could
+ * connect. When the socket is opened, the daemon therefore writes a random
+ * token to ${user.home}/.jpf/daemon/<port>.token, which is only readable by the
+ * owner. Each connection has to start with this token, otherwise it is
+ * dropped without a response. The token file is removed when the daemon
+ * terminates.
+ *
+ * The protocol is a simple sequence of DataStream records:
+ *
+ *   request:  UTF token, u4 nArgs, nArgs * UTF arg   (nArgs == -1 : shutdown)
+ *   response: {'O', u4 len, len * u1 output}*, 'X', u4 exitStatus
+ *
+ * Requests with more than MAX_ARGS arguments are rejected with a FAILED status
+ */
+public class JPFDaemon implements JPFShell {
+
+  static JPFLogger logger = JPF.getLogger("gov.nasa.jpf.JPFDaemon");
+
+  public static final int DEFAULT_PORT = 4242;
+
+  public static final int OUTPUT = 'O';
+  public static final int EXIT = 'X';
+  public static final int SHUTDOWN = -1;
+
+  // upper bound for the number of job arguments we accept
+  public static final int MAX_ARGS = 4096;
+
+  // job exit status values
+  public static final int NO_ERRORS = 0;
+  public static final int ERRORS = 1;
+  public static final int FAILED = 2;
+
+  // how long we wait for the token of a new connection
+  static final int TOKEN_TIMEOUT = 5000;
+
+  protected Config config;
+  protected ServerSocket server;
+  protected boolean useCpCache;
+
+  protected String token;
+  protected File tokenFile;
+
+  protected int nJobs;
+  protected volatile boolean done;
+
+  public JPFDaemon (Config config){
+    this.config = config;
+    useCpCache = config.getBoolean("jpf.daemon.cp_cache", true);
+  }
+
+  /**
+   * open the server socket, which only accepts local connections. Port 0
+   * gets an ephemeral port, see getPort()
+   */
+  public void open () throws IOException {
+    int port = config.getInt("jpf.daemon.port", DEFAULT_PORT);
+    server = new ServerSocket(port, 16, InetAddress.getByName(null));
+
+    try {
+      writeToken();
+    } catch (IOException iox){
+      server.close();
+      throw iox;
+    }
+  }
+
+  /**
+   * the location of the token file for a given port. This has to be kept in
+   * sync with RunDaemonClient, which can't use JPF types
+   */
+  public static File getTokenFile (int port){
+    return new File(FileUtils.getUserDir("daemon"), port + ".token");
+  }
+
+  protected void writeToken () throws IOException {
+    byte[] b = new byte[32];
+    new SecureRandom().nextBytes(b);
+
+    StringBuilder sb = new StringBuilder(b.length*2);
+    for (int i=0; i<b.length; i++){
+      sb.append(Character.forDigit((b[i] >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b[i] & 0xf, 16));
+    }
+    token = sb.toString();
+
+    File file = getTokenFile(server.getLocalPort());
+    if (!FileUtils.ensurePrivateDir(file.getParentFile())){
+      throw new IOException("daemon token dir does not exist or is not private: " + file.getParent());
+    }
+
+    // restrict the permissions before we write the token
+    file.delete();
+    if (!file.createNewFile()){
+      throw new IOException("cannot create daemon token file: " + file.getPath());
+    }
+    FileUtils.setPrivate(file);
+    if (!FileUtils.isPrivate(file)){
+      file.delete();
+      throw new IOException("cannot make daemon token file private: " + file.getPath());
+    }
+
+    FileUtils.setContents(file, token);
+    tokenFile = file;
+  }
+
+  public int getPort (){
+    return (server != null) ? server.getLocalPort() : -1;
+  }
+
+  public int getNumberOfJobs (){
+    return nJobs;
+  }
+
+  public void start (String[] args){
+    try {
+      if (server == null){
+        open();
+      }
+      logger.info("JPF daemon listening on port ", server.getLocalPort());
+      serve();
+
+    } catch (IOException iox){
+      logger.severe("JPF daemon terminated: ", iox.getMessage());
+    }
+  }
+
+  /**
+   * the server loop, terminated by a shutdown request
+   */
+  public void serve () throws IOException {
+    try {
+      while (!done){
+        Socket socket = server.accept();
+        try {
+          handleConnection(socket);
+        } catch (IOException iox){
+          logger.warning("JPF daemon connection failed: ", iox.getMessage());
+        } finally {
+          socket.close();
+        }
+      }
+    } finally {
+      server.close();
+      if (tokenFile != null){
+        tokenFile.delete();
+      }
+    }
+  }
+
+  protected boolean checkToken (Socket socket, DataInputStream in) throws IOException {
+    String t;
+
+    socket.setSoTimeout(TOKEN_TIMEOUT);
+    try {
+      t = in.readUTF();
+    } catch (SocketTimeoutException tx){
+      return false;
+    }
+    socket.setSoTimeout(0);
+
+    return (token != null) && MessageDigest.isEqual(token.getBytes("UTF-8"), t.getBytes("UTF-8"));
+  }
+
+  protected void handleConnection (Socket socket) throws IOException {
+    DataInputStream in = new DataInputStream( new BufferedInputStream( socket.getInputStream()));
+    DataOutputStream out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream()));
+
+    if (!checkToken(socket, in)){
+      logger.warning("JPF daemon dropped connection without valid token");
+      return;
+    }
+
+    int nArgs = in.readInt();
+    if (nArgs == SHUTDOWN){
+      done = true;
+      out.writeByte(EXIT);
+      out.writeInt(NO_ERRORS);
+      out.flush();
+      return;
+    }
+
+    PrintStream ps = new PrintStream( new RecordOutputStream(out), true);
+    int status;
+
+    if (nArgs < 0 || nArgs > MAX_ARGS){
+      logger.warning("JPF daemon rejected request with invalid number of arguments: ", nArgs);
+      ps.println("JPF daemon rejected request, invalid number of arguments: " + nArgs);
+      status = FAILED;
+
+    } else {
+      String[] args = new String[nArgs];
+      for (int i=0; i<nArgs; i++){
+        args[i] = in.readUTF();
+      }
+
+      nJobs++;
+      status = runJob(args, ps);
+    }
+    ps.flush();
+
+    out.writeByte(EXIT);
+    out.writeInt(status);
+    out.flush();
+  }
+
+  /**
+   * run a single job with the output redirected to 'ps'
+   */
+  protected int runJob (String[] args, PrintStream ps){
+    PrintStream sysOut = System.out;
+    PrintStream sysErr = System.err;
+
+    try {
+      System.setOut(ps);
+      System.setErr(ps);
+
+      Config conf = createJobConfig(args);
+      JPF jpf = new JPF(conf);
+      jpf.run();
+
+      return jpf.foundErrors() ? ERRORS : NO_ERRORS;
+
+    } catch (JPF.ExitException x){
+      ps.println("JPF terminated");
+      if (x.shouldReport()){
+        x.printStackTrace(ps);
+      }
+      return FAILED;
+
+    } catch (JPFException jx){
+      ps.println("JPF exception, terminating: " + jx.getMessage());
+      return FAILED;
+
+    } catch (Throwable t){ // the daemon has to survive whatever the job does
+      t.printStackTrace(ps);
+      return FAILED;
+
+    } finally {
+      System.setOut(sysOut);
+      System.setErr(sysErr);
+    }
+  }
+
+  protected Config createJobConfig (String[] args){
+    Config conf = new Config(args);
+
+    if (useCpCache && !conf.containsKey("vm.cp_cache")){
+      conf.setProperty("vm.cp_cache", "true");
+    }
+
+    return conf;
+  }
+
+  /**
+   * stream that turns each write into an output record
+   */
+  static class RecordOutputStream extends OutputStream {
+    DataOutputStream out;
+
+    RecordOutputStream (DataOutputStream out){
+      this.out = out;
+    }
+
+    public void write (int b) throws IOException {
+      write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    public void write (byte[] b, int off, int len) throws IOException {
+      if (len > 0){
+        out.writeByte(OUTPUT);
+        out.writeInt(len);
+        out.write(b, off, len);
+      }
+    }
+
+    public void flush () throws IOException {
+      out.flush();
+    }
+  }
+}
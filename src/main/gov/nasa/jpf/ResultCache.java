@@ -0,0 +1,496 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf;
+
+import gov.nasa.jpf.classfile.ClassFileContainer;
+import gov.nasa.jpf.classfile.ClassFileException;
+import gov.nasa.jpf.classfile.ClassPath;
+import gov.nasa.jpf.jvm.ClassInfo;
+import gov.nasa.jpf.jvm.JPF_gov_nasa_jpf_jvm_Verify;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.NoUncaughtExceptionsProperty;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.FileUtils;
+import gov.nasa.jpf.util.JPFLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a persistent cache for verification results, to avoid re-running JPF on
+ * unchanged targets (e.g. CI builds that re-verify the same models on each
+ * unrelated commit).
+ *
+ * Cache entries are stored in 'jpf.result_cache.dir', in files that are keyed
+ * by a hash of the config (which includes target and target_args) and the JPF
+ * code (the native_classpath entries). Each entry contains the names, containers
+ * and content hashes of all classfiles that were loaded during the run, plus
+ * the recorded System.out output and the errors.
+ *
+ * If there is an entry for the current key, we look up all its classes in the
+ * current classpath. If they still resolve to the same container and content,
+ * the run would not differ, and we just replay the output and errors instead
+ * of executing. Otherwise we run as usual, and store a new entry once the
+ * search is finished.
+ *
+ * Note that we can only replay error descriptions, not their paths (traces)
+ * or thread lists. Replayed errors use the original property class if it can
+ * be instantiated, so that clients checking property types still work. Results
+ * of runs that depend on non-deterministic constraints (e.g. time limits) are
+ * also cached - don't turn this on for such configurations.
+ *
+ * Runs that end with an uncaught exception are not cached, since clients such
+ * as TestJPF inspect the pending exception of the VM, which only exists if we
+ * actually execute. The same holds for runs that use Verify counters, which
+ * are host-side state the client might check after the run.
+ *
+ * Since a replayed entry determines the result of a run, we only use entries
+ * in dirs and files that are owned by the current user and not writable by
+ * others. The default dir is ${user.home}/.jpf/results
+ */
+public class ResultCache extends ListenerAdapter {
+
+  static JPFLogger logger = JPF.getLogger("gov.nasa.jpf.ResultCache");
+
+  static final int MAGIC = 0x4a50460b;
+  static final int VERSION = 1;
+
+  /**
+   * the property we use for replayed errors if we can't instantiate the
+   * original property class
+   */
+  public static class ReplayedProperty extends GenericProperty {
+    String clsName;
+    String explanation;
+    String errorMessage;
+
+    public ReplayedProperty (String clsName, String explanation, String errorMessage){
+      this.clsName = clsName;
+      this.explanation = explanation;
+      this.errorMessage = errorMessage;
+    }
+
+    public boolean check (Search search, JVM vm){
+      return true;
+    }
+
+    public String getPropertyClassName(){
+      return clsName;
+    }
+
+    public String getExplanation (){
+      return explanation;
+    }
+
+    public String getErrorMessage (){
+      return errorMessage;
+    }
+  }
+
+  static class ErrorEntry {
+    String propertyClsName;
+    String explanation;
+    String details;
+  }
+
+  Config config;
+  File file;
+
+  // classname -> container name of all classfiles loaded during this run
+  LinkedHashMap<String,ClassFileContainer> loaded = new LinkedHashMap<String,ClassFileContainer>();
+
+  // the output recording
+  PrintStream sysOut;
+  ByteArrayOutputStream output;
+
+  public ResultCache (Config config){
+    this.config = config;
+
+    File dir = new File(config.getString("jpf.result_cache.dir",
+                     FileUtils.getUserDir("results").getPath()));
+    file = new File(dir, "result-" + computeKey(config) + ".rc");
+  }
+
+  public File getFile (){
+    return file;
+  }
+
+  //--- key computation
+
+  static String computeKey (Config config){
+    try {
+      MessageDigest md = MessageDigest.getInstance("MD5");
+
+      String[] keys = new String[config.size()];
+      int i = 0;
+      for (Object k : config.keySet()){
+        keys[i++] = k.toString();
+      }
+      Arrays.sort(keys);
+      for (String k : keys){
+        if (!k.startsWith("jpf.result_cache")){ // doesn't change results
+          update(md, k);
+          update(md, config.getProperty(k));
+        }
+      }
+
+      // if JPF itself changes, results might change
+      String[] ncp = config.getCompactStringArray("native_classpath");
+      if (ncp != null){
+        for (String pn : ncp){
+          updateCodeBase(md, new File(pn));
+        }
+      }
+      CodeSource cs = JPF.class.getProtectionDomain().getCodeSource();
+      if (cs != null){
+        URL url = cs.getLocation();
+        if (url != null && "file".equals(url.getProtocol())){
+          updateCodeBase(md, new File(url.getPath()));
+        }
+      }
+
+      return toHex(md.digest());
+
+    } catch (NoSuchAlgorithmException nsax){
+      // MD5 is a required algorithm, we can't get here
+      throw new JPFException(nsax);
+    }
+  }
+
+  static void updateCodeBase (MessageDigest md, File f){
+    update(md, f.getPath());
+    if (f.isFile()){ // jar
+      update(md, Long.toString(f.lastModified()));
+      update(md, Long.toString(f.length()));
+    } else if (f.isDirectory()){
+      update(md, Long.toString(getLastModified(f)));
+    }
+  }
+
+  static long getLastModified (File dir){
+    long t = dir.lastModified();
+    File[] files = dir.listFiles();
+    if (files != null){
+      for (File f : files){
+        long tf = f.isDirectory() ? getLastModified(f) : f.lastModified();
+        if (tf > t){
+          t = tf;
+        }
+      }
+    }
+    return t;
+  }
+
+  static void update (MessageDigest md, String s){
+    if (s != null){
+      for (int i=0; i<s.length(); i++){
+        char c = s.charAt(i);
+        md.update((byte)(c >> 8));
+        md.update((byte)c);
+      }
+    }
+    md.update((byte)0);
+  }
+
+  static String toHex (byte[] digest){
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest){
+      sb.append(Integer.toHexString((b >> 4) & 0xf));
+      sb.append(Integer.toHexString(b & 0xf));
+    }
+    return sb.toString();
+  }
+
+  static byte[] digest (byte[] data){
+    try {
+      return MessageDigest.getInstance("MD5").digest(data);
+    } catch (NoSuchAlgorithmException nsax){
+      throw new JPFException(nsax);
+    }
+  }
+
+  //--- replay
+
+  /**
+   * check if we have an up-to-date entry for this run, and if so, replay its
+   * output and errors. Return true if the run can be skipped
+   */
+  public boolean replay (JPF jpf){
+    if (!file.isFile()){
+      return false;
+    }
+
+    if (!FileUtils.isPrivate(file.getParentFile()) || !FileUtils.isPrivate(file)){
+      logger.warning("ignoring result cache entry that is not private to the current user: ", file.getPath());
+      return false;
+    }
+
+    try {
+      DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION){
+          logger.warning("not a result cache entry: ", file.getPath());
+          return false;
+        }
+
+        ClassPath cp = ClassInfo.getModelClassPath();
+        int nClasses = in.readInt();
+        byte[] hash = new byte[16];
+
+        for (int i=0; i<nClasses; i++){
+          String clsName = in.readUTF();
+          String containerName = in.readUTF();
+          in.readFully(hash);
+
+          ClassPath.Match match = cp.findMatch(clsName);
+          if (match == null || !match.container.getName().equals(containerName)
+              || !Arrays.equals(hash, digest(match.getBytes()))){
+            logger.info("result cache entry outdated by class ", clsName);
+            return false;
+          }
+        }
+
+        int nErrors = in.readInt();
+        ErrorEntry[] errors = new ErrorEntry[nErrors];
+        for (int i=0; i<nErrors; i++){
+          ErrorEntry e = new ErrorEntry();
+          e.propertyClsName = in.readUTF();
+          e.explanation = readOptionalUTF(in);
+          e.details = readOptionalUTF(in);
+          errors[i] = e;
+        }
+
+        byte[] out = new byte[in.readInt()];
+        in.readFully(out);
+
+        //--- everything is up-to-date, replay
+        logger.info("replaying cached result ", file.getPath());
+
+        System.out.write(out, 0, out.length);
+        System.out.flush();
+
+        List<Error> list = jpf.getSearchErrors();
+        for (ErrorEntry e : errors){
+          Property p = createProperty(jpf.getSearch(), e);
+          list.add(new Error(list.size() + 1, p, e.details));
+        }
+
+        return true;
+
+      } finally {
+        in.close();
+      }
+
+    } catch (IOException iox){
+      logger.warning("cannot read result cache entry ", file.getPath(), " : ", iox.getMessage());
+    } catch (ClassFileException cfx){
+      logger.warning("error checking result cache entry ", file.getPath(), " : ", cfx.getMessage());
+    }
+
+    return false;
+  }
+
+  Property createProperty (Search search, ErrorEntry e){
+    try {
+      Class<?>[] argTypes = { Config.class, Search.class };
+      Object[] args = { config, search };
+      Property p = config.getInstance(null, e.propertyClsName, Property.class, argTypes, args);
+      if (p != null){
+        return p;
+      }
+    } catch (JPFConfigException cx){
+      // fall through, not all properties can be created outside their context
+    }
+
+    return new ReplayedProperty(e.propertyClsName, e.explanation, e.details);
+  }
+
+  static String readOptionalUTF (DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  static void writeOptionalUTF (DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null){
+      out.writeUTF(s);
+    }
+  }
+
+  //--- recording
+
+  public void classLoaded (JVM vm){
+    ClassInfo ci = vm.getLastClassInfo();
+    ClassFileContainer container = ci.getContainer();
+
+    // builtin and dynamically defined classes don't have a container, they
+    // are determined by the classes that were loaded from the classpath
+    if (container != null){
+      loaded.put(ci.getName(), container);
+    }
+  }
+
+  /**
+   * start recording System.out, which is where the Reporter output and the
+   * SUT output go by default
+   */
+  public void startRecording (){
+    sysOut = System.out;
+    output = new ByteArrayOutputStream();
+
+    OutputStream tee = new OutputStream(){
+      public void write (int b){
+        sysOut.write(b);
+        output.write(b);
+      }
+      public void write (byte[] b, int off, int len){
+        sysOut.write(b, off, len);
+        output.write(b, off, len);
+      }
+      public void flush (){
+        sysOut.flush();
+      }
+    };
+    System.setOut(new PrintStream(tee, true));
+  }
+
+  /**
+   * end of run - restore System.out, and store the entry if the run was
+   * completed. Failing to store is not an error, we just don't have a cached
+   * result in the next run
+   */
+  public void stopRecording (JPF jpf, boolean isCompleted){
+    if (sysOut == null){
+      return;
+    }
+
+    System.out.flush();
+    System.setOut(sysOut);
+    sysOut = null;
+
+    if (isCompleted){
+      store(jpf);
+    }
+    output = null;
+  }
+
+  /**
+   * we can't replay the pending exception of a run, which is what
+   * verifyUnhandledException() and verifyAssertionError() check
+   */
+  protected boolean hasUncaughtException (JPF jpf){
+    JVM vm = jpf.getVM();
+    if (vm != null && vm.getPendingException() != null){
+      return true;
+    }
+
+    for (Error e : jpf.getSearchErrors()){
+      if (e.getProperty() instanceof NoUncaughtExceptionsProperty){
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  protected void store (JPF jpf){
+    if (hasUncaughtException(jpf)){
+      logger.info("not caching result of run with uncaught exception");
+      return;
+    }
+    if (JPF_gov_nasa_jpf_jvm_Verify.hasCounters()){
+      logger.info("not caching result of run that uses Verify counters");
+      return;
+    }
+
+    File dir = file.getParentFile();
+    if (!FileUtils.ensurePrivateDir(dir)){
+      logger.warning("result cache dir does not exist or is not private: ", dir.getPath());
+      return;
+    }
+
+    // write to a temp file first, so that concurrent runs never see partial entries
+    File tmp = new File(file.getPath() + ".tmp" + System.nanoTime());
+    try {
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(loaded.size());
+        for (Map.Entry<String,ClassFileContainer> e : loaded.entrySet()){
+          String clsName = e.getKey();
+          ClassFileContainer container = e.getValue();
+          byte[] data = container.getClassData(clsName);
+          if (data == null){
+            throw new IOException("classfile not found: " + clsName);
+          }
+
+          out.writeUTF(clsName);
+          out.writeUTF(container.getName());
+          out.write(digest(data));
+        }
+
+        List<Error> errors = jpf.getSearchErrors();
+        out.writeInt(errors.size());
+        for (Error e : errors){
+          out.writeUTF(e.getProperty().getClass().getName());
+          writeOptionalUTF(out, e.getProperty().getExplanation());
+          writeOptionalUTF(out, e.getDetails());
+        }
+
+        out.writeInt(output.size());
+        output.writeTo(out);
+
+      } finally {
+        out.close();
+      }
+
+      if (!tmp.renameTo(file)){
+        tmp.delete();
+      } else {
+        logger.info("stored result cache entry ", file.getPath(), " with ", loaded.size(), " classes");
+      }
+
+    } catch (IOException iox){
+      logger.warning("cannot store result cache entry ", file.getPath(), " : ", iox.getMessage());
+      tmp.delete();
+    } catch (ClassFileException cfx){
+      logger.warning("cannot store result cache entry ", file.getPath(), " : ", cfx.getMessage());
+      tmp.delete();
+    }
+  }
+}
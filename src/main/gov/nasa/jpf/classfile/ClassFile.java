@@ -68,6 +68,22 @@ public class ClassFile {
     // we need this since it can happen at various recursion levels
   }
 
+  // optional cache for parsed constpools (shared between ClassFile instances)
+  static ConstantPoolCache cpCache;
+
+  public static void setConstantPoolCache (ConstantPoolCache cache){
+    cpCache = cache;
+  }
+
+  // do we decode utf8 constants (and the class and string constants that
+  // refer to them) only when they are first requested. Most classes only use
+  // a small fraction of their constants during verification
+  static boolean isLazyCp;
+
+  public static void setLazyConstantPool (boolean isLazy){
+    isLazyCp = isLazy;
+  }
+
   String requestedTypeName; // the type name that caused this classfile to be loaded
 
   byte[] data; // the classfile data
@@ -250,48 +266,91 @@ public class ClassFile {
 
   //--- constpool access
 
+  /**
+   * return the (decoded) value of a constpool entry. In lazy mode, utf8
+   * entries and the class and string entries referring to them are stored
+   * as null until they are first requested
+   */
+  protected final Object cpValueAt (int cpIdx){
+    Object v = cpValue[cpIdx];
+    if (v == null){
+      v = decodeCpValue(cpIdx);
+    }
+    return v;
+  }
+
+  protected Object decodeCpValue (int cpIdx){
+    int j = cpPos[cpIdx];
+    if (j <= 0){ // unused entry (0 or second slot of long/double)
+      return null;
+    }
+
+    Object v;
+    switch (data[j]){
+      case CONSTANT_UTF8:
+        int len = u2(j+1);
+        try {
+          v = readModifiedUTF8String(data, j+3, len);
+        } catch (ClassFileException cfx){
+          throw new JPFException(cfx);
+        }
+        break;
+
+      case CONSTANT_CLASS:
+      case CONSTANT_STRING:
+        v = cpValueAt(u2(j+1));
+        break;
+
+      default:
+        return null;
+    }
+
+    cpValue[cpIdx] = v;
+    return v;
+  }
+
   //--- the primitive info cpValue
   public String utf8At(int utf8InfoIdx){
     //assert data[cpPos[utf8InfoIdx]] == 1 : "not a utf8_info tag";
-    return (String) cpValue[utf8InfoIdx];
+    return (String) cpValueAt(utf8InfoIdx);
   }
 
   public int intAt(int intInfoIdx){
     //assert data[cpPos[intInfoIdx]] == 3 : "not a int_info tag";
-    return (Integer) cpValue[intInfoIdx];
+    return (Integer) cpValueAt(intInfoIdx);
   }
 
   public float floatAt(int floatInfoIdx){
     //assert data[cpPos[floatInfoIdx]] == 4 : "not a float_info tag";
-    return (Float) cpValue[floatInfoIdx];
+    return (Float) cpValueAt(floatInfoIdx);
   }
 
   public long longAt(int longInfoIdx){
     //assert data[cpPos[longInfoIdx]] == 5 : "not a long_info tag";
-    return (Long) cpValue[longInfoIdx];
+    return (Long) cpValueAt(longInfoIdx);
   }
 
   public double doubleAt(int doubleInfoIdx){
     //assert data[cpPos[doubleInfoIdx]] == 6 : "not a double_info tag";
-    return (Double) cpValue[doubleInfoIdx];
+    return (Double) cpValueAt(doubleInfoIdx);
   }
 
   //--- those two are delegated but resolved
   public String classNameAt(int classInfoIdx){
     //assert data[cpPos[classInfoIdx]] == 7 : "not a Class_info tag";
-    return (String) cpValue[classInfoIdx];
+    return (String) cpValueAt(classInfoIdx);
   }
 
   public String stringAt(int stringInfoIdx){
     //assert data[cpPos[stringInfoIdx]] == 8 : "not a String_info tag";
-    return (String) cpValue[stringInfoIdx];
+    return (String) cpValueAt(stringInfoIdx);
   }
 
   //--- composite infos
 
   // the generic ones (if we don't care what kind of reference type this is)
   public String refClassNameAt(int cpIdx){
-    return (String) cpValue[ u2(cpPos[cpIdx]+1)];
+    return (String) cpValueAt(u2(cpPos[cpIdx]+1));
   }
   public String refNameAt(int cpIdx){
     return utf8At( u2( cpPos[ u2(cpPos[cpIdx]+3)]+1));
@@ -303,7 +362,7 @@ public class ClassFile {
   // those could check ref types
   public String fieldClassNameAt(int fieldRefInfoIdx){
     //assert data[cpPos[fieldRefInfoIdx]] == 9 : "not a Fieldref_info tag";
-    return (String) cpValue[ u2(cpPos[fieldRefInfoIdx]+1)];
+    return (String) cpValueAt(u2(cpPos[fieldRefInfoIdx]+1));
   }
   public String fieldNameAt(int fieldRefInfoIdx){
     return utf8At( u2( cpPos[ u2(cpPos[fieldRefInfoIdx]+3)]+1));
@@ -313,7 +372,7 @@ public class ClassFile {
   }
 
   public String methodClassNameAt(int methodRefInfoIdx){
-    return (String) cpValue[ u2(cpPos[methodRefInfoIdx]+1)];
+    return (String) cpValueAt(u2(cpPos[methodRefInfoIdx]+1));
   }
   public String methodNameAt(int methodRefInfoIdx){
     return utf8At( u2( cpPos[ u2(cpPos[methodRefInfoIdx]+3)]+1));
@@ -323,7 +382,7 @@ public class ClassFile {
   }
 
   public String interfaceMethodClassNameAt(int ifcMethodRefInfoIdx){
-    return (String) cpValue[ u2(cpPos[ifcMethodRefInfoIdx]+1)];
+    return (String) cpValueAt(u2(cpPos[ifcMethodRefInfoIdx]+1));
   }
   public String interfaceMethodNameAt(int ifcMethodRefInfoIdx){
     return utf8At( u2( cpPos[ u2(cpPos[ifcMethodRefInfoIdx]+3)]+1));
@@ -362,7 +421,7 @@ public class ClassFile {
   }
 
   public Object getCpValue (int i){
-    return cpValue[i];
+    return cpValueAt(i);
   }
 
   public int getCpTag (int i){
@@ -383,7 +442,7 @@ public class ClassFile {
 
   public Object getConstValueAttribute(int dataPos){
     int cpIdx = u2(dataPos);
-    Object v = cpValue[cpIdx];
+    Object v = cpValueAt(cpIdx);
     return v;
   }
 
@@ -391,7 +450,7 @@ public class ClassFile {
     // SourceFile_attribute { u2 attr_name_idx; u4 attr_length; u2 sourcefile_idx<utf8>; }
 
     int cpIdx = u2(dataPos + 6);
-    Object v = cpValue[cpIdx];
+    Object v = cpValueAt(cpIdx);
     return (String)v;
   }
 
@@ -821,19 +880,27 @@ public class ClassFile {
       int major = readU2();
 
       // get the const pool
+      int cpStart = pos;
       int cpCount = readU2();
-      cpPos = new int[cpCount];
-      cpValue = new Object[cpCount];
-      parseCp(cpCount);
+      ConstantPoolCache cache = cpCache;
+      if (cache == null || !cache.restore(this, cpStart)){
+        cpPos = new int[cpCount];
+        cpValue = new Object[cpCount];
+        parseCp(cpCount);
+
+        if (cache != null){
+          cache.store(this, cpStart);
+        }
+      }
 
       // the class essentials
       int accessFlags = readU2();
 
       cpIdx = readU2();
-      String clsName = (String) cpValue[cpIdx];
+      String clsName = (String) cpValueAt(cpIdx);
 
       cpIdx = readU2();
-      String superClsName = (String) cpValue[cpIdx];
+      String superClsName = (String) cpValueAt(cpIdx);
 
 
       setClass(reader, clsName, superClsName, accessFlags, cpCount);
@@ -910,6 +977,7 @@ public class ClassFile {
     byte[] data = this.data;
     int[] dataIdx = this.cpPos;
     Object[] values = this.cpValue;
+    boolean isLazy = isLazyCp;
 
     //--- first pass: store data index values and convert non-delegating constant values
     // cp_entry[0] is traditionally unused
@@ -922,8 +990,10 @@ public class ClassFile {
           dataIdx[i] = j++;
           int len = ((data[j++]&0xff) <<8) | (data[j++]&0xff);
 
-          String s = readModifiedUTF8String( data, j, len);
-          values[i] = s;
+          if (!isLazy){
+            String s = readModifiedUTF8String( data, j, len);
+            values[i] = s;
+          }
 
           j += len;
           break;
@@ -968,14 +1038,18 @@ public class ClassFile {
 
         case CONSTANT_CLASS:  // Class_info { u1 tag; u2 name_index<utf8>; }
           dataIdx[i] = j;
-          values[i] = CpInfo.ConstantClass;
+          if (!isLazy){
+            values[i] = CpInfo.ConstantClass;
+          }
 
           j += 3;
           break;
 
         case CONSTANT_STRING:  // String_info { u1 tag; u2 string_index<utf8>; }
           dataIdx[i] = j;
-          values[i] = CpInfo.ConstantString;
+          if (!isLazy){
+            values[i] = CpInfo.ConstantString;
+          }
 
           j += 3;
           break;
@@ -1012,6 +1086,10 @@ public class ClassFile {
 
     pos = j;
 
+    if (isLazy){
+      return; // class and string values are resolved when requested
+    }
+
     //--- second pass: store values of delegating constant values
     for (int i=1; i<cpCount; i++){
       Object v = cpValue[i];
@@ -1085,7 +1163,7 @@ public class ClassFile {
    */
   public void parseConstValueAttr(ClassFileReader reader, Object tag){
     int cpIdx = readU2();
-    setConstantValue(reader, tag, cpValue[cpIdx]);
+    setConstantValue(reader, tag, cpValueAt(cpIdx));
   }
 
 
@@ -1176,7 +1254,7 @@ public class ClassFile {
       int handlerPc = readU2();
 
       int cpIdx = readU2();
-      String catchType = (String) cpValue[cpIdx]; // a Constant_class
+      String catchType = (String) cpValueAt(cpIdx); // a Constant_class
 
       setExceptionTableEntry(reader, tag, i, startPc, endPc, handlerPc, catchType);
     }
@@ -1187,6 +1265,21 @@ public class ClassFile {
   }
 
 
+  /**
+   * parse a Code attribute at some later point, after the classfile has been
+   * parsed (e.g. for deferred method linking). 'codePos' is the position of
+   * max_stack, as obtained by getPos() from within setMethodAttribute()
+   */
+  public synchronized void parseCodeAttr (ClassFileReader reader, Object tag, int codePos){
+    int p = pos;
+    try {
+      pos = codePos;
+      parseCodeAttr(reader, tag);
+    } finally {
+      pos = p;
+    }
+  }
+
   protected void parseCodeAttrAttributes(ClassFileReader reader, Object tag, int attrCount){
 
     setCodeAttributeCount(reader, tag, attrCount);
@@ -1240,9 +1333,9 @@ public class ClassFile {
       int startPc = readU2();
       int length = readU2();
       int cpIdx = readU2();
-      String varName = (String) cpValue[cpIdx];
+      String varName = (String) cpValueAt(cpIdx);
       cpIdx = readU2();
-      String descriptor = (String)  cpValue[cpIdx];
+      String descriptor = (String)  cpValueAt(cpIdx);
       int slotIndex = readU2();
       
       setLocalVar(reader, tag, i, varName, descriptor, startPc, startPc+length-1, slotIndex );
@@ -1298,11 +1391,11 @@ public class ClassFile {
 
     for (int i = 0; i < innerClsCount; i++) {
       int cpIdx = readU2();
-      String innerClsName = (cpIdx != 0) ? (String) cpValue[cpIdx] : null;
+      String innerClsName = (cpIdx != 0) ? (String) cpValueAt(cpIdx) : null;
       cpIdx = readU2();
-      String outerClsName = (cpIdx != 0) ? (String) cpValue[cpIdx] : null;
+      String outerClsName = (cpIdx != 0) ? (String) cpValueAt(cpIdx) : null;
       cpIdx = readU2();
-      String innerSimpleName = (cpIdx != 0) ? (String) cpValue[cpIdx] : null;
+      String innerSimpleName = (cpIdx != 0) ? (String) cpValueAt(cpIdx) : null;
       int accessFlags = readU2();
 
       setInnerClass(reader, tag, i, outerClsName, innerClsName, innerSimpleName, accessFlags);
@@ -1372,7 +1465,7 @@ public class ClassFile {
         // booleans have to be treated differently since there is no CONSTANT_Boolean, i.e. values are
         // stored as CONSTANT_Integer in the constpool, i.e. the cpValue doesn't have the right type
         cpIdx = readU2();
-        val = cpValue[cpIdx];
+        val = cpValueAt(cpIdx);
         val = Boolean.valueOf((Integer)val == 1);
         setPrimitiveAnnotationValue(reader, tag, annotationIndex, valueIndex, elementName, arrayIndex, val);
         break;        
@@ -1385,27 +1478,27 @@ public class ClassFile {
       case 'J':
       case 'S':
         cpIdx = readU2();
-        val = cpValue[cpIdx];
+        val = cpValueAt(cpIdx);
         setPrimitiveAnnotationValue(reader, tag, annotationIndex, valueIndex, elementName, arrayIndex, val);
         break;
 
       case 's':
         cpIdx = readU2();
-        String s = (String) cpValue[cpIdx];
+        String s = (String) cpValueAt(cpIdx);
         setStringAnnotationValue(reader, tag, annotationIndex, valueIndex, elementName, arrayIndex, s);
         break;
 
       case 'e':
         cpIdx = readU2();
-        String enumTypeName = (String)cpValue[cpIdx];
+        String enumTypeName = (String)cpValueAt(cpIdx);
         cpIdx = readU2();
-        String enumConstName = (String)cpValue[cpIdx];
+        String enumConstName = (String)cpValueAt(cpIdx);
         setEnumAnnotationValue(reader, tag, annotationIndex, valueIndex, elementName, arrayIndex, enumTypeName, enumConstName);
         break;
 
       case 'c':
         cpIdx = readU2();
-        String className = (String)cpValue[cpIdx];
+        String className = (String)cpValueAt(cpIdx);
         setClassAnnotationValue(reader, tag, annotationIndex, valueIndex, elementName, arrayIndex, className);
         break;
 
@@ -1436,7 +1529,7 @@ public class ClassFile {
    */
   void parseAnnotation(ClassFileReader reader, Object tag, int annotationIndex, boolean isParameterAnnotation){
     int cpIdx = readU2();
-    String annotationType = (String)cpValue[cpIdx];
+    String annotationType = (String)cpValueAt(cpIdx);
 
     if (isParameterAnnotation){
       setParameterAnnotation(reader, tag, annotationIndex, annotationType);
@@ -1449,7 +1542,7 @@ public class ClassFile {
 
     for (int i=0; i<nValuePairs; i++){
       cpIdx = readU2();
-      String elementName = (String)cpValue[cpIdx];
+      String elementName = (String)cpValueAt(cpIdx);
       parseAnnotationValue(reader, tag, annotationIndex, i, elementName, -1);
     }
 
@@ -22,8 +22,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 
 /**
@@ -161,123 +159,3 @@ class DirContainer extends ClassFileContainer {
     return null;
   }
 }
-
-class JarContainer extends ClassFileContainer {
-
-  JarFile jar;
-  String pathPrefix; // optional
-
-  JarContainer(File file) throws IOException {
-    super(file.getPath());
-
-    jar = new JarFile(file);
-  }
-
-  JarContainer (File file, String pathPrefix) throws IOException {
-    super(getPath(file, pathPrefix));
-
-    jar = new JarFile(file);
-    
-    this.pathPrefix = getNormalizedPathPrefix(pathPrefix);
-  }
-
-  /**
-   * make sure the return value ends with '/', and does NOT start with '/'. If
-   * the supplied pathPrefix only contains '/' or an empty string, return null
-   */
-  static String getNormalizedPathPrefix(String pathPrefix){
-    if (pathPrefix != null){
-      int len = pathPrefix.length();
-      if (len > 0){
-        if (pathPrefix.charAt(0) == '/'){
-          if (len == 1){
-            return null; // no need for storing a single '/' prefix
-          } else {
-            pathPrefix = pathPrefix.substring(1); // skip the heading '/'
-            len--;
-          }
-        }
-        
-        if (pathPrefix.charAt(len-1) != '/'){
-          pathPrefix += '/';
-        }
-        
-        return pathPrefix;
-        
-      } else {
-        return null; // empty prefix
-      }
-    } else {
-      return null; // null prefix
-    }
-  }
-
-  /**
-   * return our string representation of the complete spec, which is
-   * 
-   *   <jar-pathname>/pathPrefix
-   */
-  static String getPath(File file, String pathPrefix){
-    String pn = file.getPath();
-   
-    if (pathPrefix != null){
-      int len = pathPrefix.length();
-      if (len > 0){
-        if (pathPrefix.charAt(0) == '/'){
-          if (len == 1){
-            return pn; // no need to store a single '/'
-          }
-        } else {
-          pn += '/';
-        }
-        
-        pn += pathPrefix;
-      }
-    }
-    
-    return pn;
-  }
-    
-  public byte[] getClassData(String clsName) throws ClassFileException {
-    String pn = clsName.replace('.', '/') + ".class";
-    
-    if (pathPrefix != null){
-      pn = pathPrefix + pn;
-    }
-    
-    JarEntry e = jar.getJarEntry(pn);
-
-    if (e != null) {
-      InputStream is = null;
-      try {
-        long len = e.getSize();
-        if (len > Integer.MAX_VALUE) {
-          error("classfile too big: " + e.getName());
-        }
-
-        is = jar.getInputStream(e);
-
-        byte[] data = new byte[(int) len];
-        readFully(is, data);
-
-        return data;
-
-      } catch (IOException iox) {
-        error("error reading jar entry " + e.getName());
-
-      } finally {
-        if (is != null) {
-          try {
-            is.close();
-          } catch (IOException iox) {
-            error("cannot close input stream for file " + e.getName());
-          }
-        }
-      }
-    }
-
-    return null;
-  }
-}
-
-
@@ -0,0 +1,178 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.classfile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * a process wide cache for parsed constant pools, which are the most
+ * expensive part of classfile parsing (modified UTF-8 decoding of all names,
+ * signatures and string constants).
+ *
+ * This pays off if the same host VM runs JPF several times (e.g. test suites),
+ * since each run creates new ClassInfos, but most of the classfiles (esp. the
+ * model and standard library classes) are the same. Entries are keyed by the
+ * raw constant pool bytes, i.e. a modified (e.g. instrumented) classfile just
+ * gets its own entry. Cached String values are shared between ClassFiles, the
+ * arrays are not.
+ *
+ * Note that we don't cache anything beyond the constant pool - MethodInfos and
+ * Instructions are run specific objects (they get attributes, listener
+ * instrumentation and can be replaced by InstructionFactories), so they still
+ * have to be created from the bytecode in each run
+ */
+public class ConstantPoolCache {
+
+  static class CpEntry {
+    byte[] cpData;      // the raw constpool bytes, to rule out hash collisions
+    int[] cpPos;        // relative to the constpool start
+    Object[] cpValue;
+  }
+
+  protected static ConstantPoolCache singleton;
+
+  protected int maxEntries;
+  protected LinkedHashMap<Integer,CpEntry> map;
+
+  protected int nHits;
+  protected int nMisses;
+
+  /**
+   * get the process wide cache, creating or resizing it if required
+   */
+  public static synchronized ConstantPoolCache getCache (int maxEntries){
+    if (singleton == null){
+      singleton = new ConstantPoolCache(maxEntries);
+    } else {
+      singleton.maxEntries = maxEntries;
+    }
+    return singleton;
+  }
+
+  @SuppressWarnings("serial")
+  protected ConstantPoolCache (int maxEntries){
+    this.maxEntries = maxEntries;
+
+    map = new LinkedHashMap<Integer,CpEntry>(256, 0.75f, true){
+      protected boolean removeEldestEntry (Map.Entry<Integer,CpEntry> eldest){
+        return size() > ConstantPoolCache.this.maxEntries;
+      }
+    };
+  }
+
+  public synchronized int getNumberOfHits (){
+    return nHits;
+  }
+
+  public synchronized int getNumberOfMisses (){
+    return nMisses;
+  }
+
+  public synchronized void clear (){
+    map.clear();
+  }
+
+  static int hash (byte[] data, int start, int end){
+    int h = end - start;
+    for (int i=start; i<end; i++){
+      h = 31*h + data[i];
+    }
+    return h;
+  }
+
+  static boolean equals (byte[] cpData, byte[] data, int start, int end){
+    if (cpData.length != (end - start)){
+      return false;
+    }
+    for (int i=0, j=start; j<end; i++, j++){
+      if (cpData[i] != data[j]){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * find the constpool that starts at cpStart (the constant_pool_count) in the
+   * classfile data. We don't know where it ends before parsing it. If we have a
+   * matching entry, set the ClassFile constpool and parse position, and
+   * return true
+   */
+  synchronized boolean restore (ClassFile cf, int cpStart){
+    byte[] data = cf.data;
+
+    // we don't know the constpool length before parsing it, so we can only
+    // key by a fixed size prefix, and have to compare the whole constpool bytes
+    CpEntry e = map.get(probeKey(data, cpStart));
+    if (e != null){
+      int end = cpStart + e.cpData.length;
+      if (end <= data.length && equals(e.cpData, data, cpStart, end)){
+        int n = e.cpPos.length;
+        int[] cpPos = new int[n];
+        for (int i=0; i<n; i++){
+          int p = e.cpPos[i];
+          cpPos[i] = (p > 0) ? p + cpStart : p;
+        }
+
+        cf.cpPos = cpPos;
+        cf.cpValue = e.cpValue.clone();
+        cf.pos = end;
+
+        nHits++;
+        return true;
+      }
+    }
+
+    nMisses++;
+    return false;
+  }
+
+  // the key is computed from a fixed size prefix of the constpool (starting
+  // with its size), which we can hash before parsing it. Collisions just
+  // replace the entry
+  static final int PROBE_LENGTH = 256;
+
+  static Integer probeKey (byte[] data, int cpStart){
+    int end = Math.min(data.length, cpStart + PROBE_LENGTH);
+    return Integer.valueOf( hash(data, cpStart, end));
+  }
+
+  /**
+   * store the constpool of a ClassFile that was just parsed
+   */
+  synchronized void store (ClassFile cf, int cpStart){
+    int cpEnd = cf.pos;
+    CpEntry e = new CpEntry();
+
+    e.cpData = new byte[cpEnd - cpStart];
+    System.arraycopy(cf.data, cpStart, e.cpData, 0, e.cpData.length);
+
+    int n = cf.cpPos.length;
+    e.cpPos = new int[n];
+    for (int i=0; i<n; i++){
+      int p = cf.cpPos[i];
+      e.cpPos[i] = (p > 0) ? p - cpStart : p;
+    }
+
+    e.cpValue = cf.cpValue.clone();
+
+    map.put(probeKey(cf.data, cpStart), e);
+  }
+}
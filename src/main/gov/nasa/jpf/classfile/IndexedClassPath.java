@@ -0,0 +1,453 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.classfile;
+
+import gov.nasa.jpf.util.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * a ClassPath that keeps a single name -> (jar, entry offset) index for all
+ * jars of the path, so that lookups don't have to probe each container in
+ * order, and we don't have to go through java.util.zip for each classfile.
+ *
+ * The index is built by reading the central directories of all jars, and is
+ * stored in the optional index dir, keyed by the path names. A stored index is
+ * only used if none of the jars has changed (time stamp and size). Entries are
+ * read from memory mapped jars, stored (uncompressed) entries are just copied.
+ * Since the index determines which code we load, we only use index files in
+ * dirs and files that are private to the current user.
+ *
+ * Directories are not indexed since their content can change at any time.
+ * To preserve the classpath order, we still probe all directories that precede
+ * the indexed jar entry (if any). The same applies to jars we can't index
+ * (e.g. ZIP64 archives)
+ */
+public class IndexedClassPath extends ClassPath {
+
+  static final int MAGIC = 0x4a50460b;
+  static final int VERSION = 1;
+
+  static class IndexEntry {
+    int container;  // pathElements index
+    int offset;     // of the local file header
+    int cSize;
+    int uSize;
+    int method;
+  }
+
+  File indexDir;  // where we store the index, null if we don't
+
+  // these are computed lazily after all path elements are added
+  HashMap<String,IndexEntry> index;
+  boolean[] isIndexed;
+
+  public IndexedClassPath (File indexDir){
+    this.indexDir = indexDir;
+  }
+
+  public IndexedClassPath (String[] pathNames, File indexDir){
+    this(indexDir);
+
+    for (String e : pathNames){
+      addPathName(e);
+    }
+  }
+
+  public void addPathName(String pathName){
+    super.addPathName(pathName);
+    index = null;
+  }
+
+  public int getNumberOfIndexedClasses (){
+    return getIndex().size();
+  }
+
+  public File getIndexFile (){
+    if (indexDir != null){
+      return new File(indexDir, "cpindex-" + computeKey() + ".idx");
+    } else {
+      return null;
+    }
+  }
+
+  protected synchronized HashMap<String,IndexEntry> getIndex (){
+    if (index == null){
+      File file = getIndexFile();
+
+      if (file != null && file.isFile()){
+        try {
+          if (!FileUtils.isPrivate(file.getParentFile()) || !FileUtils.isPrivate(file)){
+            logger.warning("ignoring classpath index that is not private to the current user: ", file.getPath());
+          } else if (load(file)){
+            logger.info("using classpath index ", file.getPath());
+            return index;
+          }
+        } catch (IOException iox){
+          logger.warning("cannot read classpath index ", file.getPath(), " : ", iox.getMessage());
+        }
+      }
+
+      buildIndex();
+
+      if (file != null){
+        store(file);
+      }
+    }
+
+    return index;
+  }
+
+  //--- lookup
+
+  public Match findMatch (String clsName) throws ClassFileException {
+    HashMap<String,IndexEntry> idx = getIndex();
+    IndexEntry ie = idx.get(clsName);
+    int limit = (ie != null) ? ie.container : pathElements.size();
+
+    // first check the non-indexed elements that come before the indexed entry
+    for (int i=0; i<limit; i++){
+      if (!isIndexed[i]){
+        ClassFileContainer e = pathElements.get(i);
+        byte[] data = e.getClassData(clsName);
+        if (data != null){
+          logger.fine("loading ", clsName, " from ", e.getName());
+          return new Match( e, data);
+        }
+      }
+    }
+
+    if (ie != null){
+      JarContainer jc = (JarContainer)pathElements.get(ie.container);
+      byte[] data = jc.getClassData(clsName, ie.offset, ie.cSize, ie.uSize, ie.method);
+      logger.fine("loading ", clsName, " from indexed ", jc.getName());
+      return new Match( jc, data);
+    }
+
+    return null;
+  }
+
+  public byte[] getClassData(String clsName) throws ClassFileException {
+    Match m = findMatch(clsName);
+    return (m != null) ? m.getBytes() : null;
+  }
+
+  //--- index creation
+
+  static final int CEN_SIG = 0x02014b50;
+  static final int END_SIG = 0x06054b50;
+  static final int END_LEN = 22;
+
+  protected void buildIndex (){
+    int n = pathElements.size();
+    index = new HashMap<String,IndexEntry>(4096);
+    isIndexed = new boolean[n];
+
+    for (int i=0; i<n; i++){
+      ClassFileContainer e = pathElements.get(i);
+      if (e instanceof JarContainer){
+        try {
+          isIndexed[i] = indexJar((JarContainer)e, i);
+        } catch (IOException iox){
+          logger.warning("cannot index ", e.getName(), " : ", iox.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * read the central directory of the jar, and add all classfile entries
+   * that are not yet in the index. Return false if we can't index this jar,
+   * which is not an error - we just fall back to java.util.zip lookup
+   */
+  protected boolean indexJar (JarContainer jc, int containerIdx) throws IOException {
+    ByteBuffer buf = jc.getBuffer();
+    int len = buf.limit();
+
+    // find the end of central directory record, which is followed by an
+    // optional comment of up to 64k
+    int end = -1;
+    for (int i=len - END_LEN, iMin = Math.max(0, i - 0xffff); i >= iMin; i--){
+      if (buf.getInt(i) == END_SIG){
+        end = i;
+        break;
+      }
+    }
+    if (end < 0){
+      return false;
+    }
+
+    int nEntries = buf.getShort(end + 10) & 0xffff;
+    long cenOffset = buf.getInt(end + 16) & 0xffffffffL;
+    if (nEntries == 0xffff || cenOffset == 0xffffffffL || cenOffset >= len){
+      return false; // ZIP64, we don't do these
+    }
+
+    // collect first, so that we don't leave a partially indexed jar behind
+    HashMap<String,IndexEntry> jarIndex = new HashMap<String,IndexEntry>(nEntries*2);
+    String prefix = jc.pathPrefix;
+    int pos = (int)cenOffset;
+
+    for (int i=0; i<nEntries; i++){
+      if (pos + 46 > len || buf.getInt(pos) != CEN_SIG){
+        return false;
+      }
+
+      int method = buf.getShort(pos + 10) & 0xffff;
+      long cSize = buf.getInt(pos + 20) & 0xffffffffL;
+      long uSize = buf.getInt(pos + 24) & 0xffffffffL;
+      int nameLen = buf.getShort(pos + 28) & 0xffff;
+      int extraLen = buf.getShort(pos + 30) & 0xffff;
+      int commentLen = buf.getShort(pos + 32) & 0xffff;
+      long offset = buf.getInt(pos + 42) & 0xffffffffL;
+
+      String name = getEntryName(buf, pos + 46, nameLen);
+      pos += 46 + nameLen + extraLen + commentLen;
+
+      if (name.endsWith(".class")){
+        if (prefix != null){
+          if (!name.startsWith(prefix)){
+            continue;
+          }
+          name = name.substring(prefix.length());
+        }
+
+        if (cSize >= len || uSize > Integer.MAX_VALUE || offset >= len){
+          return false;
+        }
+
+        IndexEntry ie = new IndexEntry();
+        ie.container = containerIdx;
+        ie.offset = (int)offset;
+        ie.cSize = (int)cSize;
+        ie.uSize = (int)uSize;
+        ie.method = method;
+
+        String clsName = name.substring(0, name.length() - 6).replace('/', '.');
+        jarIndex.put(clsName, ie);
+      }
+    }
+
+    for (Map.Entry<String,IndexEntry> e : jarIndex.entrySet()){
+      if (!index.containsKey(e.getKey())){ // first one wins
+        index.put(e.getKey(), e.getValue());
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * zip entry names are UTF-8, but classfile entries are almost always
+   * ASCII, so we only go through the decoder if we have to
+   */
+  static String getEntryName (ByteBuffer buf, int pos, int len){
+    byte[] b = new byte[len];
+    boolean isAscii = true;
+
+    for (int i=0; i<len; i++){
+      byte c = buf.get(pos + i);
+      b[i] = c;
+      if (c < 0){
+        isAscii = false;
+      }
+    }
+
+    if (isAscii){
+      char[] c = new char[len];
+      for (int i=0; i<len; i++){
+        c[i] = (char)b[i];
+      }
+      return new String(c);
+
+    } else {
+      try {
+        return new String(b, "UTF-8");
+      } catch (UnsupportedEncodingException uex){
+        // UTF-8 is a required encoding, we can't get here
+        throw new RuntimeException(uex);
+      }
+    }
+  }
+
+  //--- index persistence
+
+  protected String computeKey (){
+    try {
+      MessageDigest md = MessageDigest.getInstance("MD5");
+
+      for (ClassFileContainer e : pathElements){
+        String pn = e.getName();
+        for (int i=0; i<pn.length(); i++){
+          char c = pn.charAt(i);
+          md.update((byte)(c >> 8));
+          md.update((byte)c);
+        }
+        md.update((byte)0);
+      }
+
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest()){
+        sb.append(Integer.toHexString((b >> 4) & 0xf));
+        sb.append(Integer.toHexString(b & 0xf));
+      }
+      return sb.toString();
+
+    } catch (NoSuchAlgorithmException nsax){
+      // MD5 is a required algorithm, we can't get here
+      throw new RuntimeException(nsax);
+    }
+  }
+
+  /**
+   * load the index from file, unless any of the jars has changed
+   */
+  protected boolean load (File file) throws IOException {
+    DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION){
+        return false;
+      }
+
+      int n = in.readInt();
+      if (n != pathElements.size()){
+        return false;
+      }
+
+      boolean[] indexed = new boolean[n];
+      for (int i=0; i<n; i++){
+        ClassFileContainer e = pathElements.get(i);
+        String name = in.readUTF();
+        long lastModified = in.readLong();
+        long length = in.readLong();
+        indexed[i] = in.readBoolean();
+
+        if (!name.equals(e.getName())){
+          return false;
+        }
+        if (e instanceof JarContainer){
+          File f = ((JarContainer)e).file;
+          if (f.lastModified() != lastModified || f.length() != length){
+            return false;
+          }
+        } else if (indexed[i]){
+          return false;
+        }
+      }
+
+      int nEntries = in.readInt();
+      HashMap<String,IndexEntry> map = new HashMap<String,IndexEntry>(nEntries*2);
+      for (int i=0; i<nEntries; i++){
+        String clsName = in.readUTF();
+        IndexEntry ie = new IndexEntry();
+        ie.container = in.readInt();
+        if (ie.container < 0 || ie.container >= n || !indexed[ie.container]){
+          return false;
+        }
+        ie.offset = in.readInt();
+        ie.cSize = in.readInt();
+        ie.uSize = in.readInt();
+        ie.method = in.readShort();
+        map.put(clsName, ie);
+      }
+
+      isIndexed = indexed;
+      index = map;
+      return true;
+
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * store the index. Failing to do so is not an error, we just have to
+   * rebuild it in the next run
+   */
+  protected void store (File file){
+    File dir = file.getParentFile();
+    if (!FileUtils.ensurePrivateDir(dir)){
+      logger.warning("classpath index dir does not exist or is not private: ", dir.getPath());
+      return;
+    }
+
+    // write to a temp file first, so that concurrent runs never see partial indices
+    File tmp = new File(file.getPath() + ".tmp" + System.nanoTime());
+    try {
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(tmp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        int n = pathElements.size();
+        out.writeInt(n);
+        for (int i=0; i<n; i++){
+          ClassFileContainer e = pathElements.get(i);
+          out.writeUTF(e.getName());
+          if (e instanceof JarContainer){
+            File f = ((JarContainer)e).file;
+            out.writeLong(f.lastModified());
+            out.writeLong(f.length());
+          } else {
+            out.writeLong(0);
+            out.writeLong(0);
+          }
+          out.writeBoolean(isIndexed[i]);
+        }
+
+        out.writeInt(index.size());
+        for (Map.Entry<String,IndexEntry> e : index.entrySet()){
+          IndexEntry ie = e.getValue();
+          out.writeUTF(e.getKey());
+          out.writeInt(ie.container);
+          out.writeInt(ie.offset);
+          out.writeInt(ie.cSize);
+          out.writeInt(ie.uSize);
+          out.writeShort(ie.method);
+        }
+      } finally {
+        out.close();
+      }
+
+      FileUtils.setPrivate(tmp);
+      if (!tmp.renameTo(file)){
+        tmp.delete();
+      } else {
+        logger.info("stored classpath index ", file.getPath(), " with ", index.size(), " classes");
+      }
+
+    } catch (IOException iox){
+      logger.warning("cannot store classpath index ", file.getPath(), " : ", iox.getMessage());
+      tmp.delete();
+    }
+  }
+}
@@ -0,0 +1,246 @@
+//
+// Copyright (C) 2011 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.classfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * a ClassFileContainer for jars, with optional path prefix. Besides the
+ * java.util.zip based lookup, this supports direct access of entries by
+ * offset into the memory mapped jar (see IndexedClassPath)
+ */
+class JarContainer extends ClassFileContainer {
+
+  File file;
+  JarFile jar;
+  String pathPrefix; // optional
+
+  // only set if we access entries directly (see IndexedClassPath)
+  MappedByteBuffer buffer;
+
+  JarContainer(File file) throws IOException {
+    super(file.getPath());
+
+    this.file = file;
+    jar = new JarFile(file);
+  }
+
+  JarContainer (File file, String pathPrefix) throws IOException {
+    super(getPath(file, pathPrefix));
+
+    this.file = file;
+    jar = new JarFile(file);
+    
+    this.pathPrefix = getNormalizedPathPrefix(pathPrefix);
+  }
+
+  /**
+   * make sure the return value ends with '/', and does NOT start with '/'. If
+   * the supplied pathPrefix only contains '/' or an empty string, return null
+   */
+  static String getNormalizedPathPrefix(String pathPrefix){
+    if (pathPrefix != null){
+      int len = pathPrefix.length();
+      if (len > 0){
+        if (pathPrefix.charAt(0) == '/'){
+          if (len == 1){
+            return null; // no need for storing a single '/' prefix
+          } else {
+            pathPrefix = pathPrefix.substring(1); // skip the heading '/'
+            len--;
+          }
+        }
+        
+        if (pathPrefix.charAt(len-1) != '/'){
+          pathPrefix += '/';
+        }
+        
+        return pathPrefix;
+        
+      } else {
+        return null; // empty prefix
+      }
+    } else {
+      return null; // null prefix
+    }
+  }
+
+  /**
+   * return our string representation of the complete spec, which is
+   * 
+   *   <jar-pathname>/pathPrefix
+   */
+  static String getPath(File file, String pathPrefix){
+    String pn = file.getPath();
+   
+    if (pathPrefix != null){
+      int len = pathPrefix.length();
+      if (len > 0){
+        if (pathPrefix.charAt(0) == '/'){
+          if (len == 1){
+            return pn; // no need to store a single '/'
+          }
+        } else {
+          pn += '/';
+        }
+        
+        pn += pathPrefix;
+      }
+    }
+    
+    return pn;
+  }
+    
+  public byte[] getClassData(String clsName) throws ClassFileException {
+    String pn = clsName.replace('.', '/') + ".class";
+    
+    if (pathPrefix != null){
+      pn = pathPrefix + pn;
+    }
+    
+    JarEntry e = jar.getJarEntry(pn);
+
+    if (e != null) {
+      InputStream is = null;
+      try {
+        long len = e.getSize();
+        if (len > Integer.MAX_VALUE) {
+          error("classfile too big: " + e.getName());
+        }
+
+        is = jar.getInputStream(e);
+
+        byte[] data = new byte[(int) len];
+        readFully(is, data);
+
+        return data;
+
+      } catch (IOException iox) {
+        error("error reading jar entry " + e.getName());
+
+      } finally {
+        if (is != null) {
+          try {
+            is.close();
+          } catch (IOException iox) {
+            error("cannot close input stream for file " + e.getName());
+          }
+        }
+      }
+    }
+
+    return null;
+  }
+
+  //--- direct entry access, bypassing java.util.zip lookup
+
+  /**
+   * map the whole jar file. Note that we can't map jars >2GB, but in this
+   * case we couldn't address entries with a u4 zip offset anyways
+   */
+  synchronized ByteBuffer getBuffer() throws IOException {
+    if (buffer == null){
+      FileInputStream fis = new FileInputStream(file);
+      try {
+        FileChannel fc = fis.getChannel();
+        long size = fc.size();
+        if (size > Integer.MAX_VALUE){
+          throw new IOException("jar too big to map: " + file.getPath());
+        }
+        buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+      } finally {
+        fis.close(); // the mapping stays valid
+      }
+    }
+
+    // each caller gets its own position
+    ByteBuffer buf = buffer.duplicate();
+    buf.order(ByteOrder.LITTLE_ENDIAN);
+    return buf;
+  }
+
+  static final int LOC_SIG = 0x04034b50;
+  static final int STORED = 0;
+  static final int DEFLATED = 8;
+
+  /**
+   * read the data of the entry that has its local file header at 'offset',
+   * using the sizes and compression method from the central directory.
+   * Stored entries are copied straight from the mapped buffer
+   */
+  byte[] getClassData (String entryName, int offset, int cSize, int uSize, int method)
+                                                         throws ClassFileException {
+    try {
+      ByteBuffer buf = getBuffer();
+
+      if (buf.getInt(offset) != LOC_SIG){
+        error("corrupted jar entry " + entryName + " in " + file.getPath());
+      }
+      // the local header can have a different extra field than the central dir
+      int nameLen = buf.getShort(offset + 26) & 0xffff;
+      int extraLen = buf.getShort(offset + 28) & 0xffff;
+      buf.position(offset + 30 + nameLen + extraLen);
+
+      byte[] data = new byte[uSize];
+
+      if (method == STORED){
+        buf.get(data);
+
+      } else if (method == DEFLATED){
+        byte[] cData = new byte[cSize];
+        buf.get(cData);
+
+        Inflater inflater = new Inflater(true); // no zlib header in jars
+        try {
+          inflater.setInput(cData);
+          int n = inflater.inflate(data);
+          if (n != uSize){
+            error("premature end of jar entry " + entryName + ": " + uSize + '/' + n);
+          }
+        } finally {
+          inflater.end();
+        }
+
+      } else {
+        error("unsupported compression method " + method + " for jar entry " + entryName);
+      }
+
+      return data;
+
+    } catch (IOException iox){
+      error("error reading jar entry " + entryName);
+    } catch (DataFormatException dfx){
+      error("error inflating jar entry " + entryName);
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,522 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.util.HashData;
+import gov.nasa.jpf.util.IntVector;
+
+import java.util.Arrays;
+
+/**
+ * element storage for large arrays that is split into fixed size chunks, to
+ * make copy-on-write cheap.
+ *
+ * Cloning an ArrayChunks object only copies the chunk table, i.e. both the
+ * original and the clone share all chunks after a clone. A chunk is only
+ * copied when it gets modified for the first time after the clone, which
+ * means a single element store into a frozen (state stored) array is
+ * O(chunkSize) instead of O(length).
+ *
+ * We also cache a hash value for each chunk, which is only recomputed if the
+ * chunk was modified. This is used for Fields hashing (e.g. for pooling) and
+ * optionally for state serialization (see ChunkedFieldsFactory)
+ *
+ * Initially all full chunks share the same zero filled chunk, so even huge
+ * arrays don't cost more than their chunk table until they are written to.
+ *
+ * The concrete subclasses only provide the element type specific operations
+ */
+public abstract class ArrayChunks implements Cloneable {
+
+  protected int length;
+  protected int chunkShift;
+  protected int chunkMask;
+
+  protected Object[] chunks;
+
+  /**
+   * bitmap of chunks that got modified since we were created or cloned. These
+   * are the chunks this object owns, i.e. that can be written in place. All
+   * other chunks are potentially shared with our clones/clone origin
+   */
+  protected long[] modified;
+
+  /** cached chunk hash values, only valid if the corresponding 'hashed' bit is set */
+  protected int[] hashes;
+  protected long[] hashed;
+
+  /** do we serialize chunk hash values instead of element values */
+  protected boolean serializeHashes;
+
+  protected ArrayChunks (int length, int chunkShift, boolean serializeHashes){
+    int chunkSize = 1 << chunkShift;
+    int nChunks = (length + chunkSize - 1) >>> chunkShift;
+    int nWords = (nChunks + 63) >>> 6;
+
+    this.length = length;
+    this.chunkShift = chunkShift;
+    this.chunkMask = chunkSize - 1;
+    this.serializeHashes = serializeHashes;
+
+    chunks = new Object[nChunks];
+    modified = new long[nWords];
+    hashes = new int[nChunks];
+    hashed = new long[nWords];
+
+    if (nChunks > 0){
+      int nFull = length >>> chunkShift;
+      if (nFull > 0){
+        Object zeroChunk = newChunk(chunkSize);
+        for (int i=0; i<nFull; i++){
+          chunks[i] = zeroChunk;
+        }
+      }
+
+      if (nFull < nChunks){ // partial last chunk, this one is ours
+        chunks[nFull] = newChunk(length & chunkMask);
+        setModified(nFull);
+      }
+    }
+  }
+
+  //--- the element type specific parts
+
+  protected abstract Object newChunk (int chunkLength);
+
+  protected abstract int hashChunk (Object chunk);
+
+  protected abstract boolean equalChunks (Object chunk, Object otherChunk);
+
+  protected abstract void appendChunk (IntVector v, Object chunk);
+
+  //--- chunk management
+
+  public int length(){
+    return length;
+  }
+
+  public int getChunkSize(){
+    return chunkMask + 1;
+  }
+
+  public int getNumberOfChunks(){
+    return chunks.length;
+  }
+
+  public int getChunkLength (int chunkIdx){
+    if (chunkIdx == chunks.length-1 && (length & chunkMask) != 0){
+      return length & chunkMask;
+    } else {
+      return chunkMask + 1;
+    }
+  }
+
+  public boolean isModified (int chunkIdx){
+    return (modified[chunkIdx >>> 6] & (1L << chunkIdx)) != 0;
+  }
+
+  protected void setModified (int chunkIdx){
+    modified[chunkIdx >>> 6] |= (1L << chunkIdx);
+  }
+
+  public int getNumberOfModifiedChunks(){
+    int n = 0;
+    for (int i=0; i<modified.length; i++){
+      n += Long.bitCount(modified[i]);
+    }
+    return n;
+  }
+
+  protected Object getChunk (int idx){
+    return chunks[idx >>> chunkShift];
+  }
+
+  /**
+   * get the chunk that holds element 'idx' so that it can be modified, which
+   * copies it if it is not yet owned by us
+   */
+  protected Object getChunkForWrite (int idx){
+    int c = idx >>> chunkShift;
+    Object chunk = chunks[c];
+    long bit = 1L << c;
+    int w = c >>> 6;
+
+    if ((modified[w] & bit) == 0){
+      int len = getChunkLength(c);
+      Object newChunk = newChunk(len);
+      System.arraycopy(chunk, 0, newChunk, 0, len);
+      chunks[c] = chunk = newChunk;
+      modified[w] |= bit;
+    }
+
+    hashed[w] &= ~bit;
+    return chunk;
+  }
+
+  /**
+   * shallow clone - after this, neither the original nor the clone owns any
+   * of the chunks anymore, i.e. the next write on either side copies the chunk
+   */
+  public ArrayChunks cloneChunks(){
+    try {
+      ArrayChunks a = (ArrayChunks)super.clone();
+
+      a.chunks = chunks.clone();
+      a.hashes = hashes.clone();
+      a.hashed = hashed.clone();
+
+      Arrays.fill(modified, 0L);
+      a.modified = new long[modified.length];
+
+      return a;
+
+    } catch (CloneNotSupportedException cnsx){
+      return null;
+    }
+  }
+
+  protected boolean isHashed (int chunkIdx){
+    return (hashed[chunkIdx >>> 6] & (1L << chunkIdx)) != 0;
+  }
+
+  public int getChunkHash (int chunkIdx){
+    int w = chunkIdx >>> 6;
+    long bit = 1L << chunkIdx;
+
+    if ((hashed[w] & bit) == 0){
+      hashes[chunkIdx] = hashChunk(chunks[chunkIdx]);
+      hashed[w] |= bit;
+    }
+
+    return hashes[chunkIdx];
+  }
+
+  public void hash (HashData hd){
+    hd.add(length);
+    for (int i=0; i<chunks.length; i++){
+      hd.add(getChunkHash(i));
+    }
+  }
+
+  public boolean equals (ArrayChunks other){
+    if (other.length != length || other.chunkShift != chunkShift){
+      return false;
+    }
+
+    Object[] c = chunks;
+    Object[] cOther = other.chunks;
+    for (int i=0; i<c.length; i++){
+      if (c[i] != cOther[i]){ // shared chunks are always equal
+        if (isHashed(i) && other.isHashed(i) && (hashes[i] != other.hashes[i])){
+          return false;
+        }
+        if (!equalChunks(c[i], cOther[i])){
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * serialization support. Unless we are configured to use chunk hashes,
+   * this produces the same values as the corresponding flat ArrayFields, i.e.
+   * chunk sizes have to be multiples of the IntVector packing factors
+   */
+  public void appendTo (IntVector v){
+    if (serializeHashes){
+      for (int i=0; i<chunks.length; i++){
+        v.add(getChunkHash(i));
+      }
+    } else {
+      for (int i=0; i<chunks.length; i++){
+        appendChunk(v, chunks[i]);
+      }
+    }
+  }
+
+  //--- bulk operations
+
+  /**
+   * return a flat copy of all element values. Note this is NOT backed by us,
+   * i.e. modifications of the returned array are not reflected in our values
+   */
+  public Object toArray(){
+    return copyRange(0, length);
+  }
+
+  /**
+   * return a flat copy of the element values [idx, idx+len[
+   *
+   * @throws ArrayIndexOutOfBoundsException
+   */
+  public Object copyRange (int idx, int len){
+    if (idx < 0 || len < 0 || idx > length - len){
+      throw new ArrayIndexOutOfBoundsException("chunked array range " + idx + ',' + len + " out of bounds: " + length);
+    }
+
+    Object a = newChunk(len);
+    int i = 0;
+    while (i < len){
+      int j = idx + i;
+      int off = j & chunkMask;
+      int n = Math.min(len - i, getChunkLength(j >>> chunkShift) - off);
+      System.arraycopy(chunks[j >>> chunkShift], off, a, i, n);
+      i += n;
+    }
+
+    return a;
+  }
+
+  /**
+   * store the values [srcIdx, srcIdx+len[ of a flat array of the same element type
+   * at position dstIdx
+   *
+   * @throws ArrayIndexOutOfBoundsException
+   * @throws ArrayStoreException
+   */
+  public void copyFrom (Object src, int srcIdx, int dstIdx, int len){
+    if (src == null || src.getClass() != newChunk(0).getClass()){
+      throw new ArrayStoreException("incompatible array types for chunked array copy");
+    }
+    if (srcIdx < 0 || dstIdx < 0 || len < 0 ||
+        srcIdx > java.lang.reflect.Array.getLength(src) - len || dstIdx > length - len){
+      throw new ArrayIndexOutOfBoundsException("chunked array copy " + srcIdx + ',' + dstIdx + ',' + len + " out of bounds");
+    }
+
+    int i = 0;
+    while (i < len){
+      int j = dstIdx + i;
+      int off = j & chunkMask;
+      int n = Math.min(len - i, getChunkLength(j >>> chunkShift) - off);
+      System.arraycopy(src, srcIdx + i, getChunkForWrite(j), off, n);
+      i += n;
+    }
+  }
+
+  /**
+   * the ArrayFields.copyElementsFrom backend, which has to handle both chunked and
+   * flat source arrays
+   */
+  public void copyElementsFrom (ArrayFields src, int srcIdx, int dstIdx, int len){
+    if (src instanceof ChunkedArrayFields){
+      // this also takes care of overlapping self copies
+      Object a = ((ChunkedArrayFields)src).getChunks().copyRange(srcIdx, len);
+      copyFrom(a, 0, dstIdx, len);
+    } else {
+      copyFrom(src.getValues(), srcIdx, dstIdx, len);
+    }
+  }
+
+
+  //--- the concrete element type stores
+
+  public static class BooleanChunks extends ArrayChunks {
+    public BooleanChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new boolean[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((boolean[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((boolean[])chunk, (boolean[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.appendPacked((boolean[])chunk);
+    }
+    public boolean get (int idx){
+      return ((boolean[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, boolean value){
+      ((boolean[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+
+  public static class ByteChunks extends ArrayChunks {
+    public ByteChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new byte[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((byte[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((byte[])chunk, (byte[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.appendPacked((byte[])chunk);
+    }
+    public byte get (int idx){
+      return ((byte[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, byte value){
+      ((byte[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+
+  public static class CharChunks extends ArrayChunks {
+    public CharChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new char[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((char[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((char[])chunk, (char[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.appendPacked((char[])chunk);
+    }
+    public char get (int idx){
+      return ((char[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, char value){
+      ((char[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+
+  public static class ShortChunks extends ArrayChunks {
+    public ShortChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new short[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((short[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((short[])chunk, (short[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.appendPacked((short[])chunk);
+    }
+    public short get (int idx){
+      return ((short[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, short value){
+      ((short[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+
+  public static class IntChunks extends ArrayChunks {
+    public IntChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new int[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((int[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((int[])chunk, (int[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.append((int[])chunk);
+    }
+    public int get (int idx){
+      return ((int[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, int value){
+      ((int[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+
+  public static class LongChunks extends ArrayChunks {
+    public LongChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new long[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((long[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((long[])chunk, (long[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.appendBits((long[])chunk);
+    }
+    public long get (int idx){
+      return ((long[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, long value){
+      ((long[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+
+  public static class FloatChunks extends ArrayChunks {
+    public FloatChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new float[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((float[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((float[])chunk, (float[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.appendRawBits((float[])chunk);
+    }
+    public float get (int idx){
+      return ((float[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, float value){
+      ((float[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+
+  public static class DoubleChunks extends ArrayChunks {
+    public DoubleChunks (int length, int chunkShift, boolean serializeHashes){
+      super(length, chunkShift, serializeHashes);
+    }
+    protected Object newChunk (int chunkLength){
+      return new double[chunkLength];
+    }
+    protected int hashChunk (Object chunk){
+      return Arrays.hashCode((double[])chunk);
+    }
+    protected boolean equalChunks (Object chunk, Object otherChunk){
+      return Arrays.equals((double[])chunk, (double[])otherChunk);
+    }
+    protected void appendChunk (IntVector v, Object chunk){
+      v.appendRawBits((double[])chunk);
+    }
+    public double get (int idx){
+      return ((double[])chunks[idx >>> chunkShift])[idx & chunkMask];
+    }
+    public void set (int idx, double value){
+      ((double[])getChunkForWrite(idx))[idx & chunkMask] = value;
+    }
+  }
+}
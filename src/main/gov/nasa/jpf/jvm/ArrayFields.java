@@ -66,6 +66,24 @@ public abstract class ArrayFields extends Fields {
   
   public abstract Object getValues();
 
+  /**
+   * block copy of element values from another array of the same element type,
+   * which is the backend for System.arraycopy. Overridden by ArrayFields
+   * that don't store their values in a single flat array
+   *
+   * @throws java.lang.ArrayIndexOutOfBoundsException
+   * @throws java.lang.ArrayStoreException
+   */
+  public void copyElementsFrom (ArrayFields src, int srcIdx, int dstIdx, int length){
+    if (src instanceof ChunkedArrayFields){
+      // don't turn the whole source into a flat array
+      Object srcVals = ((ChunkedArrayFields)src).getChunks().copyRange(srcIdx, length);
+      System.arraycopy(srcVals, 0, getValues(), dstIdx, length);
+    } else {
+      System.arraycopy(src.getValues(), srcIdx, getValues(), dstIdx, length);
+    }
+  }
+
   public boolean getBooleanValue (int pos) {
   // overridden by subclass
       throw new JPFException( "not a boolean[]");
@@ -37,6 +37,12 @@ public class BooleanArrayFields extends ArrayFields {
     values = new boolean[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected BooleanArrayFields() {
+  }
+
   protected void printValue(PrintStream ps, int idx){
     ps.print(values[idx] ? 't' : 'f');
   }
@@ -61,7 +67,7 @@ public class BooleanArrayFields extends ArrayFields {
    * we check for type and equal element values
    */
   public boolean equals (Object o) {
-    if (o instanceof BooleanArrayFields) {
+    if (o instanceof BooleanArrayFields && !(o instanceof ChunkedBooleanArrayFields)) {
       BooleanArrayFields other = (BooleanArrayFields)o;
 
       boolean[] v = values;
@@ -36,6 +36,12 @@ public class ByteArrayFields extends ArrayFields {
     values = new byte[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected ByteArrayFields() {
+  }
+
   public byte[] asByteArray() {
     return values;
   }
@@ -57,7 +63,7 @@ public class ByteArrayFields extends ArrayFields {
   }
 
   public boolean equals (Object o) {
-    if (o instanceof ByteArrayFields) {
+    if (o instanceof ByteArrayFields && !(o instanceof ChunkedByteArrayFields)) {
       ByteArrayFields other = (ByteArrayFields)o;
 
       byte[] v = values;
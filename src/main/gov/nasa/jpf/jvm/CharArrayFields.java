@@ -38,6 +38,12 @@ public class CharArrayFields extends ArrayFields {
     values = new char[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected CharArrayFields() {
+  }
+
   public char[] asCharArray(){
     return values;
   }
@@ -83,7 +89,7 @@ public class CharArrayFields extends ArrayFields {
 
 
   public boolean equals (Object o) {
-    if (o instanceof CharArrayFields) {
+    if (o instanceof CharArrayFields && !(o instanceof ChunkedCharArrayFields)) {
       CharArrayFields other = (CharArrayFields)o;
 
       char[] v = values;
@@ -0,0 +1,136 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.util.HashData;
+import gov.nasa.jpf.util.IntVector;
+import gov.nasa.jpf.util.PrintUtils;
+
+import java.io.PrintStream;
+
+/**
+ * element values for large char[] objects, stored in ArrayChunks to
+ * make copy-on-write O(chunkSize) instead of O(length)
+ *
+ * NOTE - asCharArray() and getValues() return copies, i.e. they can't be used
+ * to modify element values
+ */
+public class ChunkedCharArrayFields extends CharArrayFields implements ChunkedArrayFields {
+
+  ArrayChunks.CharChunks chunks;
+
+  public ChunkedCharArrayFields (int length, int chunkShift, boolean serializeChunkHashes) {
+    chunks = new ArrayChunks.CharChunks(length, chunkShift, serializeChunkHashes);
+  }
+
+  public ArrayChunks getChunks() {
+    return chunks;
+  }
+
+  public char[] asCharArray() {
+    return (char[])chunks.toArray();
+  }
+
+  protected void printValue(PrintStream ps, int idx){
+    PrintUtils.printCharLiteral(ps, chunks.get(idx));
+  }
+
+  public void printElements( PrintStream ps, int max){
+    PrintUtils.printStringLiteral(ps, asCharArray(), max);
+  }
+
+  public char[] asCharArray (int offset, int length) {
+    return (char[])chunks.copyRange(offset, length);
+  }
+
+  public void setCharValues(char[] v){
+    chunks.copyFrom(v, 0, 0, v.length);
+  }
+
+  public String asString(int offset, int length) {
+    return new String(asCharArray(offset, length));
+  }
+
+  public boolean equals (int offset, int length, String s) {
+    if (offset+length > chunks.length()) {
+      return false;
+    }
+
+    for (int i=offset, j=0; j<length; i++, j++) {
+      if (chunks.get(i) != s.charAt(j)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public Object getValues(){
+    return chunks.toArray();
+  }
+
+  public int arrayLength() {
+    return chunks.length();
+  }
+
+  public int getHeapSize() {  // in bytes
+    return chunks.length() * 2;
+  }
+
+  public void appendTo (IntVector v) {
+    chunks.appendTo(v);
+  }
+
+  public void copyElementsFrom (ArrayFields src, int srcIdx, int dstIdx, int length){
+    chunks.copyElementsFrom(src, srcIdx, dstIdx, length);
+  }
+
+  public ChunkedCharArrayFields clone(){
+    ChunkedCharArrayFields f = (ChunkedCharArrayFields)cloneFields();
+    f.chunks = (ArrayChunks.CharChunks)chunks.cloneChunks();
+    return f;
+  }
+
+  public boolean equals (Object o) {
+    if (o instanceof ChunkedCharArrayFields) {
+      ChunkedCharArrayFields other = (ChunkedCharArrayFields)o;
+
+      if (!chunks.equals(other.chunks)) {
+        return false;
+      }
+
+      return compareAttrs(other);
+
+    } else {
+      return false;
+    }
+  }
+
+  public void setCharValue (int pos, char newValue) {
+    chunks.set(pos, newValue);
+  }
+
+  public char getCharValue (int pos) {
+    return chunks.get(pos);
+  }
+
+  public void hash(HashData hd) {
+    chunks.hash(hd);
+  }
+}
@@ -0,0 +1,105 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.util.HashData;
+import gov.nasa.jpf.util.IntVector;
+
+import java.io.PrintStream;
+
+/**
+ * element values for large double[] objects, stored in ArrayChunks to
+ * make copy-on-write O(chunkSize) instead of O(length)
+ *
+ * NOTE - asDoubleArray() and getValues() return copies, i.e. they can't be used
+ * to modify element values
+ */
+public class ChunkedDoubleArrayFields extends DoubleArrayFields implements ChunkedArrayFields {
+
+  ArrayChunks.DoubleChunks chunks;
+
+  public ChunkedDoubleArrayFields (int length, int chunkShift, boolean serializeChunkHashes) {
+    chunks = new ArrayChunks.DoubleChunks(length, chunkShift, serializeChunkHashes);
+  }
+
+  public ArrayChunks getChunks() {
+    return chunks;
+  }
+
+  public double[] asDoubleArray() {
+    return (double[])chunks.toArray();
+  }
+
+  protected void printValue(PrintStream ps, int idx){
+    ps.print(chunks.get(idx));
+  }
+
+  public Object getValues(){
+    return chunks.toArray();
+  }
+
+  public int arrayLength() {
+    return chunks.length();
+  }
+
+  public int getHeapSize() {  // in bytes
+    return chunks.length() * 8;
+  }
+
+  public void appendTo (IntVector v) {
+    chunks.appendTo(v);
+  }
+
+  public void copyElementsFrom (ArrayFields src, int srcIdx, int dstIdx, int length){
+    chunks.copyElementsFrom(src, srcIdx, dstIdx, length);
+  }
+
+  public ChunkedDoubleArrayFields clone(){
+    ChunkedDoubleArrayFields f = (ChunkedDoubleArrayFields)cloneFields();
+    f.chunks = (ArrayChunks.DoubleChunks)chunks.cloneChunks();
+    return f;
+  }
+
+  public boolean equals (Object o) {
+    if (o instanceof ChunkedDoubleArrayFields) {
+      ChunkedDoubleArrayFields other = (ChunkedDoubleArrayFields)o;
+
+      if (!chunks.equals(other.chunks)) {
+        return false;
+      }
+
+      return compareAttrs(other);
+
+    } else {
+      return false;
+    }
+  }
+
+  public void setDoubleValue (int pos, double newValue) {
+    chunks.set(pos, newValue);
+  }
+
+  public double getDoubleValue (int pos) {
+    return chunks.get(pos);
+  }
+
+  public void hash(HashData hd) {
+    chunks.hash(hd);
+  }
+}
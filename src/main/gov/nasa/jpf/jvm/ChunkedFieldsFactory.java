@@ -0,0 +1,78 @@
+//
+// Copyright (C) 2006 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+
+/**
+ * a FieldsFactory that uses chunked copy-on-write storage for large primitive
+ * arrays, so that storing a single element into a state stored array doesn't
+ * copy the whole array.
+ *
+ * Reference arrays are not chunked since the serializers and the garbage
+ * collector process them as flat int[] anyways
+ *
+ * configured with
+ *   vm.fields_factory.chunk_size = <elements per chunk, power of 2 >= 32 (default 1024)>
+ *   vm.fields_factory.min_chunked_length = <min array length to use chunks (default 4*chunk_size)>
+ *   vm.fields_factory.serialize_chunk_hashes = <serialize chunk hashes instead of values (default false)>
+ *
+ * Serializing chunk hashes means we don't have to walk unchanged chunks when
+ * computing state signatures, but it also makes state matching depend on
+ * 32bit hash values for such arrays, i.e. it can produce false positive matches
+ */
+public class ChunkedFieldsFactory extends DefaultFieldsFactory {
+
+  // has to be a multiple of 32 so that packed serialization of chunks is the
+  // same as for the whole array
+  static final int MIN_CHUNK_SIZE = 32;
+
+  protected int chunkShift;
+  protected int minChunkedLength;
+  protected boolean serializeChunkHashes;
+
+  public ChunkedFieldsFactory (Config conf){
+    int chunkSize = conf.getInt("vm.fields_factory.chunk_size", 1024);
+    if (chunkSize < MIN_CHUNK_SIZE || Integer.bitCount(chunkSize) != 1){
+      throw new JPFConfigException("vm.fields_factory.chunk_size has to be a power of 2 >= " + MIN_CHUNK_SIZE + ": " + chunkSize);
+    }
+
+    chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+    minChunkedLength = conf.getInt("vm.fields_factory.min_chunked_length", chunkSize * 4);
+    serializeChunkHashes = conf.getBoolean("vm.fields_factory.serialize_chunk_hashes", false);
+  }
+
+  public Fields createArrayFields (String type, ClassInfo ci, int nElements, int typeSize, boolean isReferenceArray) {
+    if (nElements >= minChunkedLength){
+      switch (type.charAt(1)){
+        case 'Z': return new ChunkedBooleanArrayFields(nElements, chunkShift, serializeChunkHashes);
+        case 'B': return new ChunkedByteArrayFields(nElements, chunkShift, serializeChunkHashes);
+        case 'C': return new ChunkedCharArrayFields(nElements, chunkShift, serializeChunkHashes);
+        case 'S': return new ChunkedShortArrayFields(nElements, chunkShift, serializeChunkHashes);
+        case 'I': return new ChunkedIntArrayFields(nElements, chunkShift, serializeChunkHashes);
+        case 'J': return new ChunkedLongArrayFields(nElements, chunkShift, serializeChunkHashes);
+        case 'F': return new ChunkedFloatArrayFields(nElements, chunkShift, serializeChunkHashes);
+        case 'D': return new ChunkedDoubleArrayFields(nElements, chunkShift, serializeChunkHashes);
+      }
+    }
+
+    return super.createArrayFields(type, ci, nElements, typeSize, isReferenceArray);
+  }
+}
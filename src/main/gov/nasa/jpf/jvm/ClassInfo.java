@@ -28,7 +28,10 @@ import gov.nasa.jpf.classfile.ClassFileContainer;
 import gov.nasa.jpf.classfile.ClassFileException;
 import gov.nasa.jpf.classfile.ClassFileReaderAdapter;
 import gov.nasa.jpf.classfile.ClassPath;
+import gov.nasa.jpf.classfile.ConstantPoolCache;
+import gov.nasa.jpf.classfile.IndexedClassPath;
 import gov.nasa.jpf.jvm.bytecode.Instruction;
+import gov.nasa.jpf.util.FileUtils;
 import gov.nasa.jpf.util.ImmutableList;
 import gov.nasa.jpf.util.JPFLogger;
 import gov.nasa.jpf.util.LocationSpec;
@@ -92,6 +95,9 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
    */
   protected static gov.nasa.jpf.classfile.ClassPath cp;
 
+  // optional parallel classpath lookup for the startup classes
+  protected static ClassPrefetcher prefetcher;
+
   /**
    * ClassLoader that loaded this class.
    */
@@ -113,6 +119,11 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
    */
   protected static FieldsFactory fieldsFactory;
 
+  /**
+   * do we defer parsing method code until it is first used
+   */
+  protected static boolean isLazyCode;
+
 
   /*
    * some distinguished ClassInfos we keep around for efficiency reasons
@@ -270,6 +281,25 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
     //buildBCELModelClassPath(config);
     buildModelClassPath(config);
 
+    if (config.getBoolean("vm.cp_cache", false)){
+      ClassFile.setConstantPoolCache( ConstantPoolCache.getCache( config.getInt("vm.cp_cache.size", 4096)));
+    } else {
+      ClassFile.setConstantPoolCache(null);
+    }
+    ClassFile.setLazyConstantPool( config.getBoolean("vm.lazy_cp", false));
+    isLazyCode = config.getBoolean("vm.lazy_code", false);
+
+    if (prefetcher != null){
+      prefetcher.shutdown();
+      prefetcher = null;
+    }
+    if (config.getBoolean("vm.parallel_loading", false)){
+      int nWorkers = config.getInt("vm.parallel_loading.workers", Runtime.getRuntime().availableProcessors());
+      if (nWorkers > 0){
+        prefetcher = new ClassPrefetcher(cp, nWorkers);
+      }
+    }
+
     attributor = config.getEssentialInstance("vm.attributor.class",
                                                          Attributor.class);
 
@@ -294,6 +324,33 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
     return true;
   }
 
+  /**
+   * called by the VM once the startup transition is done
+   */
+  public static void startupCompleted () {
+    if (prefetcher != null){
+      logger.info("prefetched ", prefetcher.getNumberOfFetchedClasses(), " startup classes");
+      prefetcher.shutdown();
+      prefetcher = null;
+    }
+  }
+
+  /**
+   * start loading the classfiles of the given classes and their super classes
+   * and interfaces in parallel (if vm.parallel_loading is set). This does not
+   * create any ClassInfos
+   */
+  public static void prefetchClasses (List<String> clsNames){
+    if (prefetcher != null){
+      for (String clsName : clsNames){
+        String typeName = Types.getClassNameFromTypeName(clsName);
+        if (!isBuiltinClass(typeName)){
+          prefetcher.prefetch(typeName);
+        }
+      }
+    }
+  }
+
   public static gov.nasa.jpf.classfile.ClassPath getModelClassPath() {
     return cp;
   }
@@ -523,7 +580,14 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
     @Override
     public void setMethodAttribute(ClassFile cf, int methodIndex, int attrIndex, String name, int attrLength) {
       if (name == ClassFile.CODE_ATTR){
-        cf.parseCodeAttr(this, curMi);
+        if (isLazyCode){ // just get the frame sizes, code is parsed on demand
+          int pos = cf.getPos();
+          curMi.setMaxStack(cf.u2(pos));
+          curMi.setMaxLocals(cf.u2(pos+2));
+          curMi.setUnlinkedCode(cf, pos);
+        } else {
+          cf.parseCodeAttr(this, curMi);
+        }
 
       } else if (name == ClassFile.SIGNATURE_ATTR){
         cf.parseSignatureAttr(this, curMi);
@@ -797,6 +861,15 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
     cf.parse(reader);
   }
 
+  /**
+   * deferred parsing of a method Code attribute (see vm.lazy_code)
+   */
+  void linkCode (MethodInfo mi, ClassFile cf, int codePos){
+    Initializer reader = new Initializer();
+    reader.curMi = mi;
+    cf.parseCodeAttr(reader, mi, codePos);
+  }
+
   public ClassInfo(ClassFile cf, int uniqueId) throws ClassFileException {
 
     Initializer reader = new Initializer();
@@ -1209,7 +1282,13 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
 
   private static ClassInfo loadClass(String typeName, int uniqueId){
     try {
-      ClassPath.Match match = cp.findMatch(typeName);
+      ClassPath.Match match = null;
+      if (prefetcher != null){
+        match = prefetcher.getMatch(typeName);
+      }
+      if (match == null){
+        match = cp.findMatch(typeName);
+      }
       if (match == null){
         throw new NoClassInfoException(typeName);
       }
@@ -1946,7 +2025,13 @@ public class ClassInfo extends InfoObject implements Iterable<MethodInfo>, Gener
   }
 
   protected static void buildModelClassPath (Config config){
-    cp = new ClassPath();
+    if (config.getBoolean("vm.classpath_index", false)){
+      String dir = config.getString("vm.classpath_index.dir",
+                     FileUtils.getUserDir("snapshots").getPath());
+      cp = new IndexedClassPath(new File(dir));
+    } else {
+      cp = new ClassPath();
+    }
 
     for (File f : config.getPathArray("boot_classpath")){
       cp.addPathName(f.getAbsolutePath());
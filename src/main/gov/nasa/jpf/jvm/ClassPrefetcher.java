@@ -0,0 +1,149 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.classfile.ClassFile;
+import gov.nasa.jpf.classfile.ClassFileException;
+import gov.nasa.jpf.classfile.ClassFileReaderAdapter;
+import gov.nasa.jpf.classfile.ClassPath;
+import gov.nasa.jpf.util.JPFLogger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * parallel prefetching of the startup class set
+ *
+ * ClassInfo construction itself is inherently sequential - it recursively
+ * resolves super classes through the StaticArea, and assigns global ids to
+ * ClassInfos and MethodInfos, which have to be deterministic for state matching.
+ * What can be done in parallel is the classpath lookup (jar access and
+ * inflation), and scanning the classfile headers for super classes and
+ * interfaces, to get the transitive closure of classes we have to load.
+ *
+ * The results are picked up by ClassInfo.loadClass(), which still creates and
+ * registers ClassInfos in the same order as without prefetching. If a
+ * ConstantPoolCache is set, header scans also parse the constpools in parallel,
+ * so that the subsequent ClassInfo construction just restores them
+ */
+class ClassPrefetcher {
+
+  static JPFLogger logger = JPF.getLogger("gov.nasa.jpf.jvm.ClassPrefetcher");
+
+  ClassPath cp;
+  ExecutorService pool;
+  ConcurrentHashMap<String,Future<ClassPath.Match>> fetched;
+
+  ClassPrefetcher (ClassPath cp, int nWorkers){
+    this.cp = cp;
+    fetched = new ConcurrentHashMap<String,Future<ClassPath.Match>>(256);
+
+    pool = Executors.newFixedThreadPool(nWorkers, new ThreadFactory() {
+      int n;
+      public synchronized Thread newThread (Runnable r){
+        Thread t = new Thread(r, "class-prefetcher-" + (++n));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * schedule loading of 'clsName' and (transitively) its super classes and
+   * interfaces, unless this has been done already
+   */
+  void prefetch (String clsName){
+    if (!fetched.containsKey(clsName)){
+      FutureTask<ClassPath.Match> task = new FutureTask<ClassPath.Match>(new Fetcher(clsName));
+      if (fetched.putIfAbsent(clsName, task) == null){
+        pool.execute(task);
+      }
+    }
+  }
+
+  /**
+   * get the classpath match for 'clsName', waiting for it if it is still
+   * in progress. Returns null if this class was not prefetched or the fetch
+   * failed, in which case the caller has to do a normal classpath lookup (and
+   * report errors)
+   */
+  ClassPath.Match getMatch (String clsName){
+    Future<ClassPath.Match> f = fetched.get(clsName);
+    if (f != null){
+      try {
+        return f.get();
+      } catch (InterruptedException ix){
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException x){
+        logger.warning("prefetching ", clsName, " failed: ", x.getCause());
+      }
+    }
+    return null;
+  }
+
+  int getNumberOfFetchedClasses (){
+    return fetched.size();
+  }
+
+  void shutdown (){
+    pool.shutdownNow();
+    fetched.clear();
+  }
+
+  /**
+   * header scanner that stops after the interfaces
+   */
+  class SuperScanner extends ClassFileReaderAdapter {
+    public void setClass(ClassFile cf, String clsName, String superClsName, int flags, int cpCount) {
+      if (superClsName != null){
+        prefetch(Types.getClassNameFromTypeName(superClsName));
+      }
+    }
+    public void setInterface(ClassFile cf, int ifcIndex, String ifcName) {
+      prefetch(Types.getClassNameFromTypeName(ifcName));
+    }
+    public void setInterfacesDone(ClassFile cf){
+      cf.stopParsing();
+    }
+  }
+
+  class Fetcher implements Callable<ClassPath.Match> {
+    String clsName;
+
+    Fetcher (String clsName){
+      this.clsName = clsName;
+    }
+
+    public ClassPath.Match call() throws ClassFileException {
+      ClassPath.Match match = cp.findMatch(clsName);
+      if (match != null){
+        ClassFile cf = new ClassFile(clsName, match.getBytes());
+        cf.parse(new SuperScanner());
+      }
+      return match;
+    }
+  }
+}
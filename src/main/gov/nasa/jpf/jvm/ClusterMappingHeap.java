@@ -0,0 +1,272 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.Transformer;
+
+import java.util.Arrays;
+
+/**
+ * a SparseClusterArrayHeap that maps threads to reference clusters through a
+ * translation table, instead of using the thread id as the cluster index.
+ *
+ * The default heap uses the upper 8 bits of a reference value as the thread
+ * id, which limits us to 128 threads (references have to be positive) with
+ * 16M objects each. This heap uses a configurable number of cluster bits
+ * ('vm.heap.cluster_bits', default 20 -> 2048 clusters with 1M objects each),
+ * and
+ *
+ *  - assigns clusters to threads on demand. The n-th cluster of a thread is
+ *    derived from (tid, n), so that the mapping only depends on the
+ *    allocation history of the program, not on the order in which threads
+ *    ran out of space. The first cluster of a thread is the one with the
+ *    same index as the thread id, so that references are the same as with
+ *    the default heap as long as there are not more threads than clusters
+ *  - gives threads additional clusters if their current ones are full
+ *  - recycles clusters of terminated threads once all their objects are
+ *    collected
+ *
+ * Within a cluster, references are still allocated in order, i.e. reference
+ * values stay canonical per thread. The cluster table and the per-thread
+ * cluster lists are part of the restorable heap state
+ */
+public class ClusterMappingHeap extends SparseClusterArrayHeap {
+
+  static final int NO_OWNER = -1;
+  static final int[] NO_CLUSTERS = new int[0];
+
+  static class ClusterSnapshot<T> extends Snapshot<T> {
+    int[] clusterOwner;
+    int[][] threadClusters;
+
+    ClusterSnapshot (int size){
+      super(size);
+    }
+  }
+
+  protected int clusterBits;
+  protected int clusterSize;
+  protected int nClusters;
+
+  // the thread id that owns a cluster, or NO_OWNER. This is copy-on-first-write
+  protected int[] clusterOwner;
+
+  // the clusters owned by each thread (indexed by tid), in acquisition order.
+  // Both the outer and the modified inner arrays are copy-on-first-write
+  protected int[][] threadClusters;
+
+  protected boolean clustersChanged;
+
+  public ClusterMappingHeap (Config config, KernelState ks){
+    super(config, ks);
+
+    clusterBits = config.getInt("vm.heap.cluster_bits", 20);
+    if (clusterBits < 8 || clusterBits > 24){
+      throw new JPFConfigException("vm.heap.cluster_bits has to be within [8..24]: " + clusterBits);
+    }
+    clusterSize = 1 << clusterBits;
+    nClusters = 1 << (31 - clusterBits); // reference values have to be positive
+
+    clusterOwner = new int[nClusters];
+    Arrays.fill(clusterOwner, NO_OWNER);
+    threadClusters = new int[16][];
+    clustersChanged = true; // no need to clone on first modification
+  }
+
+  public int getNumberOfClusters (){
+    return nClusters;
+  }
+
+  public int getClusterSize (){
+    return clusterSize;
+  }
+
+  public int getClusterOwner (int objref){
+    return clusterOwner[objref >>> clusterBits];
+  }
+
+  public int[] getThreadClusters (int tid){
+    if (tid >= 0 && tid < threadClusters.length && threadClusters[tid] != null){
+      return threadClusters[tid];
+    } else {
+      return NO_CLUSTERS;
+    }
+  }
+
+  protected int allocateObjectRef (ThreadInfo ti){
+    int tid = (ti != null) ? ti.getId() : 0;
+
+    // check the clusters this thread already owns. We always do this in
+    // acquisition order (which is part of the restored state), so that the
+    // reference only depends on the heap state and not on the path we got here
+    int[] owned = getThreadClusters(tid);
+    for (int i=0; i<owned.length; i++){
+      int c = owned[i];
+      int index = firstNullIndex(c << clusterBits, clusterSize);
+      if (index >= 0){
+        return index;
+      }
+    }
+
+    // we need a new one
+    int c = acquireCluster(tid, owned.length);
+    return c << clusterBits; // a new cluster is empty
+  }
+
+  /**
+   * the cluster we try first for the n-th cluster of thread 'tid'. For n==0
+   * this is the cluster with index 'tid', which keeps references the same as
+   * with the default heap for programs with few threads
+   */
+  protected int getPreferredCluster (int tid, int n){
+    if (n == 0 && tid < nClusters){
+      return tid;
+    } else {
+      int h = tid * 0x9e3779b9 + n * 0x85ebca6b;
+      h ^= (h >>> 16);
+      return h & (nClusters - 1);
+    }
+  }
+
+  /**
+   * find the n-th cluster for 'tid'. We probe linearly from the preferred
+   * cluster for one that is either unassigned, or belongs to a terminated
+   * thread and doesn't contain any live objects anymore
+   */
+  protected int acquireCluster (int tid, int n){
+    int c0 = getPreferredCluster(tid, n);
+    int c = -1;
+
+    for (int i=0; i<nClusters; i++){
+      int ci = (c0 + i) & (nClusters - 1);
+      if (isAssignable(ci)){
+        c = ci;
+        break;
+      }
+    }
+
+    if (c < 0){
+      throw new JPFException("heap address space exhausted, no free cluster for thread: " + tid);
+    }
+
+    if (!clustersChanged){
+      clusterOwner = clusterOwner.clone();
+      threadClusters = threadClusters.clone();
+      clustersChanged = true;
+    }
+
+    int oldOwner = clusterOwner[c];
+    if (oldOwner != NO_OWNER){
+      removeThreadCluster(oldOwner, c);
+    }
+
+    clusterOwner[c] = tid;
+    addThreadCluster(tid, c);
+    attributes |= ATTR_ATTRIBUTE_CHANGED;
+
+    return c;
+  }
+
+  // the inner arrays might be shared with snapshots, so we always replace them
+  protected void addThreadCluster (int tid, int c){
+    if (tid >= threadClusters.length){
+      int[][] a = new int[Math.max(tid+1, threadClusters.length*2)][];
+      System.arraycopy(threadClusters, 0, a, 0, threadClusters.length);
+      threadClusters = a;
+    }
+
+    int[] owned = getThreadClusters(tid);
+    int[] a = new int[owned.length+1];
+    System.arraycopy(owned, 0, a, 0, owned.length);
+    a[owned.length] = c;
+    threadClusters[tid] = a;
+  }
+
+  protected void removeThreadCluster (int tid, int c){
+    int[] owned = getThreadClusters(tid);
+    for (int i=0; i<owned.length; i++){
+      if (owned[i] == c){
+        int[] a = new int[owned.length-1];
+        System.arraycopy(owned, 0, a, 0, i);
+        System.arraycopy(owned, i+1, a, i, a.length-i);
+        threadClusters[tid] = a;
+        return;
+      }
+    }
+  }
+
+  protected boolean isAssignable (int cluster){
+    int owner = clusterOwner[cluster];
+    if (owner == NO_OWNER){
+      return true;
+
+    } else {
+      ThreadInfo ti = vm.getThreadList().getThreadInfoForId(owner);
+      if (ti == null || ti.isTerminated()){
+        return !isUsedCluster(cluster);
+      } else {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * does the cluster still contain objects? The chunk list of the underlying
+   * SparseClusterArray is sorted, so we can stop at the first chunk above
+   * the cluster
+   */
+  protected boolean isUsedCluster (int cluster){
+    int base = cluster << clusterBits;
+    int top = base + clusterSize;
+
+    for (Chunk c = head; c != null && c.base < top; c = c.next){
+      if (c.base >= base && !c.isEmpty()){
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  protected <T> Snapshot<T> createSnapshot (int size){
+    return new ClusterSnapshot<T>(size);
+  }
+
+  public <T> Snapshot<T> getSnapshot (Transformer<ElementInfo,T> transformer){
+    ClusterSnapshot<T> snap = (ClusterSnapshot<T>) super.getSnapshot(transformer);
+
+    snap.clusterOwner = clusterOwner;
+    snap.threadClusters = threadClusters;
+    clustersChanged = false;
+
+    return snap;
+  }
+
+  public <T> void restoreSnapshot (Snapshot<T> snap, Transformer<T,ElementInfo> transformer){
+    super.restoreSnapshot(snap, transformer);
+
+    ClusterSnapshot<T> cs = (ClusterSnapshot<T>)snap;
+    clusterOwner = cs.clusterOwner;
+    threadClusters = cs.threadClusters;
+    clustersChanged = false;
+  }
+}
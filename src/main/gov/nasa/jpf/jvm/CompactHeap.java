@@ -0,0 +1,76 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.util.IntSet;
+import gov.nasa.jpf.util.ObjVector;
+import gov.nasa.jpf.util.UnsortedArrayIntSet;
+
+/**
+ * a SparseClusterArrayHeap that tries to minimize the number of host objects
+ * per SUT object, which can dominate host memory and GC time for SUTs that
+ * create millions of small objects.
+ *
+ * Without this, each new SUT object gets its own DynamicElementInfo, Fields,
+ * Monitor and referencing thread set (IntSet + int[]). Since Monitors and
+ * refTid sets are copy-on-first-write (see ElementInfo.setMonitor() and
+ * updateRefTidWith()), new objects can share
+ *
+ *  - one empty Monitor (most objects are never used for synchronization)
+ *  - one referencing thread set per allocating thread
+ *
+ * which also speeds up ElementInfo comparison since refTid sets are compared
+ * by identity.
+ *
+ * Note this is not a full struct-of-arrays heap - ElementInfo objects are
+ * used as identity carrying handles throughout the VM, listeners and peers,
+ * so they can't be turned into flyweights without changing their API
+ */
+public class CompactHeap extends SparseClusterArrayHeap {
+
+  // we never modify this one, ElementInfos clone it before changing it
+  protected Monitor emptyMonitor = new Monitor();
+
+  // shared single element refTid sets, indexed by thread id
+  protected ObjVector<IntSet> tidSets = new ObjVector<IntSet>(16);
+
+  public CompactHeap (Config config, KernelState ks){
+    super(config, ks);
+  }
+
+  protected IntSet getTidSet (int tid){
+    IntSet set = tidSets.get(tid);
+    if (set == null){
+      set = new UnsortedArrayIntSet();
+      set.add(tid);
+      tidSets.set(tid, set);
+    }
+    return set;
+  }
+
+  protected DynamicElementInfo createElementInfo (ClassInfo ci, Fields f, Monitor m, ThreadInfo ti){
+    int tid = ti == null ? 0 : ti.getId();
+    return new DynamicElementInfo(ci, f, m, getTidSet(tid));
+  }
+
+  protected Monitor createMonitor (){
+    return emptyMonitor;
+  }
+}
@@ -35,6 +35,12 @@ public class DoubleArrayFields extends ArrayFields {
     values = new double[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected DoubleArrayFields() {
+  }
+
   public double[] asDoubleArray() {
     return values;
   }
@@ -66,7 +72,7 @@ public class DoubleArrayFields extends ArrayFields {
   }
 
   public boolean equals (Object o) {
-    if (o instanceof DoubleArrayFields) {
+    if (o instanceof DoubleArrayFields && !(o instanceof ChunkedDoubleArrayFields)) {
       DoubleArrayFields other = (DoubleArrayFields)o;
 
       double[] v = values;
@@ -19,6 +19,7 @@
 package gov.nasa.jpf.jvm;
 
 import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.IntSet;
 
 /**
  * A specialized version of ElementInfo for use in the DynamicArea.
@@ -56,6 +57,17 @@ public class DynamicElementInfo extends ElementInfo implements Restorable<Elemen
     attributes = ci.getElementInfoAttrs();
   }
 
+  /**
+   * this is for heaps that share the referencing thread sets of new objects.
+   * Since refTid sets are copy-on-first-write, the provided set is never modified
+   */
+  public DynamicElementInfo (ClassInfo ci, Fields f, Monitor m, IntSet refTid) {
+    super(ci, f, m, 0);
+
+    this.refTid = refTid;
+    attributes = ci.getElementInfoAttrs();
+  }
+
   public boolean isObject(){
     return true;
   }
@@ -373,6 +373,15 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
    * business as much centralized in ElementInfo and DynamicArea as possible
    */
   void markRecursive(Heap heap) {
+    markRecursive(heap, null);
+  }
+
+  /**
+   * markRecursive() variant that hands the referenced objects to a marker
+   * (e.g. a parallel mark worker) instead of queuing them in the heap. If
+   * 'marker' is null, references are queued with heap.queueMark()
+   */
+  void markRecursive(Heap heap, ReferenceProcessor marker) {
     int i, n;
 
     if (isArray()) {
@@ -381,7 +390,11 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
         for (i = 0; i < n; i++) {
           int objref = fields.getReferenceValue(i);
           if (objref != MJIEnv.NULL){
-            heap.queueMark( objref);
+            if (marker == null){
+              heap.queueMark( objref);
+            } else {
+              marker.processReference(objref);
+            }
           }
         }
       }
@@ -405,7 +418,11 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
             } else {
               int objref = fields.getReferenceValue(fi.getStorageOffset());
               if (objref != MJIEnv.NULL){
-                heap.queueMark( objref);
+                if (marker == null){
+                  heap.queueMark( objref);
+                } else {
+                  marker.processReference(objref);
+                }
               }
             }
           }
@@ -991,7 +1008,12 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
     if (fi.isReference()) {
       Fields f = ei.cloneFields();
       int offset = fi.getStorageOffset();
+      int oldValue = f.getReferenceValue(offset);
       f.setReferenceValue( offset, newValue);
+
+      if (oldValue != newValue && oldValue != MJIEnv.NULL){
+        JVM.getVM().getSystemState().referenceDropped(oldValue);
+      }
     } else {
       throw new JPFException("not a reference field: " + fi.getName());
     }
@@ -1311,11 +1333,19 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
     // note also this preserves values in case of a self copy
     cloneFields();
 
-    Object srcVals = ((ArrayFields)eiSrc.getFields()).getValues();
-    Object dstVals = ((ArrayFields)fields).getValues();
+    if (isRefArray && JVM.getVM().getSystemState().isIncrementalGC()){
+      // the overwritten elements might have been the last references to their objects
+      int[] dstRefs = ((ArrayFields)fields).asReferenceArray();
+      int max = Math.min(dstIdx + length, dstRefs.length);
+      for (int i=Math.max(dstIdx, 0); i<max; i++){
+        if (dstRefs[i] != MJIEnv.NULL){
+          JVM.getVM().getSystemState().referenceDropped(dstRefs[i]);
+        }
+      }
+    }
 
     // this might throw ArrayIndexOutOfBoundsExceptions and ArrayStoreExceptions
-    System.arraycopy(srcVals, srcIdx, dstVals, dstIdx, length);
+    ((ArrayFields)fields).copyElementsFrom((ArrayFields)eiSrc.getFields(), srcIdx, dstIdx, length);
 
     // now take care of the attributes
     // <2do> what in case arraycopy did throw - we should only copy the changed element attrs
@@ -1368,7 +1398,13 @@ public abstract class ElementInfo implements Cloneable, Restorable<ElementInfo>
   }
   public void setReferenceElement(int idx, int value){
     checkArray(idx);
-    cloneFields().setReferenceValue(idx, value);
+    Fields f = cloneFields();
+    int oldValue = f.getReferenceValue(idx);
+    f.setReferenceValue(idx, value);
+
+    if (oldValue != value && oldValue != MJIEnv.NULL){
+      JVM.getVM().getSystemState().referenceDropped(oldValue);
+    }
   }
 
 
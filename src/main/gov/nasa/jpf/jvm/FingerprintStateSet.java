@@ -0,0 +1,51 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+/**
+ * a StateSet that does not store anything. It only computes the fingerprint
+ * of the current state (with the same hash as JenkinsStateSet), and hands out
+ * a new id for each state, i.e. all states look new to the VM.
+ *
+ * This is for searches that do their own duplicate detection, such as the
+ * external memory ExternalBFSearch, which would otherwise still need the
+ * in-memory hashtable of all visited states
+ */
+public class FingerprintStateSet extends SerializingStateSet {
+
+  protected int lastStateId = -1;
+  protected long lastFingerprint;
+
+  public int size () {
+    return lastStateId + 1;
+  }
+
+  protected int add (int[] state) {
+    lastFingerprint = JenkinsStateSet.longLookup3Hash(state);
+    return ++lastStateId;
+  }
+
+  /**
+   * the fingerprint of the last state that was added, which is the current
+   * state if it wasn't ignored
+   */
+  public long getLastFingerprint () {
+    return lastFingerprint;
+  }
+}
@@ -35,6 +35,12 @@ public class FloatArrayFields extends ArrayFields {
     values = new float[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected FloatArrayFields() {
+  }
+
   public float[] asFloatArray() {
     return values;
   }
@@ -66,7 +72,7 @@ public class FloatArrayFields extends ArrayFields {
   }
 
   public boolean equals (Object o) {
-    if (o instanceof FloatArrayFields) {
+    if (o instanceof FloatArrayFields && !(o instanceof ChunkedFloatArrayFields)) {
       FloatArrayFields other = (FloatArrayFields)o;
 
       float[] v = values;
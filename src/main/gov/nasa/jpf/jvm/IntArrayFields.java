@@ -36,6 +36,12 @@ public class IntArrayFields extends ArrayFields {
     values = new int[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected IntArrayFields() {
+  }
+
   public int[] asIntArray() {
     return values;
   }
@@ -67,7 +73,7 @@ public class IntArrayFields extends ArrayFields {
   }
 
   public boolean equals (Object o) {
-    if (o instanceof IntArrayFields) {
+    if (o instanceof IntArrayFields && !(o instanceof ChunkedIntArrayFields)) {
       IntArrayFields other = (IntArrayFields)o;
 
       int[] v = values;
@@ -85,6 +85,14 @@ public class JPF_gov_nasa_jpf_jvm_Verify {
     }
   }
 
+  /**
+   * did the SUT set or increment any counters during this run? Counters are
+   * host-side state that can be inspected after the run
+   */
+  public static boolean hasCounters (){
+    return (counter != null);
+  }
+
   public static int getCounter__I__I (MJIEnv env, int clsObjRef, int counterId) {
     if ((counter == null) || (counterId < 0) || (counterId >= counter.length)) {
       return 0;
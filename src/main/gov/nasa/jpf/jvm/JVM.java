@@ -114,6 +114,9 @@ public class JVM {
   /** this was the last stateId - note this is also used for stateless model checking */
   protected int newStateId;
 
+  // set once the first transition (executing the startup clinits) is done
+  protected boolean isStartupCompleted;
+
   /** the structure responsible for storing and restoring backtrack info */
   protected Backtracker backtracker;
 
@@ -130,6 +133,9 @@ public class JVM {
   /** did we get a new transition */
   protected boolean transitionOccurred;
 
+  /** are we only executing forward, i.e. don't store, match or backtrack states */
+  protected boolean isSimulation;
+
   /** how we model execution time */
   protected TimeModel timeModel;
   
@@ -201,6 +207,7 @@ public class JVM {
     backtracker.attach(this);
 
     newStateId = -1;
+    isStartupCompleted = false;
   }
 
   protected void initSubsystems (Config config) {
@@ -503,6 +510,10 @@ public class JVM {
     // last not least the application main class
     list.add(mainClassName);
 
+    // get the classfiles in parallel, if configured. ClassInfos are still
+    // created and registered sequentially, in list order
+    ClassInfo.prefetchClasses(list);
+
     // now resolve all the entries in the list and queue the corresponding ClassInfos
     for (String clsName : list) {
       ClassInfo ci = ClassInfo.tryGetResolvedClassInfo(clsName);
@@ -620,6 +631,32 @@ public class JVM {
     listeners = Misc.removeElement(listeners, removeListener);
   }
 
+  /**
+   * turn tree output on or off, e.g. while we re-execute transitions that
+   * have already been executed before. Returns the previous setting
+   */
+  public boolean setTreeOutput (boolean isTreeOutput) {
+    boolean wasTreeOutput = treeOutput;
+    treeOutput = isTreeOutput;
+    return wasTreeOutput;
+  }
+
+  /**
+   * turn simulation mode on or off. In simulation mode, forward() does not
+   * push backtrack states, doesn't record the path and steps, and doesn't
+   * store or match states (i.e. nothing gets serialized). We can't backtrack
+   * in this mode, but we can still restore RestorableVMStates that were
+   * taken before. This is for searches that only execute single paths
+   */
+  public void setSimulation (boolean isSimulation) {
+    this.isSimulation = isSimulation;
+    ss.recordSteps(isSimulation ? false : hasToRecordSteps());
+  }
+
+  public boolean isSimulation() {
+    return isSimulation;
+  }
+
   public void setTraceReplay (boolean isReplay) {
     isTraceReplay = isReplay;
   }
@@ -1785,7 +1822,9 @@ public class JVM {
         checkConsistency(true); // don't push an inconsistent state
       }
 
-      backtracker.pushKernelState();
+      if (!isSimulation) {
+        backtracker.pushKernelState();
+      }
 
       // cache this before we execute (and increment) the next insn(s)
       lastTrailInfo = path.getLast();
@@ -1798,8 +1837,17 @@ public class JVM {
         // in a consistent state
       } // every other exception goes upwards
 
-      backtracker.pushSystemState();
-      updatePath();
+      if (!isSimulation) {
+        backtracker.pushSystemState();
+        updatePath();
+      } else if (out != null) {
+        out.setLength(0); // there is no path to store it in
+      }
+
+      if (!isStartupCompleted){
+        isStartupCompleted = true;
+        ClassInfo.startupCompleted();
+      }
 
       if (!isIgnoredState()) {
         // if this is ignored we are going to backtrack anyways
@@ -1810,7 +1858,7 @@ public class JVM {
           ss.gcIfNeeded();
         }
 
-        if (stateSet != null) {
+        if (stateSet != null && !isSimulation) {
           newStateId = stateSet.size();
           int id = stateSet.addCurrent();
           ss.setId(id);
@@ -1852,6 +1900,10 @@ public class JVM {
     ss.activateGC();
   }
 
+  public void requestGC () {
+    ss.requestGC();
+  }
+
 
   //--- various state attribute getters and setters (mostly forwarding to SystemState)
 
@@ -35,6 +35,12 @@ public class LongArrayFields extends ArrayFields {
     values = new long[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected LongArrayFields() {
+  }
+
   public long[] asLongArray() {
     return values;
   }
@@ -67,7 +73,7 @@ public class LongArrayFields extends ArrayFields {
 
 
   public boolean equals (Object o) {
-    if (o instanceof LongArrayFields) {
+    if (o instanceof LongArrayFields && !(o instanceof ChunkedLongArrayFields)) {
       LongArrayFields other = (LongArrayFields)o;
 
       long[] v = values;
@@ -112,6 +112,12 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   /** Maximum number of elements on the stack */
   protected int maxStack;
 
+  /** if code linking is deferred, the classfile and Code attribute position
+   * we still have to parse (null if the code is linked or there is none) */
+  protected ClassFile unlinkedCf;
+  protected int unlinkedCodePos;
+  protected boolean isLinking;
+
   /** null if we don't have any */
   AnnotationInfo[][] parameterAnnotations;
 
@@ -273,6 +279,41 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
       code[i].setMethodInfo(this);
     }
     this.code = code;
+    if (!isLinking){
+      this.unlinkedCf = null; // explicitly set code supersedes pending classfile code
+    }
+  }
+
+  /**
+   * defer parsing the Code attribute at 'codePos' until the code (or any of
+   * its tables) is first requested, e.g. by invoking this method or by a
+   * listener that inspects instructions
+   */
+  void setUnlinkedCode (ClassFile cf, int codePos){
+    unlinkedCf = cf;
+    unlinkedCodePos = codePos;
+  }
+
+  public boolean isLinked (){
+    return (unlinkedCf == null);
+  }
+
+  /**
+   * parse and link the code of this method if this was deferred. This is called
+   * automatically by all code accessors, but listeners can also use it explicitly
+   */
+  public synchronized void linkCode (){
+    ClassFile cf = unlinkedCf;
+    if (cf != null && !isLinking){ // accessors used while parsing don't recurse
+      isLinking = true;
+      try {
+        ci.linkCode(this, cf, unlinkedCodePos);
+        // only now we are linked - if parsing fails, the next access retries (and throws)
+        unlinkedCf = null;
+      } finally {
+        isLinking = false;
+      }
+    }
   }
   
   public static int getNumberOfLoadedMethods () {
@@ -495,6 +536,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * LocalVarInfos
    */
   public LocalVarInfo[] getArgumentLocalVars(){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (localVars == null){ // shortcut in case we don't have args or localVars;
       return null;
     }
@@ -631,6 +675,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * return number of instructions
    */
   public int getNumberOfInstructions() {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (code == null){
       return 0;
     }
@@ -642,6 +689,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * Returns a specific instruction.
    */
   public Instruction getInstruction (int i) {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (code == null) {
       return null;
     }
@@ -657,6 +707,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * Returns the instruction at a certain position.
    */
   public Instruction getInstructionAt (int position) {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (code == null) {
       return null;
     }
@@ -674,10 +727,16 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * Returns the instructions of the method.
    */
   public Instruction[] getInstructions () {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     return code;
   }
   
   public boolean includesLine (int line){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     int len = code.length;
     return (code[0].getLineNumber() <= line) && (code[len].getLineNumber() >= line);
   }
@@ -687,6 +746,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   }
 
   public Instruction[] getInstructionsForLineInterval (int l1, int l2){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     int len = code.length;
 
     if ((code[0].getLineNumber() > l2) || (code[len-1].getLineNumber() < l1)){
@@ -730,6 +792,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * Returns the line number for a given position.
    */
   public int getLineNumber (Instruction pc) {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (lineNumbers == null) {
       if (pc == null)
         return -1;
@@ -746,10 +811,16 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * Returns a table to translate positions into line numbers.
    */
   public int[] getLineNumbers () {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     return lineNumbers;
   }
 
   public boolean containsLineNumber (int n){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (lineNumbers != null){
       return (lineNumbers[0] <= n) && (lineNumbers[lineNumbers.length-1] <= n);
     }
@@ -758,6 +829,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   }
   
   public boolean intersectsLineNumbers( int first, int last){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (lineNumbers != null){
       if ((last < lineNumbers[0]) || (first > lineNumbers[lineNumbers.length-1])){
         return false;
@@ -781,6 +855,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   }
 
   public ExceptionHandler[] getExceptions () {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     return exceptionHandlers;
   }
 
@@ -790,6 +867,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
 
 
   public LocalVarInfo getLocalVar(String name, int pc){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     LocalVarInfo[] vars = localVars;
     if (vars != null){
       for (int i = 0; i < vars.length; i++) {
@@ -805,6 +885,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   }
 
   public LocalVarInfo getLocalVar (int slotIdx, int pc){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     LocalVarInfo[] vars = localVars;
 
     if (vars != null){
@@ -820,6 +903,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   }
 
   public LocalVarInfo[] getLocalVars() {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     return localVars; 
   }
 
@@ -829,6 +915,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
    * scope entries
    */
   public String[] getLocalVariableNames() {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     String[] names = new String[localVars.length];
 
     for (int i=0; i<localVars.length; i++){
@@ -906,6 +995,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   }
 
   public Instruction getLastInsn() {
+    if (unlinkedCf != null){
+      linkCode();
+    }
     if (code == null){
       return null;
     }
@@ -1152,10 +1244,13 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   }
 
   public boolean hasCode(){
-    return (code != null);
+    return (code != null) || (unlinkedCf != null);
   }
   
   public boolean hasEmptyBody (){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     // only instruction is a return
     return (code.length == 1 && (code[0] instanceof ReturnInstruction));
   }
@@ -1322,6 +1417,9 @@ public class MethodInfo extends InfoObject implements Cloneable, GenericSignatur
   
   // for debugging purposes
   public void dump(){
+    if (unlinkedCf != null){
+      linkCode();
+    }
     System.out.println("--- " + this);
     for (int i = 0; i < code.length; i++) {
       System.out.printf("%2d [%d]: %s\n", i, code[i].getPosition(), code[i].toString());
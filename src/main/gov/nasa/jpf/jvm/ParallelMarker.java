@@ -0,0 +1,276 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.IntVector;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * a parallel mark phase for SparseClusterArrayHeap
+ *
+ * the root set (pinned down objects, thread stacks and static fields) is
+ * collected sequentially and then partitioned over a number of workers, each
+ * of which does a depth first traversal with its own mark stack. Objects are
+ * claimed through an atomic mark bitmap, i.e. each reachable object is traced
+ * by exactly one worker, which is also the only one to set its ElementInfo mark
+ * bit. Workers with deep stacks split off work into a shared queue if other
+ * workers are idle.
+ *
+ * The set of marked objects is the same as with the sequential marker, the
+ * only difference is the order in which WeakReferences get registered, which
+ * doesn't matter for cleanupWeakRefs()
+ */
+class ParallelMarker {
+
+  // the bitmap is a sparse array of 64k-bit regions, to cope with the
+  // 8/24 bit cluster/index layout of SparseClusterArray references
+  static final int REGION_SHIFT = 16;
+  static final int REGION_MASK = (1 << REGION_SHIFT) -1;
+  static final int N_REGIONS = 1 << (32 - REGION_SHIFT);
+
+  // stack depth above which workers try to share their work
+  static final int SHARE_THRESHOLD = 64;
+
+  // the worker threads are shared by all heaps (i.e. all JPF runs within this
+  // process). Threads are created on demand and terminate after being idle
+  // for a minute, so we neither leak threads per heap nor keep them around
+  // after the last GC
+  static ExecutorService pool;
+
+  SparseClusterArrayHeap heap;
+  int nWorkers;
+
+  AtomicReferenceArray<AtomicLongArray> regions;
+  ConcurrentLinkedQueue<int[]> sharedWork;
+  AtomicInteger nActive;
+
+  volatile Throwable failure;
+
+  ParallelMarker (SparseClusterArrayHeap heap, int nWorkers){
+    this.heap = heap;
+    this.nWorkers = nWorkers;
+
+    regions = new AtomicReferenceArray<AtomicLongArray>(N_REGIONS);
+    sharedWork = new ConcurrentLinkedQueue<int[]>();
+    nActive = new AtomicInteger();
+  }
+
+  /**
+   * atomically set the mark bit for objref, return true if we were the
+   * first ones to mark it
+   */
+  boolean claim (int objref){
+    int r = objref >>> REGION_SHIFT;
+    AtomicLongArray region = regions.get(r);
+    if (region == null){
+      regions.compareAndSet(r, null, new AtomicLongArray((REGION_MASK+1) >> 6));
+      region = regions.get(r);
+    }
+
+    int bit = objref & REGION_MASK;
+    int idx = bit >>> 6;
+    long mask = 1L << (bit & 63);
+
+    for (;;){
+      long v = region.get(idx);
+      if ((v & mask) != 0){
+        return false;
+      }
+      if (region.compareAndSet(idx, v, v | mask)){
+        return true;
+      }
+    }
+  }
+
+  void clearRegions (){
+    for (int i=0; i<N_REGIONS; i++){
+      if (regions.get(i) != null){
+        regions.set(i, null);
+      }
+    }
+  }
+
+  static synchronized ExecutorService getPool (){
+    if (pool == null){
+      pool = Executors.newCachedThreadPool( new ThreadFactory() {
+        AtomicInteger n = new AtomicInteger();
+        public Thread newThread (Runnable r){
+          Thread t = new Thread(r, "gc-marker-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return pool;
+  }
+
+  /**
+   * mark all objects reachable from the provided roots. Once this returns,
+   * all live objects have their ElementInfo mark bit set
+   */
+  void mark (IntVector roots){
+    int nRoots = roots.size();
+    Worker[] workers = new Worker[nWorkers];
+    for (int i=0; i<nWorkers; i++){
+      workers[i] = new Worker(nRoots / nWorkers + 1);
+    }
+    for (int i=0; i<nRoots; i++){
+      workers[i % nWorkers].processReference(roots.get(i));
+    }
+
+    failure = null;
+    nActive.set(nWorkers);
+    final CountDownLatch done = new CountDownLatch(nWorkers-1);
+
+    try {
+      ExecutorService es = getPool();
+      for (int i=1; i<nWorkers; i++){
+        final Worker w = workers[i];
+        es.execute( new Runnable(){
+          public void run(){
+            try {
+              w.run();
+            } finally {
+              done.countDown();
+            }
+          }
+        });
+      }
+
+      workers[0].run(); // the calling thread is a worker, too
+
+      try {
+        done.await();
+      } catch (InterruptedException ix){
+        throw new JPFException("parallel marking interrupted");
+      }
+
+    } finally {
+      sharedWork.clear();
+      clearRegions();
+    }
+
+    if (failure != null){
+      throw new JPFException(failure);
+    }
+  }
+
+  class Worker implements Runnable, ReferenceProcessor {
+    int[] stack;
+    int top;
+
+    Worker (int initialSize){
+      stack = new int[Math.max(initialSize, SHARE_THRESHOLD*2)];
+    }
+
+    // called for roots and from ElementInfo.markRecursive()
+    public void processReference (int objref){
+      if (objref != MJIEnv.NULL && claim(objref)){
+        if (top == stack.length){
+          int[] newStack = new int[stack.length * 2];
+          System.arraycopy(stack, 0, newStack, 0, top);
+          stack = newStack;
+        }
+        stack[top++] = objref;
+      }
+    }
+
+    void share (){
+      int n = top/2;
+      int[] batch = new int[n];
+      top -= n;
+      System.arraycopy(stack, top, batch, 0, n);
+      sharedWork.add(batch);
+    }
+
+    void load (int[] batch){
+      // elements of a batch are already claimed
+      int n = batch.length;
+      if (stack.length < n){
+        stack = new int[n * 2];
+      }
+      System.arraycopy(batch, 0, stack, 0, n);
+      top = n;
+    }
+
+    void trace (){
+      while (top > 0){
+        ElementInfo ei = heap.get(stack[--top]);
+        ei.setMarked();
+        ei.markRecursive(heap, this);
+
+        if (top > SHARE_THRESHOLD && nActive.get() < nWorkers && sharedWork.isEmpty()){
+          share();
+        }
+      }
+    }
+
+    public void run (){
+      try {
+        for (;;){
+          trace();
+
+          int[] batch = sharedWork.poll();
+          if (batch != null){
+            load(batch);
+            continue;
+          }
+
+          // we are idle - wait for shared work, or until all others are idle too
+          nActive.decrementAndGet();
+          for (;;){
+            if (failure != null){
+              return;
+            }
+            if (!sharedWork.isEmpty()){
+              nActive.incrementAndGet();
+              batch = sharedWork.poll();
+              if (batch != null){
+                load(batch);
+                break;
+              }
+              nActive.decrementAndGet();
+
+            } else if (nActive.get() == 0){
+              // nobody can add work anymore (order of checks does matter)
+              if (sharedWork.isEmpty()){
+                return;
+              }
+            } else {
+              Thread.yield();
+            }
+          }
+        }
+
+      } catch (Throwable t){
+        failure = t;
+        nActive.decrementAndGet();
+      }
+    }
+  }
+}
@@ -35,6 +35,12 @@ public class ShortArrayFields extends ArrayFields {
     values = new short[length];
   }
 
+  /**
+   * for subclasses that use their own element storage
+   */
+  protected ShortArrayFields() {
+  }
+
   public short[] asShortArray() {
     return values;
   }
@@ -66,7 +72,7 @@ public class ShortArrayFields extends ArrayFields {
   }
 
   public boolean equals (Object o) {
-    if (o instanceof ShortArrayFields) {
+    if (o instanceof ShortArrayFields && !(o instanceof ChunkedShortArrayFields)) {
       ShortArrayFields other = (ShortArrayFields)o;
       short[] v = values;
       short[] vOther = other.values;
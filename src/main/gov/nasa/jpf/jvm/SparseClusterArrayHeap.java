@@ -75,6 +75,13 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
   // this is set to false upon backtrack/restore
   protected boolean liveBitValue;
 
+  // parallel mark phase, only used if the heap has at least parallelMarkMinObjects
+  protected ParallelMarker parallelMarker;
+  protected int parallelMarkMinObjects;
+
+  // if set, roots are collected here instead of being queued (for parallel marking)
+  protected IntVector rootRefs;
+
 
   public static class Snapshot<T> extends SparseClusterArray.Snapshot<ElementInfo,T> {
     int attributes;
@@ -142,6 +149,12 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
     if (config.getBoolean("vm.sweep",true)){
       attributes |= ATTR_GC;
     }
+
+    int nWorkers = config.getInt("vm.gc.parallel_workers", Runtime.getRuntime().availableProcessors());
+    parallelMarkMinObjects = config.getInt("vm.gc.parallel_min_objects", -1);
+    if (parallelMarkMinObjects >= 0 && nWorkers > 1){
+      parallelMarker = new ParallelMarker(this, nWorkers);
+    }
   }
 
   // internal stuff
@@ -151,8 +164,30 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
     return new DynamicElementInfo(ci,f,m,tid);
   }
 
+  protected Monitor createMonitor (){
+    return new Monitor();
+  }
+
+  /**
+   * get the next free reference value for an object that is allocated by 'ti'.
+   * We use the thread id as the cluster index, to keep references canonical
+   * across different thread interleavings
+   */
+  protected int allocateObjectRef (ThreadInfo ti){
+    int tid = (ti != null) ? ti.getId() : 0;
+    int index = firstNullIndex(tid << S1, MAX_CLUSTER_ENTRIES);
+    if (index < 0){
+      throw new JPFException("per-thread heap limit exceeded");
+    }
+    return index;
+  }
+
+  protected <T> Snapshot<T> createSnapshot (int size){
+    return new Snapshot<T>(size);
+  }
+
   public <T> Snapshot<T> getSnapshot (Transformer<ElementInfo,T> transformer){
-    Snapshot snap = new Snapshot(nSet);
+    Snapshot<T> snap = createSnapshot(nSet);
     populateSnapshot(snap,transformer);
 
     // these are copy-on-first-write
@@ -218,14 +253,10 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
     Fields  f = ci.createArrayFields(type, nElements,
                                      Types.getTypeSize(elementType),
                                      Types.isReference(elementType));
-    Monitor  m = new Monitor();
+    Monitor  m = createMonitor();
     DynamicElementInfo ei = createElementInfo(ci, f, m, ti);
 
-    int tid = (ti != null) ? ti.getId() : 0;
-    int index = firstNullIndex(tid << S1, MAX_CLUSTER_ENTRIES);
-    if (index < 0){
-      throw new JPFException("per-thread heap limit exceeded");
-    }
+    int index = allocateObjectRef(ti);
     ei.setObjectRef(index);
     set(index, ei);
     
@@ -241,15 +272,11 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
   public int newObject(ClassInfo ci, ThreadInfo ti) {
     // create the thing itself
     Fields f = ci.createInstanceFields();
-    Monitor m = new Monitor();
+    Monitor m = createMonitor();
     ElementInfo ei = createElementInfo(ci, f, m, ti);
 
     // get next free objRef into thread cluster
-    int tid = (ti != null) ? ti.getId() : 0;
-    int index = firstNullIndex(tid << S1, MAX_CLUSTER_ENTRIES);
-    if (index < 0){
-      throw new JPFException("per-thread heap limit exceeded");
-    }
+    int index = allocateObjectRef(ti);
     ei.setObjectRef(index);
     set(index, ei);
 
@@ -392,7 +419,8 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
     }
   }
 
-  public void registerWeakReference (ElementInfo ei) {
+  // this might be called concurrently by parallel mark workers
+  public synchronized void registerWeakReference (ElementInfo ei) {
     if (weakRefs == null) {
       weakRefs = new ArrayList<ElementInfo>();
     }
@@ -430,15 +458,21 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
     weakRefs = null;
     liveBitValue = !liveBitValue;
 
-    markPinDownList();
-    vm.getThreadList().markRoots(this); // mark thread stacks
-    vm.getStaticArea().markRoots(this); // mark objects referenced from StaticArea ElementInfos
+    if (parallelMarker != null && nSet >= parallelMarkMinObjects){
+      rootRefs = new IntVector(1024);
+      markRoots();
+      IntVector roots = rootRefs;
+      rootRefs = null;
+
+      parallelMarker.mark(roots); // this sets the mark bits of all reachable objects
 
-    // add pinned down objects
+    } else {
+      markRoots();
 
-    // at this point, all roots should be in the markQueue, but not traced yet
+      // at this point, all roots should be in the markQueue, but not traced yet
 
-    markQueue.process(this); // trace all entries - this gets recursive
+      markQueue.process(this); // trace all entries - this gets recursive
+    }
     
     ThreadInfo ti = vm.getCurrentThread();
     int tid = ti.getId();
@@ -501,12 +535,26 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
     ei.markRecursive( this); // this might in turn call queueMark
   }
 
+  protected void markRoots (){
+    markPinDownList();
+    vm.getThreadList().markRoots(this); // mark thread stacks
+    vm.getStaticArea().markRoots(this); // mark objects referenced from StaticArea ElementInfos
+  }
+
+  protected void markRoot (int objref){
+    if (rootRefs != null){
+      rootRefs.add(objref);
+    } else {
+      queueMark(objref);
+    }
+  }
+
   void markPinDownList (){
     if (pinDownList != null){
       int len = pinDownList.size();
       for (int i=0; i<len; i++){
         int objref = pinDownList.get(i);
-        queueMark(objref);
+        markRoot(objref);
       }
     }
   }
@@ -518,7 +566,7 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
    */
   public void markStaticRoot (int objref) {
     if (objref != -1) {
-      queueMark(objref);
+      markRoot(objref);
     }
   }
 
@@ -529,7 +577,7 @@ public class SparseClusterArrayHeap extends SparseClusterArray<ElementInfo> impl
    */
   public void markThreadRoot (int objref, int tid) {
     if (objref != -1) {
-      queueMark(objref);
+      markRoot(objref);
     }
   }
 
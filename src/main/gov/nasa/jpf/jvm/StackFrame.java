@@ -385,6 +385,9 @@ public class StackFrame implements Cloneable {
 
   public void setOperand (int offset, int v, boolean isRefValue){
     int i = top-offset;
+    if (slots[i] != v){
+      dropLocalRef(i);
+    }
     slots[i] = v;
     isRef.set(i, isRefValue);
   }
@@ -913,18 +916,20 @@ public class StackFrame implements Cloneable {
   
 
   public void setLocalVariable (int index, int v, boolean ref) {
-    // <2do> activateGc should be replaced by local refChanged
-    boolean activateGc = (isRef.get(index) && (slots[index] != -1));
+    int old = slots[index];
+    boolean wasRef = isRef.get(index);
 
     slots[index] = v;
     isRef.set(index,ref);
 
-    if (ref) {
-      if (v != -1) activateGc = true;
-    }
-
-    if (activateGc) {
-        JVM.getVM().getSystemState().activateGC();
+    if (wasRef && (old != -1)) {
+      SystemState ss = JVM.getVM().getSystemState();
+      ss.activateGC();
+      if (!(ref && (old == v))) {
+        ss.referenceDropped(old);
+      }
+    } else if (ref && (v != -1)) {
+      JVM.getVM().getSystemState().activateGC();
     }
   }
 
@@ -991,6 +996,19 @@ public class StackFrame implements Cloneable {
     return slots; // we should probably clone
   }
 
+  /**
+   * notify the SystemState that the reference value stored in slot 'index'
+   * is about to be overwritten
+   */
+  protected void dropLocalRef (int index){
+    if (isRef.get(index)){
+      int ref = slots[index];
+      if (ref != -1){
+        JVM.getVM().getSystemState().referenceDropped(ref);
+      }
+    }
+  }
+
   public void visitReferenceSlots (ReferenceProcessor visitor){
     for (int i=isRef.nextSetBit(0); i>=0 && i<=top; i=isRef.nextSetBit(i+1)){
       visitor.processReference(slots[i]);
@@ -1000,6 +1018,8 @@ public class StackFrame implements Cloneable {
   public void setLongLocalVariable (int index, long v) {
     // WATCH OUT: apparently, slots can change type, so we have to
     // reset the reference flag (happened in JavaSeq)
+    dropLocalRef(index);
+    dropLocalRef(index+1);
 
     slots[index] = Types.hiLong(v);
     isRef.clear(index);
@@ -1096,6 +1116,12 @@ public class StackFrame implements Cloneable {
 
   // stack operations
   public void clearOperandStack () {
+    for (int i=isRef.nextSetBit(stackBase); i>=0 && i<=top; i=isRef.nextSetBit(i+1)){
+      if (slots[i] != -1){
+        JVM.getVM().getSystemState().referenceDropped(slots[i]);
+      }
+    }
+
     if (attrs != null){
       for (int i=stackBase; i<= top; i++){
         attrs[i] = null;
@@ -1735,8 +1761,12 @@ public class StackFrame implements Cloneable {
     // <2do> get rid of this !
     for (int i=top; i>t; i--) {
       if (isRef.get(i) && (slots[i] != -1)) {
-        JVM.getVM().getSystemState().activateGC();
-        break;
+        SystemState ss = JVM.getVM().getSystemState();
+        if (!ss.isIncrementalGC()){
+          ss.activateGC();
+          break;
+        }
+        ss.referenceDropped(slots[i]);
       }
     }
 
@@ -1757,7 +1787,9 @@ public class StackFrame implements Cloneable {
     // <2do> get rid of this
     if (isRef.get(top)) {
       if (v != -1) {
-        JVM.getVM().getSystemState().activateGC();
+        SystemState ss = JVM.getVM().getSystemState();
+        ss.activateGC();       // ignored in incremental mode
+        ss.referenceDropped(v); // ignored in non-incremental mode
       }
     }
 
@@ -1801,6 +1833,10 @@ public class StackFrame implements Cloneable {
   }
 
   public void storeOperand (int index){
+    if (slots[index] != slots[top]){
+      dropLocalRef(index);
+    }
+
     slots[index] = slots[top];
     isRef.set( index, isRef.get(top));
 
@@ -1816,6 +1852,9 @@ public class StackFrame implements Cloneable {
     int t = top-1;
     int i = index;
 
+    dropLocalRef(i);
+    dropLocalRef(i+1);
+
     slots[i] = slots[t];
     isRef.clear(i);
 
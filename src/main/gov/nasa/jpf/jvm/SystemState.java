@@ -22,9 +22,11 @@ import gov.nasa.jpf.Config;
 import gov.nasa.jpf.JPFException;
 import gov.nasa.jpf.jvm.bytecode.Instruction;
 import gov.nasa.jpf.util.HashData;
+import gov.nasa.jpf.util.IntVector;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -209,6 +211,19 @@ public class SystemState {
   // number of new allocs within a single transition exceeds this value
   int maxAllocGC;
   int nAlloc;
+
+  // incremental gc - instead of conservatively collecting whenever a reference
+  // value is pushed or popped, we only remember references that got dropped
+  // (overwritten fields/elements/locals, popped operands and frames) within the
+  // current transition, and only collect if one of them could have become garbage
+  boolean isIncrementalGC;
+  int maxDroppedRefs;
+  IntVector droppedRefs;
+  ReferenceProcessor droppedRefCollector = new ReferenceProcessor() {
+    public void processReference (int ref){
+      referenceDropped(ref);
+    }
+  };
   
   /**
    * choice randomization policies, which can be set from JPF configuration
@@ -272,6 +287,12 @@ public class SystemState {
       maxAllocGC = Integer.MAX_VALUE;
     }
 
+    isIncrementalGC = config.getBoolean("vm.gc.incremental", false);
+    if (isIncrementalGC){
+      maxDroppedRefs = config.getInt("vm.gc.max_dropped_refs", 1024);
+      droppedRefs = new IntVector(32);
+    }
+
     // recordSteps is set later by VM, first we need a reporter (which requires the VM)
   }
 
@@ -643,10 +664,121 @@ public class SystemState {
     return uncaughtException;
   }
 
+  /**
+   * conservative gc trigger that is used if a reference value is stored or
+   * removed somewhere. This is ignored in incremental mode, where we rely on
+   * referenceDropped() notifications
+   */
   public void activateGC () {
+    if (!isIncrementalGC){
+      GCNeeded = true;
+    }
+  }
+
+  /**
+   * unconditionally request a gc at the end of the current transition (e.g.
+   * because a whole thread stack is gone, or System.gc() was called)
+   */
+  public void requestGC () {
     GCNeeded = true;
   }
 
+  public boolean isIncrementalGC () {
+    return isIncrementalGC;
+  }
+
+  /**
+   * notification that a reference to 'objref' was removed from a field, array
+   * element, local variable or operand stack slot, i.e. the referenced object
+   * might have become unreachable. This is ignored in non-incremental mode,
+   * where we rely on activateGC()
+   */
+  public void referenceDropped (int objref) {
+    if (isIncrementalGC && (objref != MJIEnv.NULL)){
+      if (!GCNeeded){
+        if (droppedRefs.size() < maxDroppedRefs){
+          droppedRefs.add(objref);
+        } else {
+          GCNeeded = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * notification that all references held by a (popped or cleared) frame are gone
+   */
+  public void referencesDropped (StackFrame frame) {
+    if (isIncrementalGC){
+      if (!GCNeeded){
+        frame.visitReferenceSlots(droppedRefCollector);
+      }
+    } else if (frame.hasAnyRef()){
+      GCNeeded = true;
+    }
+  }
+
+  /**
+   * check if any of the references that were dropped within this transition
+   * could have become garbage. Objects that are already recycled, pinned down,
+   * or still referenced from a live thread stack cannot be garbage. Everything
+   * else is a candidate, which requires a full collection
+   */
+  protected boolean hasGarbageCandidates () {
+    int n = droppedRefs.size();
+    if (n == 0){
+      return false;
+    }
+
+    Heap heap = ks.getHeap();
+    final int[] candidates = new int[n];
+    int nCandidates = 0;
+
+    for (int i=0; i<n; i++){
+      int ref = droppedRefs.get(i);
+      ElementInfo ei = heap.get(ref);
+      if (ei != null && !ei.isPinnedDown()){
+        candidates[nCandidates++] = ref;
+      }
+    }
+    if (nCandidates == 0){
+      return false;
+    }
+
+    Arrays.sort(candidates, 0, nCandidates);
+    final int len = nCandidates;
+    final int[] nRemaining = { len };
+    final boolean[] isReferenced = new boolean[len];
+
+    ReferenceProcessor stackScanner = new ReferenceProcessor() {
+      public void processReference (int ref){
+        int idx = Arrays.binarySearch(candidates, 0, len, ref);
+        if (idx >= 0){
+          // there might be duplicates
+          for (int j=idx; j>=0 && candidates[j] == ref; j--){
+            if (!isReferenced[j]){ isReferenced[j] = true; nRemaining[0]--; }
+          }
+          for (int j=idx+1; j<len && candidates[j] == ref; j++){
+            if (!isReferenced[j]){ isReferenced[j] = true; nRemaining[0]--; }
+          }
+        }
+      }
+    };
+
+    for (ThreadInfo ti : ks.getThreadList().getThreads()){
+      if (ti.isAlive()){
+        for (StackFrame frame = ti.getTopFrame(); frame != null; frame = frame.getPrevious()){
+          frame.visitReferenceSlots(stackScanner);
+          if (nRemaining[0] == 0){
+            return false;
+          }
+        }
+      }
+    }
+
+    return true;
+  }
+
   public boolean hasRestorer (Object key){
     if (restorers != null){
       return restorers.containsKey(key);
@@ -684,11 +816,15 @@ public class SystemState {
   }
   
   public void gcIfNeeded () {
-    if (GCNeeded) {
+    if (GCNeeded || (isIncrementalGC && hasGarbageCandidates())) {
       ks.gc();
       GCNeeded = false;
     }
 
+    if (isIncrementalGC){
+      droppedRefs.clear();
+    }
+
     nAlloc = 0;
   }
 
@@ -2507,7 +2507,7 @@ public class ThreadInfo
 
       ss.clearAtomic();
       cleanupThreadObject(ei);
-      vm.activateGC();  // stack is gone, so reachability might change
+      vm.requestGC();  // stack is gone, so reachability might change
 
       if (tl.hasOtherNonDaemonRunnablesThan(this)){
         ChoiceGenerator<ThreadInfo> cg = ss.getSchedulerFactory().createThreadTerminateCG(this);
@@ -2769,9 +2769,7 @@ public class ThreadInfo
     StackFrame frame = top;
 
     //--- do our housekeeping
-    if (frame.hasAnyRef()) {
-      vm.getSystemState().activateGC();
-    }
+    vm.getSystemState().referencesDropped(frame);
 
     // there always is one since we start all threads through directcalls
     top = frame.getPrevious();
@@ -0,0 +1,236 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.listener;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.annotation.JPFOption;
+import gov.nasa.jpf.annotation.JPFOptions;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.MethodInfo;
+import gov.nasa.jpf.jvm.bytecode.IfInstruction;
+import gov.nasa.jpf.jvm.bytecode.Instruction;
+import gov.nasa.jpf.report.ConsolePublisher;
+import gov.nasa.jpf.report.Publisher;
+import gov.nasa.jpf.search.Search;
+
+import java.io.PrintWriter;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * listener that ends time bounded searches once coverage saturates, i.e. if
+ * we didn't find any new instructions, branch outcomes or (optionally) new
+ * states for a configured fraction of the elapsed time. This is meant to be
+ * used together with the BudgetChecker, to not waste the rest of the time
+ * budget on a search that doesn't get anywhere anymore.
+ *
+ * New coverage is also sampled in sliding windows, so that the report shows
+ * the recent coverage rates along with the reason for the termination
+ */
+@JPFOptions({
+  @JPFOption(type = "Double", key = "saturation.fraction", defaultValue = "0.5", comment = "stop search if there was no new coverage for this fraction of the elapsed time"),
+  @JPFOption(type = "Long", key = "saturation.min_time", defaultValue = "10000", comment = "don't stop search before specified duration [msec]"),
+  @JPFOption(type = "Long", key = "saturation.window", defaultValue = "1000", comment = "duration of the sampling windows [msec]"),
+  @JPFOption(type = "Int", key = "saturation.windows", defaultValue = "10", comment = "number of sampling windows used to compute coverage rates"),
+  @JPFOption(type = "Boolean", key = "saturation.count_states", defaultValue = "true", comment = "do new states count as new coverage")
+})
+public class CoverageSaturationChecker extends ListenerAdapter {
+
+  static final int CHECK_INTERVAL = 10000;
+  static final int CHECK_INTERVAL1 = CHECK_INTERVAL-1;
+
+  static final int INSN = 0;
+  static final int BRANCH = 1;
+  static final int STATE = 2;
+  static final String[] KIND_NAMES = { "instructions", "branches", "new states" };
+
+  JVM vm;
+  Search search;
+  long insnCount;
+
+  //--- the thresholds
+  double fraction;
+  long minTime;
+  boolean countStates;
+
+  //--- the coverage
+  // per method: 3 bits per instruction (executed, true branch, false branch)
+  HashMap<MethodInfo,BitSet> covered = new HashMap<MethodInfo,BitSet>();
+  MethodInfo lastMi;
+  BitSet lastBits;
+
+  long[] total = new long[3];
+
+  long tStart;
+  long tLastNew;
+
+  //--- the sliding windows, which are a ring buffer of new coverage counts
+  long windowDuration;
+  long[][] windows;
+  int curWindow;
+  long tWindowStart;
+  int nWindows;  // number of completed windows, up to windows.length
+
+  // the termination decision, null if we didn't terminate
+  String message;
+
+  public CoverageSaturationChecker (Config conf, JPF jpf) {
+    fraction = conf.getDouble("saturation.fraction", 0.5);
+    minTime = conf.getDuration("saturation.min_time", 10000);
+    windowDuration = Math.max(1, conf.getDuration("saturation.window", 1000));
+    windows = new long[Math.max(1, conf.getInt("saturation.windows", 10))][3];
+    countStates = conf.getBoolean("saturation.count_states", true);
+
+    tStart = tLastNew = tWindowStart = System.currentTimeMillis();
+
+    search = jpf.getSearch();
+    vm = jpf.getVM();
+
+    jpf.addPublisherExtension(ConsolePublisher.class, this);
+  }
+
+  void newCoverage (int kind) {
+    total[kind]++;
+    windows[curWindow][kind]++;
+    tLastNew = System.currentTimeMillis();
+  }
+
+  void advanceWindows (long now) {
+    while (now - tWindowStart >= windowDuration) {
+      tWindowStart += windowDuration;
+      curWindow = (curWindow + 1) % windows.length;
+      windows[curWindow][INSN] = windows[curWindow][BRANCH] = windows[curWindow][STATE] = 0;
+      if (nWindows < windows.length) {
+        nWindows++;
+      }
+    }
+  }
+
+  /**
+   * new coverage per second over the completed windows
+   */
+  public double getRate (int kind) {
+    if (nWindows == 0) {
+      return 0.0;
+    }
+
+    long n = 0;
+    for (int i=1; i<=nWindows; i++) {
+      n += windows[(curWindow - i + windows.length) % windows.length][kind];
+    }
+    return (n * 1000.0) / (nWindows * windowDuration);
+  }
+
+  public boolean isSaturated () {
+    long now = System.currentTimeMillis();
+    advanceWindows(now);
+
+    long elapsed = now - tStart;
+    long idle = now - tLastNew;
+
+    if (elapsed >= minTime && idle >= elapsed * fraction) {
+      message = "coverage saturated: no new coverage for " + Publisher.formatHMS(idle)
+              + " of " + Publisher.formatHMS(elapsed);
+      return true;
+    }
+
+    return false;
+  }
+
+  public void stateAdvanced (Search search) {
+    if (countStates && search.isNewState()) {
+      newCoverage(STATE);
+    }
+
+    if (isSaturated()) {
+      search.notifySearchConstraintHit(message);
+      search.terminate();
+    }
+  }
+
+  public void instructionExecuted (JVM vm) {
+    Instruction insn = vm.getLastInstruction();
+    MethodInfo mi = insn.getMethodInfo();
+
+    if (mi != null) {
+      if (mi != lastMi) {
+        lastBits = covered.get(mi);
+        if (lastBits == null) {
+          lastBits = new BitSet(mi.getNumberOfInstructions()*3);
+          covered.put(mi, lastBits);
+        }
+        lastMi = mi;
+      }
+
+      int idx = insn.getInstructionIndex() * 3;
+      if (!lastBits.get(idx)) {
+        lastBits.set(idx);
+        newCoverage(INSN);
+      }
+
+      if (insn instanceof IfInstruction) {
+        idx += ((IfInstruction)insn).getConditionValue() ? 1 : 2;
+        if (!lastBits.get(idx)) {
+          lastBits.set(idx);
+          newCoverage(BRANCH);
+        }
+      }
+    }
+
+    if ((insnCount++ % CHECK_INTERVAL) == CHECK_INTERVAL1) {
+      if (isSaturated()) {
+        search.notifySearchConstraintHit(message);
+
+        vm.getCurrentThread().breakTransition();
+        search.terminate();
+      }
+    }
+  }
+
+  public void publishFinished (Publisher publisher) {
+    PrintWriter pw = publisher.getOut();
+    publisher.publishTopicStart("coverage saturation");
+
+    long now = System.currentTimeMillis();
+    advanceWindows(now);
+
+    pw.print("elapsed time: " + Publisher.formatHMS(now - tStart));
+    pw.println(", last new coverage after: " + Publisher.formatHMS(tLastNew - tStart));
+
+    for (int kind=INSN; kind<=STATE; kind++) {
+      if (kind == STATE && !countStates) {
+        continue;
+      }
+      pw.print(KIND_NAMES[kind]);
+      pw.print(": ");
+      pw.print(total[kind]);
+      pw.print(" (recent rate: ");
+      pw.print(String.format("%.1f", getRate(kind)));
+      pw.println("/sec)");
+    }
+
+    if (message != null) {
+      pw.println("search terminated: " + message);
+    } else {
+      pw.println("search not terminated, coverage was not saturated");
+    }
+  }
+}
@@ -0,0 +1,292 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.RestorableVMState;
+import gov.nasa.jpf.tool.RunJPF;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * a stateless simulation that executes randomized paths from the initial
+ * state as fast as possible.
+ *
+ * Other than Simulation and RandomSearch, this turns the JVM into simulation
+ * mode, i.e. we don't store or match states (nothing gets serialized), don't
+ * push backtrack states, and don't record the path or steps. The only
+ * snapshot we take is the initial state, which gets restored for each run.
+ *
+ * Each run uses its own seed to pick the choices of all CGs, which is derived
+ * from 'search.sim.seed', the worker index and the run number. Seeds of runs
+ * that violate a property are printed, and can be replayed with
+ * '+search.sim.replay=<seed>'. Replays execute this single run in normal
+ * (recording) mode, i.e. with a full error trace.
+ *
+ * With 'search.sim.workers' > 1, we start additional JPF processes with the
+ * same command line (and a different worker index), which run in parallel
+ * and print to our output. Statistics are printed every
+ * 'search.sim.stats_interval' milliseconds
+ */
+public class FastSimulation extends Search {
+
+  protected long baseSeed;
+  protected int maxRuns;
+  protected int worker;
+  protected int nWorkers;
+  protected long statsInterval;
+
+  // if set, we only replay this run
+  protected Long replaySeed;
+
+  protected Random random = new Random();
+  protected RestorableVMState initState;
+
+  // the output pumps of the workers we started
+  protected List<Thread> pumps = new ArrayList<Thread>();
+
+  protected long nRuns;
+  protected long nTransitions;
+  protected int nFailures;
+
+  public FastSimulation (Config config, JVM vm) {
+    super(config, vm);
+
+    baseSeed = config.getLong("search.sim.seed", 42);
+    maxRuns = config.getInt("search.sim.runs", 1000);
+    worker = config.getInt("search.sim.worker", 0);
+    nWorkers = config.getInt("search.sim.workers", 1);
+    statsInterval = config.getLong("search.sim.stats_interval", 5000);
+
+    if (config.containsKey("search.sim.replay")) {
+      replaySeed = config.getLong("search.sim.replay");
+    }
+  }
+
+  /**
+   * the seed of a run, which should be different for each worker and run
+   */
+  public static long getRunSeed (long baseSeed, int worker, long run) {
+    long z = baseSeed + 0x9E3779B97F4A7C15L * ((((long)worker) << 40) + run + 1);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * execute one path from the initial state, picking all choices with the
+   * given seed
+   */
+  protected void execute (long seed) {
+    vm.restoreState(initState);
+    vm.resetNextCG();
+    random.setSeed(seed);
+    depth = 0;
+
+    while (!done) {
+      if (depth >= depthLimit) {
+        notifySearchConstraintHit("depth limit reached: " + depthLimit);
+        break;
+      }
+
+      ChoiceGenerator<?> cg = vm.getNextChoiceGenerator();
+      if (cg != null) {
+        int n = cg.getTotalNumberOfChoices();
+        if (n > 1) {
+          cg.advance( random.nextInt(n)); // forward() advances once more
+        }
+      }
+
+      if (!forward()) {
+        notifyStateProcessed();
+        break;
+      }
+
+      depth++;
+      nTransitions++;
+      notifyStateAdvanced();
+
+      if (currentError != null) {
+        nFailures++;
+        System.out.println("simulation run " + nRuns + " of worker " + worker +
+                           " violated property, replay with: +search.sim.replay=" + seed);
+        notifyPropertyViolated();
+        hasPropertyTermination();
+        break;
+      }
+
+      if (isEndState() || isIgnoredState()) {
+        break;
+      }
+    }
+
+    checkAndResetBacktrackRequest();
+  }
+
+  protected void printStatistics (long tStart) {
+    long t = System.currentTimeMillis() - tStart;
+    long runsPerSec = (t > 0) ? (nRuns * 1000 / t) : nRuns;
+
+    System.out.println("simulation worker " + worker + ": " + nRuns + " runs (" + runsPerSec + "/sec), " +
+                       nTransitions + " transitions, " + nFailures + " failures");
+  }
+
+  public void search () {
+    initState = vm.getRestorableState();
+    done = false;
+
+    notifySearchStarted();
+
+    if (replaySeed != null) {
+      execute(replaySeed.longValue());
+
+    } else {
+      List<Process> workers = (worker == 0 && nWorkers > 1) ? startWorkers() : null;
+      vm.setSimulation(true);
+
+      try {
+        long tStart = System.currentTimeMillis();
+        long tNextStats = tStart + statsInterval;
+
+        while (!done && (maxRuns < 0 || nRuns < maxRuns)) {
+          execute( getRunSeed(baseSeed, worker, nRuns));
+          nRuns++;
+
+          if (statsInterval > 0 && System.currentTimeMillis() > tNextStats) {
+            printStatistics(tStart);
+            tNextStats += statsInterval;
+          }
+        }
+
+        printStatistics(tStart);
+
+      } finally {
+        vm.setSimulation(false);
+
+        if (workers != null) {
+          waitForWorkers(workers);
+        }
+      }
+    }
+
+    notifySearchFinished();
+  }
+
+  //--- the parallel workers
+
+  protected List<Process> startWorkers () {
+    List<String> cmd = new ArrayList<String>();
+    cmd.add(System.getProperty("java.home") + "/bin/java");
+    for (String a : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (a.startsWith("-X") || a.startsWith("-D") || a.startsWith("-ea")) {
+        cmd.add(a);
+      }
+    }
+    cmd.add("-cp");
+    cmd.add(System.getProperty("java.class.path"));
+
+    // if we got loaded by the RunJPF class loader, workers have to use it too
+    boolean isSystemLoaded = (JPF.class.getClassLoader() == ClassLoader.getSystemClassLoader());
+    cmd.add(isSystemLoaded ? JPF.class.getName() : RunJPF.class.getName());
+
+    for (String a : config.getArgs()) {
+      cmd.add(a);
+    }
+
+    List<Process> list = new ArrayList<Process>();
+    for (int i=1; i<nWorkers; i++) {
+      List<String> workerCmd = new ArrayList<String>(cmd);
+      workerCmd.add("+search.sim.worker=" + i);
+
+      try {
+        ProcessBuilder pb = new ProcessBuilder(workerCmd);
+        pb.redirectErrorStream(true);
+        Process proc = pb.start();
+        pumpOutput(proc, i);
+        list.add(proc);
+
+      } catch (IOException x) {
+        throw new JPFException("cannot start simulation worker " + i, x);
+      }
+    }
+
+    return list;
+  }
+
+  protected void pumpOutput (final Process proc, final int idx) {
+    Thread t = new Thread() {
+      public void run() {
+        BufferedReader in = new BufferedReader( new InputStreamReader(proc.getInputStream()));
+        try {
+          for (String line = in.readLine(); line != null; line = in.readLine()) {
+            System.out.println("[worker " + idx + "] " + line);
+          }
+        } catch (IOException x) {
+          // worker died, nothing we can do
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+    pumps.add(t);
+  }
+
+  protected void waitForWorkers (List<Process> workers) {
+    for (Process proc : workers) {
+      try {
+        if (done) {
+          proc.destroy(); // we already found what we were looking for
+        }
+        proc.waitFor();
+      } catch (InterruptedException x) {
+        proc.destroy();
+      }
+    }
+
+    for (Thread t : pumps) {
+      try {
+        t.join();
+      } catch (InterruptedException x) {
+        // just don't wait for the rest of the output
+      }
+    }
+  }
+
+  public long getNumberOfRuns () {
+    return nRuns;
+  }
+
+  public int getNumberOfFailures () {
+    return nFailures;
+  }
+
+  public boolean supportsBacktrack () {
+    return false;
+  }
+}
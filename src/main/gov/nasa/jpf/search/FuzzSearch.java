@@ -0,0 +1,414 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.MethodInfo;
+import gov.nasa.jpf.jvm.RestorableVMState;
+import gov.nasa.jpf.jvm.bytecode.IfInstruction;
+import gov.nasa.jpf.jvm.bytecode.Instruction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * a coverage guided random search. Like RandomSearch, this executes single
+ * paths from the initial state without backtracking, but the choices of each
+ * path are taken from a corpus of choice sequences that are mutated:
+ * <ul>
+ *  <li>change the choice at a random position (e.g. a different thread or
+ *      Verify.getInt() value)</li>
+ *  <li>truncate, i.e. only replay a prefix and continue randomly</li>
+ *  <li>extend, i.e. replay a prefix and continue with the suffix of another
+ *      corpus entry</li>
+ * </ul>
+ * Choices that are not in the sequence are picked randomly. The choices of
+ * each executed path are added to the corpus if the path covered a new
+ * instruction, branch outcome or state. Instructions and branches are
+ * recorded in a hashed bitmap of 2^'search.fuzz.map_bits' entries (i.e.
+ * cheaper but less precise than CoverageAnalyzer), states by the state set.
+ *
+ * If 'search.fuzz.corpus_dir' is set, new corpus entries are also written to
+ * this directory, and entries of other workers are read from it every
+ * 'search.fuzz.sync_interval' paths. To run in parallel, start several JPF
+ * processes with the same corpus dir (each with its own 'search.fuzz.worker'
+ * id, which defaults to the process name).
+ *
+ * The search stops after 'search.fuzz.max_runs' paths (-1 means no limit),
+ * or if a property is violated
+ */
+public class FuzzSearch extends Search {
+
+  /**
+   * a choice sequence, storing the chosen index and the number of choices
+   * for each CG we advanced
+   */
+  static class ChoiceSequence {
+    int[] choices;
+    int[] nChoices;
+    int length;
+
+    ChoiceSequence (int capacity){
+      choices = new int[capacity];
+      nChoices = new int[capacity];
+    }
+
+    ChoiceSequence (ChoiceSequence seq, int length){
+      this(Math.max(length, 16));
+      System.arraycopy(seq.choices, 0, choices, 0, length);
+      System.arraycopy(seq.nChoices, 0, nChoices, 0, length);
+      this.length = length;
+    }
+
+    void add (int choice, int n){
+      if (length == choices.length){
+        int[] a = new int[length*2];
+        System.arraycopy(choices, 0, a, 0, length);
+        choices = a;
+        a = new int[length*2];
+        System.arraycopy(nChoices, 0, a, 0, length);
+        nChoices = a;
+      }
+      choices[length] = choice;
+      nChoices[length] = n;
+      length++;
+    }
+
+    void write (DataOutputStream out) throws IOException {
+      out.writeInt(length);
+      for (int i=0; i<length; i++){
+        out.writeInt(choices[i]);
+        out.writeInt(nChoices[i]);
+      }
+    }
+
+    /**
+     * read a sequence from a corpus file of 'size' bytes. Since corpus files
+     * can be written by other workers (or be truncated), we check that the
+     * length fits the file and that all choices are within their range
+     */
+    static ChoiceSequence read (DataInputStream in, long size) throws IOException {
+      int len = in.readInt();
+      if (len < 0 || len > (size - 4) / 8){
+        throw new IOException("invalid choice sequence length: " + len);
+      }
+
+      ChoiceSequence seq = new ChoiceSequence(Math.max(len, 16));
+      for (int i=0; i<len; i++){
+        int choice = in.readInt();
+        int n = in.readInt();
+        if (n <= 0 || choice < 0 || choice >= n){
+          throw new IOException("invalid choice " + choice + " of " + n + " at: " + i);
+        }
+        seq.add(choice, n);
+      }
+      return seq;
+    }
+  }
+
+  /**
+   * records instruction and branch coverage in our bitmap
+   */
+  class CoverageListener extends ListenerAdapter {
+    public void instructionExecuted (JVM vm){
+      Instruction insn = vm.getLastInstruction();
+      MethodInfo mi = insn.getMethodInfo();
+
+      if (mi != null){
+        // unique per instruction (methods have less than 64k instructions),
+        // the lower 2 bits distinguish the branch outcomes
+        long key = (((long)mi.getGlobalId() << 20) | insn.getInstructionIndex()) << 2;
+        cover(key);
+
+        if (insn instanceof IfInstruction){
+          cover(key | (((IfInstruction)insn).getConditionValue() ? 1 : 2));
+        }
+      }
+    }
+  }
+
+  protected Random random;
+  protected int maxRuns;
+  protected int syncInterval;
+
+  protected BitSet coverage;
+  protected int coverageMask;
+  protected int nCovered;
+  protected boolean hasNewCoverage;
+
+  protected ArrayList<ChoiceSequence> corpus = new ArrayList<ChoiceSequence>();
+
+  protected File corpusDir;
+  protected String workerId;
+  protected int nStored;
+  protected HashSet<String> knownFiles = new HashSet<String>();
+
+  protected RestorableVMState initState;
+  protected int nRuns;
+
+  public FuzzSearch (Config config, JVM vm) {
+    super(config, vm);
+
+    maxRuns = config.getInt("search.fuzz.max_runs", 10000);
+    syncInterval = Math.max(1, config.getInt("search.fuzz.sync_interval", 100));
+
+    int mapBits = config.getInt("search.fuzz.map_bits", 16);
+    coverage = new BitSet(1 << mapBits);
+    coverageMask = (1 << mapBits) - 1;
+
+    workerId = config.getString("search.fuzz.worker");
+    if (workerId == null){
+      workerId = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9]", "_");
+    }
+    random = new Random(config.getLong("search.fuzz.seed", 42) ^ workerId.hashCode());
+
+    String dir = config.getString("search.fuzz.corpus_dir");
+    if (dir != null){
+      corpusDir = new File(dir);
+      if (!corpusDir.isDirectory() && !corpusDir.mkdirs()){
+        throw new JPFException("cannot create fuzz corpus dir: " + corpusDir);
+      }
+    }
+
+    vm.addListener( new CoverageListener());
+  }
+
+  protected void cover (long key){
+    // spread the keys over the map (murmur3 finalizer)
+    key ^= (key >>> 33);
+    key *= 0xff51afd7ed558ccdL;
+    key ^= (key >>> 33);
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= (key >>> 33);
+
+    int idx = (int)key & coverageMask;
+    if (!coverage.get(idx)){
+      coverage.set(idx);
+      nCovered++;
+      hasNewCoverage = true;
+    }
+  }
+
+  protected ChoiceSequence mutate (ChoiceSequence seq){
+    int len = seq.length;
+    if (len == 0){
+      return null;
+    }
+
+    switch (random.nextInt(3)){
+    case 0: // change a choice
+      ChoiceSequence s = new ChoiceSequence(seq, len);
+      int nFlips = 1 + random.nextInt(3);
+      for (int i=0; i<nFlips; i++){
+        int pos = random.nextInt(len);
+        s.choices[pos] = random.nextInt(s.nChoices[pos]);
+      }
+      return s;
+
+    case 1: // truncate
+      return new ChoiceSequence(seq, random.nextInt(len));
+
+    default: // extend with the suffix of another sequence
+      ChoiceSequence other = corpus.get(random.nextInt(corpus.size()));
+      int cut = random.nextInt(len);
+      s = new ChoiceSequence(seq, cut);
+      for (int i=cut; i<other.length; i++){
+        s.add(other.choices[i], other.nChoices[i]);
+      }
+      return s;
+    }
+  }
+
+  /**
+   * execute one path from the initial state, taking the choices from 'input'
+   * as long as there are any, and answer the choices we took
+   */
+  protected ChoiceSequence execute (ChoiceSequence input){
+    vm.restoreState(initState);
+    vm.resetNextCG();
+    depth = 0;
+    hasNewCoverage = false;
+
+    ChoiceSequence executed = new ChoiceSequence(64);
+
+    while (!done) {
+      if (depth >= depthLimit) {
+        notifySearchConstraintHit("depth limit reached: " + depthLimit);
+        break;
+      }
+
+      ChoiceGenerator<?> cg = vm.getNextChoiceGenerator();
+      if (cg != null) {
+        int n = cg.getTotalNumberOfChoices();
+        if (n > 0) {
+          int i = executed.length;
+          int c;
+          if (input != null && i < input.length) {
+            c = input.choices[i] % n;
+          } else {
+            c = random.nextInt(n);
+          }
+
+          // forward() advances once more
+          cg.advance(c);
+          executed.add(c, n);
+        }
+      }
+
+      if (!forward()) {
+        notifyStateProcessed();
+        break;
+      }
+
+      depth++;
+      notifyStateAdvanced();
+
+      if (vm.getStateSet() != null && isNewState()) {
+        hasNewCoverage = true;
+      }
+
+      if (currentError != null) {
+        notifyPropertyViolated();
+        hasPropertyTermination();
+        break; // we don't continue error paths, even for multiple errors
+      }
+
+      if (isEndState() || isIgnoredState()) {
+        break;
+      }
+    }
+
+    checkAndResetBacktrackRequest();
+    return executed;
+  }
+
+  /**
+   * write a new corpus entry to the shared corpus dir, using a temp file
+   * so that other workers never see partial entries
+   */
+  protected void storeEntry (ChoiceSequence seq) {
+    String name = workerId + '-' + (nStored++) + ".seq";
+    File tmp = new File(corpusDir, '.' + name);
+    File file = new File(corpusDir, name);
+
+    try {
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(tmp)));
+      try {
+        seq.write(out);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file)) {
+        log.warning("cannot store fuzz corpus entry ", file);
+      }
+      knownFiles.add(name);
+
+    } catch (IOException x) {
+      log.warning("cannot store fuzz corpus entry ", file, ": ", x);
+    }
+  }
+
+  /**
+   * add the entries of other workers to our corpus
+   */
+  protected void loadEntries () {
+    String[] names = corpusDir.list();
+    if (names == null) {
+      return;
+    }
+
+    for (String name : names) {
+      if (name.endsWith(".seq") && !name.startsWith(".") && knownFiles.add(name)) {
+        try {
+          File file = new File(corpusDir, name);
+          DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(file)));
+          try {
+            corpus.add(ChoiceSequence.read(in, file.length()));
+          } finally {
+            in.close();
+          }
+        } catch (IOException x) {
+          log.warning("skipping fuzz corpus entry ", name, ": ", x);
+        }
+      }
+    }
+  }
+
+  public void search () {
+    initState = vm.getRestorableState();
+    done = false;
+
+    notifySearchStarted();
+
+    while (!done && (maxRuns < 0 || nRuns < maxRuns)) {
+      if (corpusDir != null && (nRuns % syncInterval) == 0) {
+        loadEntries();
+      }
+
+      ChoiceSequence input = null;
+      if (!corpus.isEmpty() && random.nextInt(10) > 0) { // keep some purely random paths
+        input = mutate( corpus.get(random.nextInt(corpus.size())));
+      }
+
+      ChoiceSequence executed = execute(input);
+      nRuns++;
+
+      if (hasNewCoverage) {
+        corpus.add(executed);
+        if (corpusDir != null) {
+          storeEntry(executed);
+        }
+      }
+    }
+
+    log.info("fuzz runs: ", nRuns, ", corpus size: ", corpus.size(), ", covered: ", nCovered);
+    notifySearchFinished();
+  }
+
+  public int getNumberOfRuns () {
+    return nRuns;
+  }
+
+  public int getCorpusSize () {
+    return corpus.size();
+  }
+
+  public int getNumberOfCoveredEntries () {
+    return nCovered;
+  }
+
+  public boolean supportsBacktrack () {
+    return false;
+  }
+}
@@ -0,0 +1,242 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.RestorableVMState;
+import gov.nasa.jpf.jvm.ThreadChoiceGenerator;
+import gov.nasa.jpf.jvm.ThreadInfo;
+import gov.nasa.jpf.util.IntVector;
+
+import java.util.ArrayList;
+
+/**
+ * iterative context bounding, as described in "Iterative Context Bounding for
+ * Systematic Testing of Multithreaded Programs" (Musuvathi, Qadeer - PLDI 2007).
+ *
+ * We do a depth first search for preemption bounds 0,1,2.. (up to
+ * 'search.icb.max_bound'). Transitions that would exceed the current bound
+ * are not explored, but the states they lead to are stored, and become the
+ * start states of the next iteration. The visited set is shared between
+ * iterations, each state is annotated with the smallest number of preemptions
+ * it was reached with. We only re-explore a visited state if we reach it with
+ * fewer preemptions.
+ *
+ * Since all states that are reachable with k preemptions are explored before
+ * we explore any state with k+1, the preemption count of an error state is
+ * also the minimal preemption count for this error (see getErrorPreemptions()).
+ * The exception are errors that are produced by a cut off transition (we
+ * check properties when we execute it), which are reported with bound+1
+ * preemptions even if the rest of the current iteration would find them
+ * with fewer.
+ *
+ * This works with the DefaultSchedulerFactory, i.e. doesn't need a
+ * ContextBoundingSchedulerFactory. A preemption is a scheduling point at
+ * which we switch away from a thread that is still runnable
+ */
+public class IterativeContextBounding extends Search {
+
+  static class StartState {
+    RestorableVMState vmState;
+    int stateId;
+    int preemptions;
+
+    StartState (RestorableVMState vmState, int stateId, int preemptions){
+      this.vmState = vmState;
+      this.stateId = stateId;
+      this.preemptions = preemptions;
+    }
+  }
+
+  protected int maxBound;
+  protected int bound;
+
+  // the (smallest) number of preemptions each state was reached with, plus 1
+  protected IntVector statePreemptions = new IntVector();
+
+  // the number of preemptions of the states on the current path
+  protected IntVector pathPreemptions = new IntVector();
+
+  // the cut off states for the next iteration
+  protected ArrayList<StartState> nextStartStates = new ArrayList<StartState>();
+
+  // the number of preemptions for each error
+  protected IntVector errorPreemptions = new IntVector();
+
+  public IterativeContextBounding (Config config, JVM vm) {
+    super(config,vm);
+
+    maxBound = config.getInt("search.icb.max_bound", Integer.MAX_VALUE);
+    if (maxBound < 0) {
+      maxBound = Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * did the last transition preempt a thread that was still runnable
+   */
+  protected boolean isPreemption () {
+    // <2do> this relies on that there are no cascaded SchedulingPoints (see MinimizePreemption)
+    ChoiceGenerator<?> cg = vm.getChoiceGenerator();
+
+    if (cg instanceof ThreadChoiceGenerator) {
+      ThreadChoiceGenerator tcg = (ThreadChoiceGenerator)cg;
+
+      if (tcg.isSchedulingPoint()) {
+        ThreadChoiceGenerator tcgPrev = tcg.getPreviousChoiceGeneratorOfType(ThreadChoiceGenerator.class);
+        if (tcgPrev != null) {
+          ThreadInfo tiPrev = tcgPrev.getNextChoice();
+          return (tcg.getNextChoice() != tiPrev) && tcg.contains(tiPrev);
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * the number of preemptions of the error with the given index (in
+   * getErrors()), which is the minimal number required to produce it
+   */
+  public int getErrorPreemptions (int errorIndex) {
+    return errorPreemptions.get(errorIndex);
+  }
+
+  public int getBound () {
+    return bound;
+  }
+
+  /**
+   * depth first search from the current state, within the current bound.
+   * We don't backtrack past the start state
+   */
+  protected void searchFromCurrentState (int preemptions) {
+    int startDepth = depth;
+    pathPreemptions.set(depth, preemptions);
+
+    while (!done) {
+      if (!forward()) {
+        notifyStateProcessed();
+
+        if (depth == startDepth) {
+          return;
+        }
+        backtrack();
+        depth--;
+        notifyStateBacktracked();
+        continue;
+      }
+
+      depth++;
+      notifyStateAdvanced();
+
+      boolean isExpanded = false;
+      int p = pathPreemptions.get(depth-1);
+      if (isPreemption()) {
+        p++;
+      }
+
+      if (currentError != null) {
+        errorPreemptions.set(currentError.getId()-1, p);
+        log.info("property violation with ", p, " preemptions");
+
+        notifyPropertyViolated();
+        if (hasPropertyTermination()) {
+          return;
+        }
+
+      } else if (!isEndState() && !isIgnoredState()) {
+        int id = vm.getStateId();
+        int known = statePreemptions.get(id) - 1;
+
+        if (isNewState() || p < known) {
+          statePreemptions.set(id, p + 1);
+
+          if (p > bound) { // cut off, we explore this in the next iteration
+            nextStartStates.add( new StartState(vm.getRestorableState(), id, p));
+            notifyStateStored();
+
+          } else if (depth >= depthLimit) {
+            notifySearchConstraintHit("depth limit reached: " + depthLimit);
+
+          } else if (!checkStateSpaceLimit()) {
+            notifySearchConstraintHit("memory limit reached: " + minFreeMemory);
+            done = true;
+            return;
+
+          } else {
+            pathPreemptions.set(depth, p);
+            isExpanded = true;
+          }
+        }
+      }
+
+      if (!isExpanded) {
+        backtrack();
+        depth--;
+        notifyStateBacktracked();
+      }
+    }
+  }
+
+  public void search () {
+    depth = 0;
+    bound = 0;
+    done = false;
+
+    notifySearchStarted();
+
+    searchFromCurrentState(0);
+
+    while (!done && !nextStartStates.isEmpty()) {
+      if (bound >= maxBound) {
+        notifySearchConstraintHit("preemption bound reached: " + maxBound);
+        break;
+      }
+
+      bound++;
+      log.info("preemption bound: ", bound);
+
+      ArrayList<StartState> startStates = nextStartStates;
+      nextStartStates = new ArrayList<StartState>();
+
+      for (int i=0; i<startStates.size() && !done; i++) {
+        StartState s = startStates.get(i);
+        startStates.set(i, null); // we don't need to keep the snapshot
+
+        // skip if we reached it with fewer preemptions in the meantime
+        if (statePreemptions.get(s.stateId) - 1 == s.preemptions) {
+          vm.restoreState(s.vmState);
+          depth = vm.getPathLength();
+          notifyStateRestored();
+
+          searchFromCurrentState(s.preemptions);
+        }
+      }
+    }
+
+    notifySearchFinished();
+  }
+
+  public boolean supportsBacktrack () {
+    return false;
+  }
+}
@@ -26,8 +26,13 @@ import gov.nasa.jpf.JPFException;
 import gov.nasa.jpf.JPFListenerException;
 import gov.nasa.jpf.Property;
 import gov.nasa.jpf.State;
+import gov.nasa.jpf.jvm.ElementInfo;
+import gov.nasa.jpf.jvm.ExceptionInfo;
 import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.NoUncaughtExceptionsProperty;
 import gov.nasa.jpf.jvm.Path;
+import gov.nasa.jpf.jvm.StackFrame;
+import gov.nasa.jpf.jvm.ThreadInfo;
 import gov.nasa.jpf.jvm.ThreadList;
 import gov.nasa.jpf.jvm.Transition;
 import gov.nasa.jpf.report.Reporter;
@@ -36,6 +41,7 @@ import gov.nasa.jpf.util.JPFLogger;
 import gov.nasa.jpf.util.Misc;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -61,6 +67,14 @@ public abstract class Search {
 	protected int depthLimit;
 	protected boolean getAllErrors;
 
+	// search.multiple_errors deduplication - we only keep the shortest trace
+	// for each error signature (see getErrorSignature())
+	protected boolean dedupErrors;
+	protected boolean pruneDuplicateErrors;
+	protected int errorSignatureDepth;
+	protected HashMap<String, Error> errorSignatures = new HashMap<String, Error>();
+	protected int nDuplicateErrors;
+
 	// message explaining the last search constraint hit
 	protected String lastSearchConstraint;
 
@@ -135,6 +149,12 @@ public abstract class Search {
 		matchDepth = conf.getBoolean("search.match_depth");
 		minFreeMemory = conf.getMemorySize("search.min_free", 1024 << 10);
 		getAllErrors = conf.getBoolean("search.multiple_errors");
+
+		dedupErrors = conf.getBoolean("search.multiple_errors.dedup", false);
+		pruneDuplicateErrors = conf.getBoolean(
+				"search.multiple_errors.dedup.prune", true);
+		errorSignatureDepth = conf.getInt(
+				"search.multiple_errors.dedup.depth", 5);
 	}
 
 	/**
@@ -249,6 +269,14 @@ public abstract class Search {
 		}
 	}
 
+	/**
+	 * number of errors that were dropped because we already had an error with
+	 * the same signature and a shorter (or equal) trace
+	 */
+	public int getNumberOfDuplicateErrors() {
+		return nDuplicateErrors;
+	}
+
 	public boolean hasErrors() {
 		return !errors.isEmpty();
 	}
@@ -369,7 +397,78 @@ public abstract class Search {
 		error(property, null, null);
 	}
 
+	/**
+	 * compute a key that clusters errors which are most likely caused by the
+	 * same bug: the property class, and the top stack frames of the failing
+	 * thread. For uncaught exceptions we use the exception type and the stack
+	 * snapshot that was taken when the exception was created, since the
+	 * frames are unwound at this point
+	 */
+	protected String getErrorSignature(Property property) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(property.getClass().getName());
+
+		ExceptionInfo xi = null;
+		if (property instanceof NoUncaughtExceptionsProperty) {
+			xi = ((NoUncaughtExceptionsProperty) property)
+					.getUncaughtExceptionInfo();
+		}
+
+		if (xi != null) {
+			sb.append(':');
+			sb.append(xi.getExceptionClassname());
+
+			ElementInfo ei = xi.getException();
+			int aRef = ei.getReferenceField("snapshot");
+			if (aRef != -1) {
+				// {methodId,insnIndex} pairs, top frame first
+				int[] snapshot = xi.getThread().getElementInfo(aRef).asIntArray();
+				int n = Math.min(snapshot.length, errorSignatureDepth * 2);
+				for (int i = 0; i < n; i += 2) {
+					sb.append(';');
+					sb.append(snapshot[i]);
+					sb.append('@');
+					sb.append(snapshot[i + 1]);
+				}
+			}
+
+		} else {
+			ThreadInfo ti = vm.getCurrentThread();
+			if (ti != null) {
+				int i = 0;
+				for (StackFrame frame = ti.getTopFrame(); frame != null
+						&& i < errorSignatureDepth; frame = frame.getPrevious(), i++) {
+					sb.append(';');
+					sb.append(frame.getMethodInfo().getGlobalId());
+					sb.append('@');
+					sb.append(frame.getPC().getInstructionIndex());
+				}
+			}
+		}
+
+		return sb.toString();
+	}
+
 	protected void error(Property property, Path path, ThreadList threadList) {
+		String signature = null;
+		Error knownError = null;
+
+		if (getAllErrors && dedupErrors && path != null) {
+			signature = getErrorSignature(property);
+			knownError = errorSignatures.get(signature);
+
+			if (knownError != null
+					&& path.size() >= knownError.getPath().size()) {
+				// nothing new, don't clone and report. Since there is no
+				// currentError, we have to reset the properties ourselves
+				nDuplicateErrors++;
+				resetProperties();
+				if (pruneDuplicateErrors) {
+					requestBacktrack();
+				}
+				return;
+			}
+		}
 
 		if (getAllErrors) {
 			path = path.clone(); // otherwise we are going to overwrite it
@@ -381,9 +480,22 @@ public abstract class Search {
 			done = true;
 		}
 
-		currentError = new Error(errors.size() + 1, property, path, threadList);
+		if (knownError != null) {
+			// same bug with a shorter trace, which replaces the known one
+			nDuplicateErrors++;
+			int id = knownError.getId();
+			currentError = new Error(id, property, path, threadList);
+			errors.set(id - 1, currentError);
 
-		errors.add(currentError);
+		} else {
+			currentError = new Error(errors.size() + 1, property, path,
+					threadList);
+			errors.add(currentError);
+		}
+
+		if (signature != null) {
+			errorSignatures.put(signature, currentError);
+		}
 
 		// we should not reset the property until listeners have been notified
 		// (the listener might be the property itself, in which case it could
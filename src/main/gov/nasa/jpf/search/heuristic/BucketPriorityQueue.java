@@ -0,0 +1,176 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.Config;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * a bounded priority queue that keeps states with the same heuristic value
+ * in FIFO buckets, which works well for heuristics that only produce a small
+ * number of distinct values (e.g. BFSHeuristic depths or MostBlocked counts).
+ *
+ * Buckets are array based, i.e. adding a state to an existing priority level
+ * and polling the first state are O(1) without any per-state allocation. Only
+ * new priority levels go into the (small) bucket map. If the queue limit is
+ * exceeded, we discard whole buckets from the low priority end, and only trim
+ * the last remaining one.
+ *
+ * Note that states with the same priority are processed in order of insertion
+ * (not state id), which is the same for new states, and that we don't filter
+ * duplicates. Heuristics with a lot of distinct values (like RandomHeuristic)
+ * are better served by StaticPriorityQueue
+ */
+public class BucketPriorityQueue implements PrioritizedStateQueue {
+
+  @SuppressWarnings("serial")
+  static class Bucket extends ArrayDeque<PrioritizedState> {
+    final int value;
+
+    Bucket (int value){
+      this.value = value;
+    }
+  }
+
+  protected int maxQueueSize;
+  protected int size;
+
+  protected TreeMap<Integer,Bucket> buckets = new TreeMap<Integer,Bucket>();
+
+  // the highest priority bucket, and the one we added to last
+  protected Bucket first;
+  protected Bucket lastAdded;
+
+  public BucketPriorityQueue (Config config) {
+    this( config.getInt("search.heuristic.queue_limit", 1024));
+  }
+
+  public BucketPriorityQueue (int maxQueueSize) {
+    this.maxQueueSize = (maxQueueSize < 0) ? Integer.MAX_VALUE : maxQueueSize;
+  }
+
+  public boolean add (PrioritizedState s) {
+    int value = s.heuristicValue;
+
+    if (size >= maxQueueSize) {
+      if (maxQueueSize == 0 || value >= buckets.lastKey()) {
+        return false; // not better than what we already have
+      }
+    }
+
+    Bucket b = lastAdded;
+    if (b == null || b.value != value) {
+      b = buckets.get(value);
+      if (b == null) {
+        b = new Bucket(value);
+        buckets.put(value, b);
+        if (first == null || value < first.value) {
+          first = b;
+        }
+      }
+      lastAdded = b;
+    }
+
+    b.addLast(s);
+    size++;
+
+    if (size > maxQueueSize) {
+      discardLast(size - maxQueueSize);
+    }
+
+    return true;
+  }
+
+  /**
+   * drop the n lowest priority states, preferably by discarding whole buckets
+   */
+  protected void discardLast (int n) {
+    while (n > 0) {
+      Map.Entry<Integer,Bucket> e = buckets.lastEntry();
+      Bucket b = e.getValue();
+      int bSize = b.size();
+
+      if (bSize <= n) {
+        removeBucket(b);
+        size -= bSize;
+        n -= bSize;
+
+      } else {
+        for (int i=0; i<n; i++) {
+          b.pollLast();
+        }
+        size -= n;
+        n = 0;
+      }
+    }
+  }
+
+  protected void removeBucket (Bucket b) {
+    buckets.remove(b.value);
+
+    if (b == lastAdded) {
+      lastAdded = null;
+    }
+    if (b == first) {
+      Map.Entry<Integer,Bucket> e = buckets.firstEntry();
+      first = (e != null) ? e.getValue() : null;
+    }
+  }
+
+  public PrioritizedState pollFirst () {
+    if (first == null) {
+      return null;
+    }
+
+    PrioritizedState s = first.pollFirst();
+    size--;
+
+    if (first.isEmpty()) {
+      removeBucket(first);
+    }
+
+    return s;
+  }
+
+  public PrioritizedState first () {
+    return (first != null) ? first.peekFirst() : null;
+  }
+
+  public int size () {
+    return size;
+  }
+
+  public int getNumberOfBuckets () {
+    return buckets.size();
+  }
+
+  public void clear () {
+    buckets.clear();
+    first = null;
+    lastAdded = null;
+    size = 0;
+  }
+
+  public boolean isQueueLimitReached () {
+    return size >= maxQueueSize;
+  }
+}
@@ -0,0 +1,110 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.RestorableVMState;
+
+/**
+ * a node in the choice path trie of a ReplayFrontier, i.e. the (cascaded)
+ * choice that led from the parent state into this state.
+ *
+ * Children share their parent nodes, i.e. a queued state only costs its own
+ * node as long as its ancestors are kept alive by other queued states anyways.
+ * Nodes can have a cached VM snapshot, from which their descendants are
+ * re-materialized
+ */
+public class ChoicePath {
+
+  final ChoicePath parent;
+
+  // the processed number of choices of the transition CG and its cascaded
+  // parents at the time we entered this state (innermost CG first)
+  final int[] choices;
+
+  final int depth;
+  final int stateId;
+
+  // the optional cached snapshot, managed by the ReplayFrontier
+  RestorableVMState snapshot;
+
+  ChoicePath (ChoicePath parent, JVM vm){
+    this.parent = parent;
+    stateId = vm.getStateId();
+    depth = vm.getPathLength();
+
+    if (parent == null){
+      choices = new int[0];
+    } else {
+      choices = getCurrentChoices(vm);
+    }
+  }
+
+  /**
+   * the processed number of choices of the current CG and its cascaded
+   * parents, which is what we need to re-enter the current state from its
+   * parent (see ReplayFrontier.forward())
+   */
+  static int[] getCurrentChoices (JVM vm){
+    int n = 0;
+    for (ChoiceGenerator<?> cg = vm.getChoiceGenerator(); cg != null; cg = cg.getCascadedParent()){
+      n++;
+    }
+
+    int[] choices = new int[n];
+    int i = 0;
+    for (ChoiceGenerator<?> cg = vm.getChoiceGenerator(); cg != null; cg = cg.getCascadedParent()){
+      choices[i++] = cg.getProcessedNumberOfChoices();
+    }
+
+    return choices;
+  }
+
+  public ChoicePath getParent(){
+    return parent;
+  }
+
+  public int getDepth(){
+    return depth;
+  }
+
+  public int getStateId(){
+    return stateId;
+  }
+
+  public boolean hasSnapshot(){
+    return (snapshot != null);
+  }
+
+  public String toString(){
+    StringBuilder sb = new StringBuilder();
+    sb.append('{');
+    sb.append(stateId);
+    sb.append(",[");
+    for (int i=0; i<choices.length; i++){
+      if (i > 0){
+        sb.append(',');
+      }
+      sb.append(choices[i]);
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,500 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * an external memory BFS frontier with delayed duplicate detection.
+ *
+ * The states of the next search level are added as (fingerprint, choice path)
+ * records without checking if we have seen them before. Records are buffered
+ * in memory, and sorted by fingerprint into run files once the buffer is
+ * full. When the level is done, nextLevel() merges all runs with the sorted
+ * file of visited fingerprints in one sequential pass, which produces the
+ * (duplicate free) frontier file of the new level and the new visited file.
+ *
+ * If there are more than 'search.external_bfs.max_fan_in' runs, we first merge
+ * them in passes of at most that many runs, so that the number of open files
+ * (and their read buffers) stays bounded.
+ *
+ * Memory use is bounded by 'search.external_bfs.buffer_size' records, all
+ * other data is streamed from/to files in 'search.external_bfs.dir' (which
+ * defaults to ${user.home}/.jpf/bfs, and has to be private to the current
+ * user since we replay the stored choice paths). Choice
+ * paths are flat int arrays that contain the choices of each transition
+ * from the root, prefixed by their length (see ChoicePath.getCurrentChoices())
+ */
+public class DiskFrontier {
+
+  static class Record {
+    long fp;
+    int[] path;
+
+    Record (long fp, int[] path){
+      this.fp = fp;
+      this.path = path;
+    }
+  }
+
+  static final Comparator<Record> fpComparator = new Comparator<Record>(){
+    public int compare (Record r1, Record r2){
+      return (r1.fp < r2.fp) ? -1 : ((r1.fp > r2.fp) ? 1 : 0);
+    }
+  };
+
+  /**
+   * a sequential reader for a sorted run file
+   */
+  static class RunReader implements Comparable<RunReader> {
+    DataInputStream in;
+    long remaining;
+    Record rec;
+
+    RunReader (File file, long nRecords) throws IOException {
+      in = openInput(file);
+      remaining = nRecords;
+    }
+
+    boolean next() throws IOException {
+      if (remaining > 0){
+        rec = readRecord(in);
+        remaining--;
+        return true;
+      } else {
+        in.close();
+        return false;
+      }
+    }
+
+    public int compareTo (RunReader other){
+      return fpComparator.compare(rec, other.rec);
+    }
+  }
+
+  static final int BUFFER_SIZE = 1 << 16;
+  static final int MAX_FAN_IN = 64;
+
+  protected File dir;
+  protected int bufferSize;
+  protected int maxFanIn;
+
+  // the records of the next level that are not yet spilled
+  protected ArrayList<Record> buffer;
+
+  // the sorted run files of the next level
+  protected ArrayList<File> runs = new ArrayList<File>();
+  protected ArrayList<Long> runSizes = new ArrayList<Long>();
+
+  protected File visitedFile;
+  protected long nVisited;
+
+  protected File frontierFile;
+  protected long nFrontier;
+  protected DataInputStream frontierIn;
+  protected long nRead;
+
+  protected int nFiles;
+  protected int level;
+
+  protected long nAdded;
+  protected long nDuplicates;
+  protected int nMergePasses;
+
+  public DiskFrontier (Config config){
+    this( new File( config.getString("search.external_bfs.dir", FileUtils.getUserDir("bfs").getPath())),
+          config.getInt("search.external_bfs.buffer_size", 100000),
+          config.getInt("search.external_bfs.max_fan_in", MAX_FAN_IN));
+  }
+
+  public DiskFrontier (File baseDir, int bufferSize){
+    this(baseDir, bufferSize, MAX_FAN_IN);
+  }
+
+  /**
+   * create a frontier that uses its own (new) subdirectory of 'baseDir'
+   */
+  public DiskFrontier (File baseDir, int bufferSize, int maxFanIn){
+    if (maxFanIn < 2){
+      throw new JPFException("external BFS max_fan_in has to be at least 2: " + maxFanIn);
+    }
+    this.bufferSize = bufferSize;
+    this.maxFanIn = maxFanIn;
+    buffer = new ArrayList<Record>(Math.min(bufferSize, BUFFER_SIZE));
+
+    try {
+      if (!FileUtils.ensurePrivateDir(baseDir)){
+        throw new IOException("dir does not exist or is not private: " + baseDir);
+      }
+      dir = File.createTempFile("bfs", "", baseDir);
+      if (!dir.delete() || !dir.mkdir()){
+        throw new IOException("cannot create " + dir);
+      }
+      FileUtils.setPrivate(dir);
+    } catch (IOException x){
+      throw new JPFException("cannot create external BFS dir", x);
+    }
+  }
+
+  static DataInputStream openInput (File file) throws IOException {
+    return new DataInputStream( new BufferedInputStream( new FileInputStream(file), BUFFER_SIZE));
+  }
+
+  static DataOutputStream openOutput (File file) throws IOException {
+    return new DataOutputStream( new BufferedOutputStream( new FileOutputStream(file), BUFFER_SIZE));
+  }
+
+  static Record readRecord (DataInputStream in) throws IOException {
+    long fp = in.readLong();
+    int len = in.readInt();
+    int[] path = new int[len];
+    for (int i=0; i<len; i++){
+      path[i] = in.readInt();
+    }
+    return new Record(fp, path);
+  }
+
+  static void writeRecord (DataOutputStream out, Record rec) throws IOException {
+    out.writeLong(rec.fp);
+    out.writeInt(rec.path.length);
+    for (int i=0; i<rec.path.length; i++){
+      out.writeInt(rec.path[i]);
+    }
+  }
+
+  protected File newFile (String prefix){
+    return new File(dir, prefix + '-' + (nFiles++));
+  }
+
+  /**
+   * add a state of the next level, which might be a duplicate
+   */
+  public void add (long fp, int[] path){
+    buffer.add(new Record(fp, path));
+    nAdded++;
+
+    if (buffer.size() >= bufferSize){
+      spill();
+    }
+  }
+
+  /**
+   * sort the buffer and write it to a new run file. We already drop the
+   * duplicates within the buffer here
+   */
+  protected void spill (){
+    if (buffer.isEmpty()){
+      return;
+    }
+
+    Collections.sort(buffer, fpComparator);
+
+    File file = newFile("run");
+    long n = 0;
+    try {
+      DataOutputStream out = openOutput(file);
+      try {
+        Record last = null;
+        for (Record rec : buffer){
+          if (last != null && last.fp == rec.fp){
+            nDuplicates++;
+          } else {
+            writeRecord(out, rec);
+            last = rec;
+            n++;
+          }
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException x){
+      throw new JPFException("writing BFS run file failed", x);
+    }
+
+    runs.add(file);
+    runSizes.add(n);
+    buffer.clear();
+  }
+
+  protected PriorityQueue<RunReader> openRuns (int from, int to) throws IOException {
+    PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, to - from));
+    for (int i=from; i<to; i++){
+      RunReader rr = new RunReader(runs.get(i), runSizes.get(i));
+      if (rr.next()){
+        queue.add(rr);
+      }
+    }
+    return queue;
+  }
+
+  /**
+   * merge the first maxFanIn runs into a new (duplicate free) run that is
+   * appended to the list, i.e. each pass reduces the number of runs by
+   * maxFanIn-1, and runs are merged in rounds of roughly equal size
+   */
+  protected void mergeRuns (){
+    File file = newFile("run");
+    long n = 0;
+
+    try {
+      PriorityQueue<RunReader> queue = openRuns(0, maxFanIn);
+      DataOutputStream out = openOutput(file);
+      try {
+        boolean hasLast = false;
+        long lastFp = 0;
+
+        while (!queue.isEmpty()){
+          RunReader rr = queue.poll();
+          Record rec = rr.rec;
+          if (rr.next()){
+            queue.add(rr);
+          }
+
+          if (hasLast && rec.fp == lastFp){
+            nDuplicates++;
+          } else {
+            writeRecord(out, rec);
+            hasLast = true;
+            lastFp = rec.fp;
+            n++;
+          }
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException x){
+      throw new JPFException("merging BFS run files failed", x);
+    }
+
+    for (int i=0; i<maxFanIn; i++){
+      runs.get(i).delete();
+    }
+    runs.subList(0, maxFanIn).clear();
+    runSizes.subList(0, maxFanIn).clear();
+
+    runs.add(file);
+    runSizes.add(n);
+    nMergePasses++;
+  }
+
+  /**
+   * merge all the states that were added since the last call with the
+   * visited set, and make the new ones the current level.
+   * Answers the number of states in the new level
+   */
+  public long nextLevel (){
+    spill();
+    closeFrontier();
+
+    while (runs.size() > maxFanIn){
+      mergeRuns();
+    }
+
+    File newFrontierFile = newFile("frontier");
+    File newVisitedFile = newFile("visited");
+    long nNewFrontier = 0;
+    long nNewVisited = 0;
+
+    try {
+      PriorityQueue<RunReader> queue = openRuns(0, runs.size());
+
+      DataInputStream visitedIn = (visitedFile != null) ? openInput(visitedFile) : null;
+      DataOutputStream frontierOut = openOutput(newFrontierFile);
+      DataOutputStream visitedOut = openOutput(newVisitedFile);
+
+      try {
+        long nv = 0;
+        long vfp = (nv < nVisited) ? visitedIn.readLong() : 0;
+        boolean hasLast = false;
+        long lastFp = 0;
+
+        while (!queue.isEmpty()){
+          RunReader rr = queue.poll();
+          Record rec = rr.rec;
+          if (rr.next()){
+            queue.add(rr);
+          }
+
+          if (hasLast && rec.fp == lastFp){ // duplicate within this level
+            nDuplicates++;
+            continue;
+          }
+          hasLast = true;
+          lastFp = rec.fp;
+
+          while (nv < nVisited && vfp < rec.fp){
+            visitedOut.writeLong(vfp);
+            nNewVisited++;
+            if (++nv < nVisited){
+              vfp = visitedIn.readLong();
+            }
+          }
+
+          if (nv < nVisited && vfp == rec.fp){ // seen on a previous level
+            nDuplicates++;
+            continue;
+          }
+
+          visitedOut.writeLong(rec.fp);
+          nNewVisited++;
+          writeRecord(frontierOut, rec);
+          nNewFrontier++;
+        }
+
+        while (nv < nVisited){
+          visitedOut.writeLong(vfp);
+          nNewVisited++;
+          if (++nv < nVisited){
+            vfp = visitedIn.readLong();
+          }
+        }
+
+      } finally {
+        if (visitedIn != null){
+          visitedIn.close();
+        }
+        frontierOut.close();
+        visitedOut.close();
+      }
+
+    } catch (IOException x){
+      throw new JPFException("merging BFS level failed", x);
+    }
+
+    for (File f : runs){
+      f.delete();
+    }
+    runs.clear();
+    runSizes.clear();
+
+    if (visitedFile != null){
+      visitedFile.delete();
+    }
+    visitedFile = newVisitedFile;
+    nVisited = nNewVisited;
+
+    frontierFile = newFrontierFile;
+    nFrontier = nNewFrontier;
+    nRead = 0;
+    level++;
+
+    return nFrontier;
+  }
+
+  /**
+   * the choice path of the next state in the current level, or null if
+   * there is none left
+   */
+  public int[] next (){
+    if (nRead >= nFrontier){
+      closeFrontier();
+      return null;
+    }
+
+    try {
+      if (frontierIn == null){
+        frontierIn = openInput(frontierFile);
+      }
+      nRead++;
+      return readRecord(frontierIn).path;
+
+    } catch (IOException x){
+      throw new JPFException("reading BFS frontier failed", x);
+    }
+  }
+
+  protected void closeFrontier (){
+    if (frontierIn != null){
+      try {
+        frontierIn.close();
+      } catch (IOException x){
+        // nothing we can do
+      }
+      frontierIn = null;
+    }
+
+    if (frontierFile != null){
+      frontierFile.delete();
+      frontierFile = null;
+    }
+  }
+
+  /**
+   * remove all our files
+   */
+  public void dispose (){
+    closeFrontier();
+    buffer.clear();
+
+    File[] files = dir.listFiles();
+    if (files != null){
+      for (File f : files){
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  public File getDir(){
+    return dir;
+  }
+
+  public int getLevel(){
+    return level;
+  }
+
+  public long getLevelSize(){
+    return nFrontier;
+  }
+
+  public long getNumberOfVisitedStates(){
+    return nVisited;
+  }
+
+  public long getNumberOfAddedStates(){
+    return nAdded;
+  }
+
+  public long getNumberOfDuplicates(){
+    return nDuplicates;
+  }
+
+  public int getNumberOfRuns(){
+    return runs.size();
+  }
+
+  public int getNumberOfMergePasses(){
+    return nMergePasses;
+  }
+}
@@ -0,0 +1,379 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.ClassInfo;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.MethodInfo;
+import gov.nasa.jpf.jvm.StackFrame;
+import gov.nasa.jpf.jvm.ThreadInfo;
+import gov.nasa.jpf.jvm.bytecode.ATHROW;
+import gov.nasa.jpf.jvm.bytecode.GOTO;
+import gov.nasa.jpf.jvm.bytecode.INVOKESPECIAL;
+import gov.nasa.jpf.jvm.bytecode.INVOKESTATIC;
+import gov.nasa.jpf.jvm.bytecode.IfInstruction;
+import gov.nasa.jpf.jvm.bytecode.Instruction;
+import gov.nasa.jpf.jvm.bytecode.InvokeInstruction;
+import gov.nasa.jpf.jvm.bytecode.NEW;
+import gov.nasa.jpf.jvm.bytecode.RET;
+import gov.nasa.jpf.jvm.bytecode.ReturnInstruction;
+import gov.nasa.jpf.jvm.bytecode.SwitchInstruction;
+import gov.nasa.jpf.util.MethodSpec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * a directed search heuristic that prefers states which are statically close
+ * to a target, which is configured by 'search.heuristic.target' as a list of
+ * <ul>
+ *  <li>"assert" - the creation of an AssertionError, i.e. a failed assert</li>
+ *  <li>method specs (see MethodSpec) - calls of matching methods, e.g.
+ *      "gov.nasa.jpf.jvm.Verify.assertTrue" or "x.y.Foo.bar(int)"</li>
+ * </ul>
+ *
+ * We compute the distance (in instructions) from each instruction of the
+ * loaded methods to the next target, following the control flow graph of
+ * each method and invoked methods (i.e. calls count as 1 + the entry
+ * distance of the callee). Virtual calls are resolved by name and signature
+ * only, i.e. the distance of a call is the minimum over all loaded methods
+ * it could dispatch to. Distances are computed incrementally as classes get
+ * loaded, and propagated to the callers.
+ *
+ * With vm.lazy_code, we don't want to force parsing the code of all loaded
+ * methods, so we only analyze methods once they are linked (usually because
+ * they got executed). Targets that are only reachable through methods which
+ * were not linked yet are therefore not seen until those methods run.
+ *
+ * The heuristic value of a state is the minimal distance over all alive
+ * threads, where the distance of a thread is the minimum over its stack
+ * frames (callers count from the instruction after the call, plus the number
+ * of frames we have to return from). States from which we can't statically
+ * reach a target get UNREACHABLE
+ */
+public class DistanceToTarget extends SimplePriorityHeuristic {
+
+  static final int INF = Integer.MAX_VALUE;
+
+  // not Integer.MAX_VALUE so that we can still add A* path costs
+  public static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+  protected boolean targetsAssertions;
+  protected List<MethodSpec> targetMethods = new ArrayList<MethodSpec>();
+
+  // the distances for each instruction of the loaded methods
+  protected HashMap<MethodInfo,int[]> distances = new HashMap<MethodInfo,int[]>();
+
+  // the minimal entry distances of methods, keyed by call key (see getCallKey)
+  protected HashMap<String,Integer> entryDistances = new HashMap<String,Integer>();
+
+  // the methods that contain calls with a given call key
+  protected HashMap<String,List<MethodInfo>> callers = new HashMap<String,List<MethodInfo>>();
+
+  protected LinkedHashSet<MethodInfo> worklist = new LinkedHashSet<MethodInfo>();
+
+  // methods of loaded classes whose (lazy) code was not linked yet
+  protected HashSet<MethodInfo> unlinked = new HashSet<MethodInfo>();
+
+  public DistanceToTarget (Config config, JVM vm) {
+    super(config,vm);
+
+    String[] targets = config.getStringArray("search.heuristic.target");
+    if (targets == null) {
+      throw new JPFConfigException("DistanceToTarget requires search.heuristic.target");
+    }
+
+    for (String t : targets) {
+      if (t.equals("assert")) {
+        targetsAssertions = true;
+      } else {
+        MethodSpec ms = MethodSpec.createMethodSpec(t);
+        if (ms == null) {
+          throw new JPFConfigException("illegal search.heuristic.target method spec: " + t);
+        }
+        targetMethods.add(ms);
+      }
+    }
+
+    vm.addListener( new ListenerAdapter() {
+      public void classLoaded (JVM vm) {
+        addClass(vm.getLastClassInfo());
+      }
+    });
+  }
+
+  //--- the distance tables
+
+  static String getStaticKey (MethodInfo mi) {
+    return mi.getClassInfo().getName() + '.' + mi.getUniqueName();
+  }
+
+  static String getVirtualKey (MethodInfo mi) {
+    return "*." + mi.getUniqueName();
+  }
+
+  /**
+   * the key for the method(s) a call can end up in
+   */
+  static String getCallKey (InvokeInstruction call) {
+    if (call instanceof INVOKESTATIC || call instanceof INVOKESPECIAL) {
+      return call.getInvokedMethodClassName() + '.' + call.getInvokedMethodName();
+    } else {
+      return "*." + call.getInvokedMethodName();
+    }
+  }
+
+  protected boolean isTargetMethod (MethodInfo mi) {
+    for (MethodSpec ms : targetMethods) {
+      if (ms.matches(mi)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  protected boolean isTarget (Instruction insn) {
+    if (insn instanceof InvokeInstruction) {
+      // we don't need the callee to be loaded for this
+      InvokeInstruction call = (InvokeInstruction)insn;
+      String mname = call.getInvokedMethodName();
+      int idx = mname.indexOf('(');
+      if (idx > 0) {
+        mname = mname.substring(0, idx);
+      }
+
+      for (MethodSpec ms : targetMethods) {
+        if (ms.matches(call.getInvokedMethodClassName(), mname)) {
+          return true;
+        }
+      }
+
+    } else if (targetsAssertions && insn instanceof NEW) {
+      return "java.lang.AssertionError".equals(((NEW)insn).getClassName());
+    }
+
+    return false;
+  }
+
+  protected void addClass (ClassInfo ci) {
+    for (MethodInfo mi : ci.getDeclaredMethodInfos()) {
+      if (isTargetMethod(mi)) { // might be native
+        updateEntryDistance(getStaticKey(mi), 0);
+        updateEntryDistance(getVirtualKey(mi), 0);
+      }
+
+      if (mi.isLinked()) {
+        addMethod(mi);
+      } else {
+        unlinked.add(mi); // don't force parsing the code
+      }
+    }
+
+    processWorklist();
+  }
+
+  protected void addMethod (MethodInfo mi) {
+    Instruction[] code = mi.getInstructions();
+    if (code != null && code.length > 0 && !distances.containsKey(mi)) {
+      int[] d = new int[code.length];
+      for (int i=0; i<d.length; i++) {
+        d[i] = INF;
+      }
+      distances.put(mi, d);
+
+      for (Instruction insn : code) {
+        if (insn instanceof InvokeInstruction) {
+          String key = getCallKey((InvokeInstruction)insn);
+          List<MethodInfo> list = callers.get(key);
+          if (list == null) {
+            list = new ArrayList<MethodInfo>();
+            callers.put(key, list);
+          }
+          if (list.isEmpty() || list.get(list.size()-1) != mi) {
+            list.add(mi);
+          }
+        }
+      }
+
+      worklist.add(mi);
+    }
+  }
+
+  /**
+   * add a method of a loaded class once its lazy code got linked
+   */
+  protected void checkLinked (MethodInfo mi) {
+    if (!unlinked.isEmpty() && mi.isLinked() && unlinked.remove(mi)) {
+      addMethod(mi);
+      processWorklist();
+    }
+  }
+
+  protected void updateEntryDistance (String key, int d) {
+    Integer e = entryDistances.get(key);
+    if (e == null || d < e.intValue()) {
+      entryDistances.put(key, d);
+
+      List<MethodInfo> list = callers.get(key);
+      if (list != null) {
+        worklist.addAll(list);
+      }
+    }
+  }
+
+  protected void processWorklist () {
+    while (!worklist.isEmpty()) {
+      Iterator<MethodInfo> it = worklist.iterator();
+      MethodInfo mi = it.next();
+      it.remove();
+
+      int[] d = distances.get(mi);
+      computeDistances(mi, mi.getInstructions(), d);
+
+      if (d[0] < INF) {
+        updateEntryDistance(getStaticKey(mi), d[0]);
+        updateEntryDistance(getVirtualKey(mi), d[0]);
+      }
+    }
+  }
+
+  /**
+   * iterate backwards over the instructions until the distances don't change
+   * anymore. Distances can only decrease, so this terminates
+   */
+  protected void computeDistances (MethodInfo mi, Instruction[] code, int[] d) {
+    boolean changed;
+    do {
+      changed = false;
+      for (int i=code.length-1; i>=0; i--) {
+        int v = computeDistance(mi, code, d, i);
+        if (v < d[i]) {
+          d[i] = v;
+          changed = true;
+        }
+      }
+    } while (changed);
+  }
+
+  static int next (int[] d, int idx) {
+    return (idx >= 0 && idx < d.length && d[idx] < INF) ? d[idx] + 1 : INF;
+  }
+
+  protected int computeDistance (MethodInfo mi, Instruction[] code, int[] d, int i) {
+    Instruction insn = code[i];
+    if (isTarget(insn)) {
+      return 0;
+    }
+
+    int v = INF;
+
+    if (insn instanceof InvokeInstruction) {
+      Integer e = entryDistances.get(getCallKey((InvokeInstruction)insn));
+      if (e != null) {
+        v = e.intValue() + 1;
+      }
+    }
+
+    if (insn instanceof GOTO) {
+      v = Math.min(v, next(d, ((GOTO)insn).getTarget().getInstructionIndex()));
+
+    } else if (insn instanceof IfInstruction) {
+      v = Math.min(v, next(d, ((IfInstruction)insn).getTarget().getInstructionIndex()));
+      v = Math.min(v, next(d, i+1));
+
+    } else if (insn instanceof SwitchInstruction) {
+      SwitchInstruction sw = (SwitchInstruction)insn;
+      v = Math.min(v, next(d, getIndex(mi, sw.getTarget())));
+      for (int pos : sw.getTargets()) {
+        v = Math.min(v, next(d, getIndex(mi, pos)));
+      }
+
+    } else if (!(insn instanceof ReturnInstruction || insn instanceof ATHROW || insn instanceof RET)) {
+      v = Math.min(v, next(d, i+1));
+    }
+
+    return v;
+  }
+
+  static int getIndex (MethodInfo mi, int position) {
+    Instruction insn = mi.getInstructionAt(position);
+    return (insn != null) ? insn.getInstructionIndex() : -1;
+  }
+
+  /**
+   * the static distance of an instruction, INF if unknown or unreachable
+   */
+  public int getDistance (MethodInfo mi, int insnIndex) {
+    int[] d = distances.get(mi);
+    if (d != null && insnIndex >= 0 && insnIndex < d.length) {
+      return d[insnIndex];
+    } else {
+      return INF;
+    }
+  }
+
+  //--- the heuristic
+
+  protected int getThreadDistance (ThreadInfo ti) {
+    int min = INF;
+    int nReturns = 0;
+
+    for (StackFrame frame = ti.getTopFrame(); frame != null; frame = frame.getPrevious()) {
+      Instruction pc = frame.getPC();
+      MethodInfo mi = frame.getMethodInfo();
+
+      if (pc != null && mi != null) {
+        checkLinked(mi);
+
+        // callers continue after the call
+        int idx = (nReturns == 0) ? pc.getInstructionIndex() : pc.getInstructionIndex() + 1;
+        int d = getDistance(mi, idx);
+        if (d < INF && d + nReturns < min) {
+          min = d + nReturns;
+        }
+      }
+
+      nReturns++;
+    }
+
+    return min;
+  }
+
+  protected int computeHeuristicValue () {
+    int min = INF;
+
+    for (ThreadInfo ti : vm.getThreadList()) {
+      if (ti.isAlive()) {
+        int d = getThreadDistance(ti);
+        if (d < min) {
+          min = d;
+        }
+      }
+    }
+
+    return (min < UNREACHABLE) ? min : UNREACHABLE;
+  }
+}
@@ -0,0 +1,185 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFConfigException;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.jvm.FingerprintStateSet;
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.RestorableVMState;
+import gov.nasa.jpf.search.Search;
+
+/**
+ * an external memory breadth first search, for models whose frontier does
+ * not fit into memory (which is what limits BFSHeuristic).
+ *
+ * The search proceeds level by level. The children of all states of the
+ * current level are streamed into a DiskFrontier as (fingerprint, choice path)
+ * records, and duplicates are only removed once the level is done, by a
+ * sort-merge against the visited set on disk (delayed duplicate detection).
+ * States of the next level are then restored by replaying their choice paths
+ * from the initial state, i.e. we neither keep VM snapshots nor an in-memory
+ * state set. This requires a deterministic SUT, and
+ *
+ *   vm.storage.class = gov.nasa.jpf.jvm.FingerprintStateSet
+ *
+ * Since duplicates are detected late, all children look new to listeners
+ * when they are generated. Counterexamples are still shortest paths
+ */
+public class ExternalBFSearch extends Search {
+
+  protected FingerprintStateSet stateSet;
+  protected DiskFrontier frontier;
+
+  protected RestorableVMState initialState;
+  protected int[] currentPath;
+
+  public ExternalBFSearch (Config config, JVM vm) {
+    super(config, vm);
+
+    if (!(vm.getStateSet() instanceof FingerprintStateSet)) {
+      throw new JPFConfigException("ExternalBFSearch requires vm.storage.class=" + FingerprintStateSet.class.getName());
+    }
+    stateSet = (FingerprintStateSet) vm.getStateSet();
+
+    Search.log.info("external memory BFS Search");
+  }
+
+  public DiskFrontier getFrontier() {
+    return frontier;
+  }
+
+  /**
+   * the choice path of the current VM state, which is a child of the state
+   * we are expanding
+   */
+  protected int[] getCurrentPath () {
+    int[] choices = ChoicePath.getCurrentChoices(vm);
+    int len = currentPath.length;
+
+    int[] path = new int[len + choices.length + 1];
+    System.arraycopy(currentPath, 0, path, 0, len);
+    path[len] = choices.length;
+    System.arraycopy(choices, 0, path, len+1, choices.length);
+
+    return path;
+  }
+
+  protected void restoreState (int[] path) {
+    vm.restoreState(initialState);
+
+    boolean treeOutput = vm.setTreeOutput(false); // we already printed this
+    try {
+      for (int i=0; i<path.length; ) {
+        int n = path[i++];
+        int[] choices = new int[n];
+        System.arraycopy(path, i, choices, 0, n);
+        i += n;
+
+        if (!ReplayFrontier.forward(vm, choices)) {
+          throw new JPFException("non-deterministic replay at depth " + vm.getPathLength());
+        }
+      }
+    } finally {
+      vm.setTreeOutput(treeOutput);
+    }
+
+    currentPath = path;
+    depth = vm.getPathLength();
+    notifyStateRestored();
+  }
+
+  /**
+   * generate all children of the current state, and add the ones we have to
+   * expand to the next level
+   *
+   * @returns false if this is cut short by a property termination or
+   * explicit termination request
+   */
+  protected boolean generateChildren () {
+    while (!done) {
+
+      if (!forward()) {
+        notifyStateProcessed();
+        return true;
+      }
+
+      depth++;
+      notifyStateAdvanced();
+
+      if (currentError != null) {
+        notifyPropertyViolated();
+        if (hasPropertyTermination()) {
+          return false;
+        }
+
+      } else if (!isEndState() && !isIgnoredState()) {
+        if (depth >= depthLimit) {
+          notifySearchConstraintHit("depth limit reached: " + depthLimit);
+        } else {
+          frontier.add(stateSet.getLastFingerprint(), getCurrentPath());
+          notifyStateStored();
+        }
+      }
+
+      backtrack();
+      depth--;
+      notifyStateBacktracked();
+    }
+
+    return false;
+  }
+
+  public void search () {
+    depth = 0;
+    initialState = vm.getRestorableState();
+    currentPath = new int[0];
+    frontier = new DiskFrontier(config);
+
+    done = false;
+    notifySearchStarted();
+
+    try {
+      if (generateChildren()) {
+        while (!done && frontier.nextLevel() > 0) {
+          Search.log.info("BFS level ", frontier.getLevel(), ": ", frontier.getLevelSize(),
+                          " new states, ", frontier.getNumberOfDuplicates(), " duplicates");
+          int[] path;
+          while (!done && (path = frontier.next()) != null) {
+            restoreState(path);
+            if (!generateChildren()) {
+              break;
+            }
+          }
+        }
+      }
+    } finally {
+      frontier.dispose();
+    }
+
+    notifySearchFinished();
+  }
+
+  public boolean supportsBacktrack () {
+    // we don't do multi-level backtracks, but automatically backtrack to
+    // the parent after each child state generation
+    return false;
+  }
+}
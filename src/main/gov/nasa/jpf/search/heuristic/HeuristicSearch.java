@@ -56,12 +56,22 @@ public abstract class HeuristicSearch extends Search {
    */
   protected boolean isBeamSearch;
 
+  /*
+   * if set, queued states only store their choice paths instead of full
+   * VM snapshots, and get re-materialized by re-execution
+   */
+  protected ReplayFrontier frontier;
+
   
   public HeuristicSearch (Config config, JVM vm) {
     super(config, vm);
     
     useAstar = config.getBoolean("search.heuristic.astar");
     isBeamSearch = config.getBoolean("search.heuristic.beam_search");
+
+    if (config.getBoolean("search.heuristic.replay")) {
+      frontier = new ReplayFrontier(config, vm);
+    }
   }
 
   
@@ -83,6 +93,32 @@ public abstract class HeuristicSearch extends Search {
     return childStates;
   }
   
+  public ReplayFrontier getFrontier() {
+    return frontier;
+  }
+
+  /**
+   * the choice path for a new HeuristicState of the current VM state, which
+   * is a child of the parentState (null if we don't use a ReplayFrontier)
+   */
+  protected ChoicePath getCurrentChoicePath () {
+    if (frontier == null) {
+      return null;
+    } else {
+      ChoicePath parentPath = (parentState != null) ? parentState.getChoicePath() : null;
+      return frontier.createPath(parentPath);
+    }
+  }
+
+  /**
+   * is the current state one that was dropped from the queue, but has to be
+   * regenerated (e.g. by a memory bounded SMAStarQueue). Such states are
+   * queued again even though they are not new
+   */
+  protected boolean isForgottenState () {
+    return false;
+  }
+
   public void setPathSensitive (boolean isPathSensitive) {
     this.isPathSensitive = isPathSensitive;
   }  
@@ -131,7 +167,7 @@ public abstract class HeuristicSearch extends Search {
       } else {
       
         if (!isEndState() && !isIgnoredState()) {
-          boolean isNewState = isNewState();
+          boolean isNewState = isNewState() || isForgottenState();
 
           if (isNewState && depth >= depthLimit) {
             // we can't do this before we actually generated the VM child state
@@ -165,7 +201,14 @@ public abstract class HeuristicSearch extends Search {
 
   
   private void restoreState (HeuristicState hState) {    
-    vm.restoreState(hState.getVMState());
+    ChoicePath choicePath = hState.getChoicePath();
+
+    if (choicePath != null) {
+      frontier.restore(choicePath);
+      frontier.cacheSnapshot(choicePath); // we are going to expand it
+    } else {
+      vm.restoreState(hState.getVMState());
+    }
 
     // note we have to query the depth from the VM because the state is taken from the queue
     // and we have no idea when it was entered there
@@ -30,16 +30,42 @@ import gov.nasa.jpf.jvm.RestorableVMState;
 public abstract class HeuristicState {
   
   protected RestorableVMState vmState;
+  protected ChoicePath choicePath;
   protected int     stateId;
     
   public HeuristicState (JVM vm) {
     stateId = vm.getStateId();
     vmState = vm.getRestorableState();
   }
+
+  /**
+   * if we have a choice path, we don't store the VM state (it gets restored
+   * by a ReplayFrontier)
+   */
+  public HeuristicState (JVM vm, ChoicePath choicePath) {
+    stateId = vm.getStateId();
+
+    if (choicePath != null) {
+      this.choicePath = choicePath;
+    } else {
+      vmState = vm.getRestorableState();
+    }
+  }
+  
+  /**
+   * a state without VM data, which is only useful for testing queues
+   */
+  protected HeuristicState (int stateId) {
+    this.stateId = stateId;
+  }
   
   public RestorableVMState getVMState () {
     return vmState;
   }
+
+  public ChoicePath getChoicePath () {
+    return choicePath;
+  }
   
   public int getStateId() {
     return stateId;
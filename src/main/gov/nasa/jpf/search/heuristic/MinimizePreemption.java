@@ -27,8 +27,9 @@ import gov.nasa.jpf.jvm.ThreadInfo;
  * a simple heuristic that tries to minimize preemptive scheduling, i.e.
  * switching from a thread that is not blocked.
  * 
- * This is supposed to be a less expensive and more robust version of the old
- * IterativContextBounding search
+ * This is supposed to be a less expensive and more robust version of the
+ * IterativeContextBounding search, at the cost of storing a snapshot for
+ * each queued state
  */
 public class MinimizePreemption extends SimplePriorityHeuristic {
   
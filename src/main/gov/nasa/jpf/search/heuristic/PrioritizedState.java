@@ -34,6 +34,18 @@ public class PrioritizedState extends HeuristicState implements Comparable<Prior
     this.heuristicValue = heuristicValue;
   }
 
+  public PrioritizedState(JVM vm, int heuristicValue, ChoicePath choicePath) {
+    super(vm, choicePath);
+
+    this.heuristicValue = heuristicValue;
+  }
+
+  public PrioritizedState(int stateId, int heuristicValue) {
+    super(stateId);
+
+    this.heuristicValue = heuristicValue;
+  }
+
   public int getPriority () {
     return heuristicValue;
   }
@@ -0,0 +1,44 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+/**
+ * the interface of priority queues used by SimplePriorityHeuristics. Lower
+ * heuristic values represent higher priorities, i.e. pollFirst() returns
+ * the state with the lowest value
+ */
+public interface PrioritizedStateQueue {
+
+  /**
+   * add a state, unless the queue limit is reached and the state has a lower
+   * priority than all queued states
+   */
+  boolean add (PrioritizedState s);
+
+  /**
+   * remove and return the highest priority state, or null if the queue is empty
+   */
+  PrioritizedState pollFirst ();
+
+  int size ();
+
+  void clear ();
+
+  boolean isQueueLimitReached ();
+}
@@ -0,0 +1,193 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.jvm.ChoiceGenerator;
+import gov.nasa.jpf.jvm.JVM;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * a HeuristicSearch frontier representation that does not store a
+ * RestorableVMState for each queued state, but only the choice path that
+ * leads to it from its parent (see ChoicePath).
+ *
+ * Queued states are re-materialized by restoring the nearest ancestor that
+ * has a cached snapshot, and then re-executing the transitions with the
+ * recorded choices. Snapshots are taken for each state that gets expanded,
+ * and kept in a LRU cache of 'search.heuristic.replay.cache_size' entries
+ * (the root snapshot is always kept). This trades CPU time for frontier
+ * memory - the smaller the cache, the more we have to re-execute.
+ *
+ * Re-execution requires a deterministic SUT (which is what we assume for
+ * backtracking anyways) and CGs that produce the same choices when they are
+ * re-created. Tree output is suppressed while we replay
+ */
+public class ReplayFrontier {
+
+  protected JVM vm;
+  protected int cacheSize;
+
+  protected ChoicePath root;
+
+  // the snapshot cache, in LRU order
+  protected LinkedHashMap<ChoicePath,ChoicePath> cache;
+
+  protected long nReplayedTransitions;
+  protected long nRestores;
+
+  @SuppressWarnings("serial")
+  public ReplayFrontier (Config config, JVM vm){
+    this.vm = vm;
+    cacheSize = config.getInt("search.heuristic.replay.cache_size", 1024);
+
+    cache = new LinkedHashMap<ChoicePath,ChoicePath>(256, 0.75f, true){
+      protected boolean removeEldestEntry (Map.Entry<ChoicePath,ChoicePath> eldest){
+        if (size() > cacheSize){
+          eldest.getKey().snapshot = null;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * create the path for the current state, which is a child of 'parent'
+   * (or the root if 'parent' is null)
+   */
+  public ChoicePath createPath (ChoicePath parent){
+    ChoicePath p = new ChoicePath(parent, vm);
+
+    if (parent == null){
+      p.snapshot = vm.getRestorableState(); // not in the cache, we always keep this one
+      root = p;
+    }
+
+    return p;
+  }
+
+  /**
+   * cache the snapshot of the current state, which has to correspond to 'p'.
+   * This is called when we expand 'p', i.e. we are about to create its
+   * children (which are restored from this snapshot)
+   */
+  public void cacheSnapshot (ChoicePath p){
+    if (p.snapshot == null && cacheSize > 0){
+      p.snapshot = vm.getRestorableState();
+      cache.put(p, p);
+    }
+  }
+
+  /**
+   * restore the VM state that corresponds to 'p'
+   */
+  public void restore (ChoicePath p){
+    ArrayList<ChoicePath> replayPath = new ArrayList<ChoicePath>();
+
+    ChoicePath a = p;
+    while (a.snapshot == null){
+      replayPath.add(a);
+      a = a.parent;
+      if (a == null){
+        throw new JPFException("no snapshot for choice path: " + p);
+      }
+    }
+
+    vm.restoreState(a.snapshot);
+    if (a != root){
+      cache.get(a); // update LRU order
+    }
+    nRestores++;
+
+    if (!replayPath.isEmpty()){
+      boolean treeOutput = vm.setTreeOutput(false); // we already printed this
+      try {
+        for (int i=replayPath.size()-1; i>=0; i--){
+          replay(replayPath.get(i));
+        }
+      } finally {
+        vm.setTreeOutput(treeOutput);
+      }
+    }
+  }
+
+  /**
+   * re-execute the transition into 'p' from its (current) parent state
+   */
+  protected void replay (ChoicePath p){
+    if (!forward(vm, p.choices)){
+      throw new JPFException("choice generator mismatch replaying: " + p);
+    }
+    nReplayedTransitions++;
+
+    if (vm.getPathLength() != p.depth || (vm.getStateSet() != null && vm.getStateId() != p.stateId)){
+      throw new JPFException("non-deterministic replay, expected " + p + " got state " + vm.getStateId());
+    }
+  }
+
+  /**
+   * advance the VM from its current state into the child state that was
+   * entered with the recorded (cascaded) CG choices (see
+   * ChoicePath.getCurrentChoices()). Answers false if the choices don't
+   * match the CGs of the current state, or there is no transition
+   */
+  static boolean forward (JVM vm, int[] choices){
+    ChoiceGenerator<?> cg = vm.getNextChoiceGenerator();
+    if (cg == null){ // no new CG, we continue with the current one
+      cg = vm.getChoiceGenerator();
+    }
+
+    // set the CGs so that the next advance() gets the recorded choice. Cascaded
+    // parents are only advanced by the VM if they haven't been advanced yet
+    int i = 0;
+    for (ChoiceGenerator<?> g = cg; g != null; g = g.getCascadedParent(), i++){
+      if (i >= choices.length){
+        return false;
+      }
+
+      int n = choices[i] - g.getProcessedNumberOfChoices();
+      if (i == 0){
+        n--; // this one gets advanced by forward()
+      }
+      if (n < 0){
+        return false;
+      }
+      g.advance(n);
+    }
+
+    return vm.forward();
+  }
+
+  public long getNumberOfReplayedTransitions(){
+    return nReplayedTransitions;
+  }
+
+  public long getNumberOfRestores(){
+    return nRestores;
+  }
+
+  public int getNumberOfCachedSnapshots(){
+    return cache.size();
+  }
+}
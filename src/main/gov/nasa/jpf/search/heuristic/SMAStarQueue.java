@@ -0,0 +1,265 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.Config;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+/**
+ * a memory bounded PrioritizedStateQueue that implements a simplified SMA*
+ * (simplified memory bounded A*). Use it with 'search.heuristic.astar'.
+ *
+ * Instead of dropping states once we reach the limit, we keep track of the
+ * search tree of all retained states. These are the queued leaves and the
+ * expanded states that still have retained children. If there are more than
+ * 'search.heuristic.sma.max_states' retained states, we forget the worst
+ * leaf (highest value, shallowest). Its value is backed up into its parent,
+ * and the parent is re-queued with the smallest value of its forgotten
+ * children. Once the parent gets polled again, it is re-expanded, and the
+ * search re-queues the children that were forgotten (see isForgotten()),
+ * even though they are not new states anymore.
+ *
+ * States are added as children of the state that was last polled, i.e. this
+ * depends on the HeuristicSearch protocol of polling a state, and then
+ * adding all its queued children
+ */
+public class SMAStarQueue implements PrioritizedStateQueue {
+
+  static class Node implements Comparable<Node> {
+    PrioritizedState state;
+    Node parent;
+    int depth;
+    long seq;
+
+    int value;             // the state value, or the backed up value of forgotten children
+    int forgottenValue = Integer.MAX_VALUE;
+    int liveChildren;
+
+    boolean isQueued;
+    boolean isExpanded;
+
+    Node (PrioritizedState state, Node parent, long seq){
+      this.state = state;
+      this.parent = parent;
+      this.seq = seq;
+
+      value = state.getPriority();
+      depth = (parent != null) ? parent.depth + 1 : 0;
+    }
+
+    // lowest value first, and deeper states first if they have the same value
+    public int compareTo (Node o){
+      if (value != o.value){
+        return (value < o.value) ? -1 : 1;
+      } else if (depth != o.depth){
+        return (depth > o.depth) ? -1 : 1;
+      } else {
+        return (seq < o.seq) ? -1 : ((seq > o.seq) ? 1 : 0);
+      }
+    }
+  }
+
+  protected TreeSet<Node> queue = new TreeSet<Node>();
+
+  protected int maxStates;
+  protected int nRetained;
+  protected long seq;
+
+  // the state that was polled last, i.e. the parent of the states we add
+  protected Node current;
+
+  // ids of the states we forgot, and have to regenerate
+  protected BitSet forgotten = new BitSet();
+
+  protected long nForgotten;
+  protected long nRegenerated;
+
+  public SMAStarQueue (Config config){
+    this(config.getInt("search.heuristic.sma.max_states", 10000));
+  }
+
+  public SMAStarQueue (int maxStates){
+    this.maxStates = maxStates;
+  }
+
+  public boolean add (PrioritizedState s){
+    Node n = new Node(s, current, seq++);
+    if (current != null){
+      current.liveChildren++;
+    }
+
+    int id = s.getStateId();
+    if (id >= 0 && forgotten.get(id)){
+      forgotten.clear(id);
+      nRegenerated++;
+    }
+
+    enqueue(n);
+    nRetained++;
+
+    while (nRetained > maxStates){
+      Node worst = getWorstLeaf();
+      if (worst == null){
+        break; // nothing we can forget
+      }
+      forget(worst);
+    }
+
+    return true;
+  }
+
+  public PrioritizedState pollFirst (){
+    if (current != null){
+      if (current.liveChildren == 0 && !current.isQueued){
+        release(current);
+      }
+      current = null;
+    }
+
+    Node n = queue.pollFirst();
+    if (n == null){
+      return null;
+    }
+
+    n.isQueued = false;
+    n.isExpanded = true;
+    n.forgottenValue = Integer.MAX_VALUE; // we are going to regenerate them
+
+    current = n;
+    return n.state;
+  }
+
+  protected void enqueue (Node n){
+    queue.add(n);
+    n.isQueued = true;
+  }
+
+  protected void dequeue (Node n){
+    queue.remove(n);
+    n.isQueued = false;
+  }
+
+  /**
+   * the worst queued node that has no retained children. We never forget
+   * the root, since there would be nothing to regenerate it from, and
+   * neither the state that is currently expanded
+   */
+  protected Node getWorstLeaf (){
+    for (Iterator<Node> it = queue.descendingIterator(); it.hasNext(); ){
+      Node n = it.next();
+      if (n.liveChildren == 0 && n.parent != null && n != current){
+        return n;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * drop a leaf, and (re-)queue its parent with the backed up value
+   */
+  protected void forget (Node n){
+    dequeue(n);
+    nRetained--;
+
+    int id = n.state.getStateId();
+    n.state = null; // we don't need its snapshot anymore
+    if (id >= 0){
+      forgotten.set(id);
+    }
+    nForgotten++;
+
+    Node p = n.parent;
+    p.liveChildren--;
+    if (n.value < p.forgottenValue){
+      p.forgottenValue = n.value;
+    }
+
+    if (p.isQueued){
+      if (p.value != p.forgottenValue){
+        dequeue(p);
+        p.value = p.forgottenValue;
+        enqueue(p);
+      }
+    } else {
+      p.value = p.forgottenValue;
+      enqueue(p);
+    }
+  }
+
+  /**
+   * a node that has no queued or retained children anymore
+   */
+  protected void release (Node n){
+    nRetained--;
+
+    Node p = n.parent;
+    if (p != null){
+      p.liveChildren--;
+      if (p.liveChildren == 0 && !p.isQueued && p != current){
+        release(p);
+      }
+    }
+  }
+
+  /**
+   * do we have to regenerate this state
+   */
+  public boolean isForgotten (int stateId){
+    return (stateId >= 0) && forgotten.get(stateId);
+  }
+
+  public int size (){
+    return queue.size();
+  }
+
+  public void clear (){
+    queue.clear();
+    forgotten.clear();
+
+    if (current != null){
+      current.parent = null;
+      current.liveChildren = 0;
+      nRetained = 1;
+    } else {
+      nRetained = 0;
+    }
+  }
+
+  /**
+   * we never lose states, we only forget them temporarily
+   */
+  public boolean isQueueLimitReached (){
+    return false;
+  }
+
+  public int getNumberOfRetainedStates(){
+    return nRetained;
+  }
+
+  public long getNumberOfForgottenStates(){
+    return nForgotten;
+  }
+
+  public long getNumberOfRegeneratedStates(){
+    return nRegenerated;
+  }
+}
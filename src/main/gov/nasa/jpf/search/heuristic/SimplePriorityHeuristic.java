@@ -27,12 +27,19 @@ import gov.nasa.jpf.jvm.JVM;
  */
 public abstract class SimplePriorityHeuristic extends HeuristicSearch {
 
-  StaticPriorityQueue queue;
+  PrioritizedStateQueue queue;
+
+  // if we do a memory bounded SMA* search, this is also our queue
+  SMAStarQueue smaQueue;
   
   public SimplePriorityHeuristic (Config config, JVM vm) {
     super(config,vm);
 
-    queue = new StaticPriorityQueue(config);    
+    queue = config.getInstance("search.heuristic.queue.class", PrioritizedStateQueue.class,
+                               "gov.nasa.jpf.search.heuristic.StaticPriorityQueue");
+    if (queue instanceof SMAStarQueue) {
+      smaQueue = (SMAStarQueue) queue;
+    }
   }
 
   protected abstract int computeHeuristicValue ();
@@ -58,7 +65,7 @@ public abstract class SimplePriorityHeuristic extends HeuristicSearch {
       }
     }
     
-    PrioritizedState hState = new PrioritizedState(vm,heuristicValue);
+    PrioritizedState hState = new PrioritizedState(vm,heuristicValue, getCurrentChoicePath());
     
     queue.add(hState);
     
@@ -66,25 +73,19 @@ public abstract class SimplePriorityHeuristic extends HeuristicSearch {
   }
   
   protected HeuristicState getNextQueuedState () {
-    
-    //HeuristicState hState = queue.pollFirst();  // only Java 1.6
-    //if (isBeanSearch) { queue.clear(); }
-    //return hState;
+    HeuristicState hState = queue.pollFirst();
 
-    if (queue.size() == 0) {                      // the dreaded Java 1.5 version
-      return null;
-    }
-    HeuristicState hState = queue.first();
-    
     if (isBeamSearch) {
       queue.clear();
-    } else {
-      queue.remove(hState);      
     }
     
     return hState;
   }
 
+  protected boolean isForgottenState () {
+    return (smaQueue != null) && smaQueue.isForgotten(vm.getStateId());
+  }
+
   public int getQueueSize() {
     return queue.size();
   }
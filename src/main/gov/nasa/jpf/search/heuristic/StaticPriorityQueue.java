@@ -33,13 +33,11 @@ import java.util.TreeSet;
  * block copy can be more efficient, but that very much depends on
  * queue size and processor, so it's not really worth the trouble
  * 
- * <2do> this needs to be re-evaluated in light of the stupid fact
- * that pollFirst()/pollLast() are only in Java 1.6 and we can't switch
- * yet (no Java 1.6 for PPC), which forces us to do some shuffling to
- * make remove(last()) work as expected
+ * For heuristics with few distinct values, BucketPriorityQueue avoids
+ * the per-state tree nodes and log(n) inserts
  */
 @SuppressWarnings("serial")
-public class StaticPriorityQueue extends TreeSet<PrioritizedState> {
+public class StaticPriorityQueue extends TreeSet<PrioritizedState> implements PrioritizedStateQueue {
 
   int maxQueueSize;
   
@@ -59,8 +57,7 @@ public class StaticPriorityQueue extends TreeSet<PrioritizedState> {
     } else {
       PrioritizedState last = last();
       if (s.compareTo(last) < 0) {
-        //pollLast();   // that's only Java 1.6
-        remove(last);
+        pollLast();
         
         return super.add(s);
         
@@ -0,0 +1,250 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.tool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/**
+ * client for gov.nasa.jpf.JPFDaemon, which runs the JPF job specified by the
+ * command line arguments on a resident JPF process and prints its output.
+ * The exit status is 0 if no errors were found, 1 if there were errors, and
+ * 2 if the job failed (or the daemon cannot be reached)
+ *
+ * Each request starts with the token that the daemon wrote to
+ * ${user.home}/.jpf/daemon/<port>.token, i.e. the client has to run as the
+ * same user as the daemon.
+ *
+ * Usage: java gov.nasa.jpf.tool.RunDaemonClient [-port <num>] [-shutdown] [<jpf-option>..] [<app> [<app-arg>..]]
+ *
+ * NOTE - like RunJPF, this class is not allowed to use any JPF types, so
+ * that it can be used without the JPF classpath. This is why we duplicate
+ * the protocol constants of JPFDaemon here
+ */
+public class RunDaemonClient extends Run {
+
+  public static final int DEFAULT_PORT = 4242;
+
+  static final int OUTPUT = 'O';
+  static final int EXIT = 'X';
+  static final int SHUTDOWN = -1;
+  static final int FAILED = 2;
+
+  public static void main (String[] args){
+    int port = DEFAULT_PORT;
+    boolean shutdown = false;
+    ArrayList<String> jobArgs = new ArrayList<String>();
+
+    for (int i=0; i<args.length; i++){
+      String a = args[i];
+      if ("-port".equals(a) && i+1 < args.length){
+        port = Integer.parseInt(args[++i]);
+      } else if ("-shutdown".equals(a)){
+        shutdown = true;
+      } else {
+        jobArgs.add(a);
+      }
+    }
+
+    try {
+      if (shutdown){
+        shutdown(port);
+      } else {
+        String[] a = getAbsolutePathArgs( jobArgs.toArray(new String[jobArgs.size()]));
+        int status = runJob(port, a, System.out);
+        System.exit(status);
+      }
+
+    } catch (IOException iox){
+      System.err.println("error: cannot connect to JPF daemon on port " + port + " : " + iox.getMessage());
+      System.exit(FAILED);
+    }
+  }
+
+  // the keys of path (list) values that we have to make absolute. This also
+  // covers keys ending with '.' + PATH_KEYS (like "jpf-core.classpath")
+  static final String[] PATH_KEYS = { "classpath", "native_classpath", "sourcepath", "site", "app" };
+
+  /**
+   * the daemon runs in its own working dir, so we have to turn relative
+   * *.jpf pathnames and path values of '+<key>=<value>' (or '+<key>+=<value>')
+   * options into absolute ones
+   */
+  public static String[] getAbsolutePathArgs (String[] args){
+    for (int i=0; i<args.length; i++){
+      String a = args[i];
+      if (a.length() == 0){
+        continue;
+      }
+
+      if (a.charAt(0) == '+'){
+        int idx = a.indexOf('=');
+        if (idx > 1){
+          int keyEnd = (a.charAt(idx-1) == '+') ? idx-1 : idx;
+          if (isPathKey(a.substring(1, keyEnd))){
+            args[i] = a.substring(0, idx+1) + getAbsolutePathList(a.substring(idx+1));
+          }
+        }
+
+      } else if (a.endsWith(".jpf")){
+        File f = new File(a);
+        if (f.isFile()){
+          args[i] = f.getAbsolutePath();
+        }
+      }
+    }
+    return args;
+  }
+
+  static boolean isPathKey (String key){
+    for (String k : PATH_KEYS){
+      if (key.equals(k) || key.endsWith("." + k)){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * make all relative elements of a ',' or ';' separated path list absolute.
+   * Elements with property references ("${..}") are left alone, they are
+   * expanded by the daemon
+   */
+  static String getAbsolutePathList (String v){
+    StringBuilder sb = new StringBuilder(v.length());
+    int i0 = 0;
+    int len = v.length();
+
+    for (int i=0; i<=len; i++){
+      if (i == len || v.charAt(i) == ',' || v.charAt(i) == ';'){
+        String e = v.substring(i0, i).trim();
+        if (e.length() > 0 && e.indexOf("${") < 0 && !new File(e).isAbsolute()){
+          e = new File(e).getAbsolutePath();
+        }
+        sb.append(e);
+        if (i < len){
+          sb.append(v.charAt(i));
+        }
+        i0 = i+1;
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * read the token that the daemon listening on 'port' wrote to the user's
+   * home dir (see JPFDaemon.getTokenFile())
+   */
+  static String readToken (int port) throws IOException {
+    File file = new File(System.getProperty("user.home") + File.separator + ".jpf"
+                         + File.separator + "daemon", port + ".token");
+    InputStreamReader r = new InputStreamReader( new FileInputStream(file), "UTF-8");
+    try {
+      StringBuilder sb = new StringBuilder();
+      char[] buf = new char[128];
+      int n;
+      while ((n = r.read(buf)) >= 0){
+        sb.append(buf, 0, n);
+      }
+      return sb.toString().trim();
+
+    } finally {
+      r.close();
+    }
+  }
+
+  static Socket connect (int port) throws IOException {
+    return new Socket(InetAddress.getByName(null), port);
+  }
+
+  /**
+   * send a job to the daemon and copy its output to 'out' while it executes.
+   * Returns the job exit status
+   */
+  public static int runJob (int port, String[] args, OutputStream out) throws IOException {
+    String token = readToken(port);
+    Socket socket = connect(port);
+    try {
+      DataOutputStream req = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream()));
+      req.writeUTF(token);
+      req.writeInt(args.length);
+      for (String a : args){
+        req.writeUTF(a);
+      }
+      req.flush();
+
+      DataInputStream rsp = new DataInputStream( new BufferedInputStream( socket.getInputStream()));
+      byte[] buf = new byte[4096];
+
+      while (true){
+        int type = rsp.readByte();
+
+        if (type == OUTPUT){
+          int len = rsp.readInt();
+          if (len > buf.length){
+            buf = new byte[len];
+          }
+          rsp.readFully(buf, 0, len);
+          out.write(buf, 0, len);
+          out.flush();
+
+        } else if (type == EXIT){
+          return rsp.readInt();
+
+        } else {
+          throw new IOException("unknown response record: " + type);
+        }
+      }
+
+    } finally {
+      socket.close();
+    }
+  }
+
+  public static void shutdown (int port) throws IOException {
+    String token = readToken(port);
+    Socket socket = connect(port);
+    try {
+      DataOutputStream req = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream()));
+      req.writeUTF(token);
+      req.writeInt(SHUTDOWN);
+      req.flush();
+
+      DataInputStream rsp = new DataInputStream( socket.getInputStream());
+      if (rsp.readByte() != EXIT){
+        throw new IOException("daemon did not acknowledge shutdown");
+      }
+      rsp.readInt();
+
+    } finally {
+      socket.close();
+    }
+  }
+}
@@ -26,10 +26,15 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.URL;
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * utility class to find all files matching (possibly hierarchical)
@@ -506,4 +511,133 @@ public class FileUtils {
 
     return false;
   }
+
+  //--- private (per-user) storage for persistent caches
+
+  /**
+   * the default location for persistent JPF data of the current user, i.e.
+   * ${user.home}/.jpf/<name>. Never use a shared dir such as java.io.tmpdir
+   * for data that influences what JPF executes
+   */
+  public static File getUserDir (String name){
+    return new File(System.getProperty("user.home") + File.separator + ".jpf", name);
+  }
+
+  // the java.nio.file (Java 7) methods we need to check owner and permissions.
+  // We have to compile and run on Java 6, hence we look them up reflectively
+  // and fall back to what java.io.File can tell us if they are not there
+  static Method toPath, getOwner, getPosixFilePermissions;
+  static Object noFollowLinks; // LinkOption[] { NOFOLLOW_LINKS }
+  static boolean nio2Initialized;
+
+  @SuppressWarnings({"unchecked","rawtypes"})
+  static synchronized boolean initNio2 (){
+    if (!nio2Initialized){
+      nio2Initialized = true;
+      try {
+        Class<?> pathCls = Class.forName("java.nio.file.Path");
+        Class<?> filesCls = Class.forName("java.nio.file.Files");
+        Class linkOptCls = Class.forName("java.nio.file.LinkOption");
+        Class<?> linkOptArrayCls = Array.newInstance(linkOptCls, 0).getClass();
+
+        Object opts = Array.newInstance(linkOptCls, 1);
+        Array.set(opts, 0, Enum.valueOf(linkOptCls, "NOFOLLOW_LINKS"));
+
+        toPath = File.class.getMethod("toPath");
+        getOwner = filesCls.getMethod("getOwner", pathCls, linkOptArrayCls);
+        getPosixFilePermissions = filesCls.getMethod("getPosixFilePermissions", pathCls, linkOptArrayCls);
+        noFollowLinks = opts;
+
+      } catch (Exception x){ // Java 6
+        toPath = null;
+      }
+    }
+
+    return (toPath != null);
+  }
+
+  /**
+   * check if 'file' (a file or dir) is owned by the current user and not
+   * writable by group or others. Symbolic links are not followed, i.e. a
+   * link that is owned by another user is not private. If the file system
+   * does not support posix permissions, we only check the owner.
+   *
+   * On Java 6 we can neither determine the owner nor group/other permissions,
+   * i.e. all we can check is that the file exists and we can write it
+   */
+  public static boolean isPrivate (File file){
+    if (!initNio2()){
+      return file.exists() && file.canWrite();
+    }
+
+    try {
+      Object p = toPath.invoke(file);
+
+      // on Windows, owner names are qualified with the domain name
+      String owner = ((Principal)getOwner.invoke(null, p, noFollowLinks)).getName();
+      String user = System.getProperty("user.name");
+      if (!owner.equals(user) && !owner.endsWith("\\" + user)){
+        return false;
+      }
+
+      try {
+        Set<?> perms = (Set<?>)getPosixFilePermissions.invoke(null, p, noFollowLinks);
+        for (Object perm : perms){
+          String name = ((Enum<?>)perm).name();
+          if (name.equals("GROUP_WRITE") || name.equals("OTHERS_WRITE")){
+            return false;
+          }
+        }
+      } catch (InvocationTargetException x){
+        if (!(x.getCause() instanceof UnsupportedOperationException)){
+          throw x;
+        }
+        // no posix file system, owner has to do
+      }
+
+      return true;
+
+    } catch (InvocationTargetException x){ // IOException, e.g. file doesn't exist
+      return false;
+    } catch (IllegalAccessException x){
+      return false;
+    }
+  }
+
+  /**
+   * restrict access to 'file' to the current user (rw------- for files,
+   * rwx------ for dirs). This is a no-op on file systems that don't support
+   * owner-only permissions
+   */
+  public static void setPrivate (File file){
+    boolean isDir = file.isDirectory();
+
+    // first clear the permissions for everybody, then set the owner ones
+    file.setReadable(false, false);
+    file.setWritable(false, false);
+    file.setExecutable(false, false);
+
+    file.setReadable(true, true);
+    file.setWritable(true, true);
+    if (isDir){
+      file.setExecutable(true, true);
+    }
+  }
+
+  /**
+   * create 'dir' and its parents if they don't exist yet, restricting access
+   * to 'dir' if we create it. Answer if 'dir' exists and is private (see
+   * isPrivate()), i.e. if we can store files in it that nobody else can plant
+   * or modify
+   */
+  public static boolean ensurePrivateDir (File dir){
+    if (!dir.isDirectory()){
+      if (!dir.mkdirs()){
+        return false;
+      }
+      setPrivate(dir);
+    }
+
+    return isPrivate(dir);
+  }
 }
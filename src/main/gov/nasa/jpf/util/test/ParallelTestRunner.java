@@ -0,0 +1,430 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.util.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a runner that executes the test methods of TestJPF classes concurrently,
+ * on a pool of forked host VMs.
+ *
+ * JPF keeps a lot of static VM state, i.e. we can't run several JPF instances
+ * within the same host VM at the same time. What we can do is run each test
+ * method in a separate worker process. Workers are reused for subsequent test
+ * methods, just like TestJPF runs consecutive JPF instances in the same
+ * process. If a worker dies (e.g. System.exit() or OutOfMemoryError), the
+ * current test is reported as an error and a new worker is started.
+ *
+ * The output of each test method is captured by its worker, and printed in
+ * the order of test classes and methods, i.e. output does not depend on
+ * scheduling. Note that @BeforeClass/@AfterClass methods are executed for each
+ * test method, since methods of the same class can run in different workers.
+ *
+ * Usage: ParallelTestRunner [-j <num-workers>] [-dir <test-classes-dir>] {<test-class> | <package-prefix>}
+ *
+ * If a test classes dir is specified, all TestJPF subclasses in it that have a
+ * name ending with "Test" are executed, optionally filtered by package prefixes.
+ * The runner uses the classpath and assertion settings of its own host VM
+ */
+public class ParallelTestRunner {
+
+  public static final int PASSED = 0;
+  public static final int FAILED = 1;
+  public static final int ERROR = 2;
+
+  public static class Job {
+    public final String clsName;
+    public final String mthName;
+
+    int status = -1;
+    byte[] output;
+
+    public Job (String clsName, String mthName){
+      this.clsName = clsName;
+      this.mthName = mthName;
+    }
+
+    public boolean isDone(){
+      return status >= 0;
+    }
+
+    public int getStatus(){
+      return status;
+    }
+
+    public String getOutput(){
+      return (output != null) ? new String(output) : null;
+    }
+  }
+
+  protected int nWorkers;
+  protected List<String> vmArgs;
+
+  public ParallelTestRunner (int nWorkers){
+    this.nWorkers = nWorkers;
+    vmArgs = getHostVMArgs();
+  }
+
+  /**
+   * the relevant settings of our own host VM, which we pass on to the workers
+   */
+  static List<String> getHostVMArgs (){
+    List<String> list = new ArrayList<String>();
+    boolean hasAssertions = false;
+
+    for (String a : ManagementFactory.getRuntimeMXBean().getInputArguments()){
+      if (a.startsWith("-X") || a.startsWith("-D")){
+        list.add(a);
+      } else if (a.startsWith("-ea") || a.startsWith("-enableassertions")){
+        list.add(a);
+        hasAssertions = true;
+      }
+    }
+
+    // TestJPF tests use Java assertions
+    if (!hasAssertions){
+      list.add("-ea");
+    }
+
+    return list;
+  }
+
+  //--- job creation
+
+  public static List<Job> getJobs (Class<? extends TestJPF> testCls){
+    List<Job> jobs = new ArrayList<Job>();
+    List<String> mthNames = new ArrayList<String>();
+
+    for (Method m : TestJPF.getTestMethods(testCls, null)){
+      mthNames.add(m.getName());
+    }
+    // getDeclaredMethods() has no defined order, but we want deterministic output
+    Collections.sort(mthNames);
+
+    for (String mthName : mthNames){
+      jobs.add(new Job(testCls.getName(), mthName));
+    }
+    return jobs;
+  }
+
+  /**
+   * collect all concrete TestJPF subclasses with a "..Test" name in a
+   * test class dir, matching one of the optional package prefixes
+   */
+  public static List<String> findTestClasses (File dir, List<String> prefixes){
+    List<String> list = new ArrayList<String>();
+    collectTestClasses(dir, "", prefixes, list);
+    Collections.sort(list);
+    return list;
+  }
+
+  static void collectTestClasses (File dir, String pkg, List<String> prefixes, List<String> list){
+    File[] files = dir.listFiles();
+    if (files != null){
+      for (File f : files){
+        String fname = f.getName();
+
+        if (f.isDirectory()){
+          collectTestClasses(f, pkg + fname + '.', prefixes, list);
+
+        } else if (fname.endsWith("Test.class") && fname.indexOf('$') < 0 && !fname.startsWith("JPF_")){
+          String clsName = pkg + fname.substring(0, fname.length() - 6);
+          if (prefixes.isEmpty()){
+            list.add(clsName);
+          } else {
+            for (String p : prefixes){
+              if (clsName.startsWith(p)){
+                list.add(clsName);
+                break;
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  static boolean isTestClass (Class<?> cls){
+    return TestJPF.class.isAssignableFrom(cls) && !Modifier.isAbstract(cls.getModifiers());
+  }
+
+  //--- execution
+
+  /**
+   * run all jobs and print their output and results to 'out', in order.
+   * Returns true if all tests passed
+   */
+  public boolean run (final List<Job> jobs, PrintStream out){
+    final AtomicInteger next = new AtomicInteger();
+    int n = Math.min(nWorkers, jobs.size());
+    Thread[] threads = new Thread[n];
+
+    for (int i=0; i<n; i++){
+      threads[i] = new Thread( new Runnable(){
+        public void run(){
+          WorkerProcess wp = null;
+          try {
+            for (int i = next.getAndIncrement(); i < jobs.size(); i = next.getAndIncrement()){
+              Job job = jobs.get(i);
+              int status;
+              byte[] output;
+
+              try {
+                if (wp == null){
+                  wp = new WorkerProcess();
+                }
+                wp.execute(job);
+                status = wp.status;
+                output = wp.output;
+
+              } catch (IOException iox){
+                status = ERROR;
+                output = ("test worker terminated: " + iox.getMessage() + '\n').getBytes();
+                if (wp != null){
+                  wp.destroy();
+                  wp = null;
+                }
+              }
+
+              synchronized (jobs){
+                job.output = output;
+                job.status = status;
+                jobs.notifyAll();
+              }
+            }
+          } finally {
+            if (wp != null){
+              wp.destroy();
+            }
+          }
+        }
+      }, "test-worker-" + i);
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+
+    int nTests = 0, nFailures = 0, nErrors = 0;
+
+    for (Job job : jobs){
+      synchronized (jobs){
+        while (!job.isDone()){
+          try {
+            jobs.wait();
+          } catch (InterruptedException ix){
+            Thread.currentThread().interrupt();
+            return false;
+          }
+        }
+      }
+
+      nTests++;
+      String result;
+      if (job.status == PASSED){
+        result = "Ok";
+      } else if (job.status == FAILED){
+        result = "Failed";
+        nFailures++;
+      } else {
+        result = "Error";
+        nErrors++;
+      }
+
+      out.print("......................................... ");
+      out.print(job.clsName);
+      out.print('.');
+      out.print(job.mthName);
+      out.println("()");
+      out.write(job.output, 0, job.output.length);
+      out.print("......................................... ");
+      out.println(job.mthName + ": " + result);
+      out.flush();
+    }
+
+    out.println();
+    out.print(".........................................");
+    out.println(" tests: " + nTests + ", failures: " + nFailures + ", errors: " + nErrors);
+
+    return (nFailures == 0) && (nErrors == 0);
+  }
+
+  /**
+   * the coordinator side of a worker VM
+   */
+  class WorkerProcess {
+    Process proc;
+    DataOutputStream req;
+    DataInputStream rsp;
+
+    // results of the last job
+    int status;
+    byte[] output;
+
+    WorkerProcess () throws IOException {
+      List<String> cmd = new ArrayList<String>();
+      cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+      cmd.addAll(vmArgs);
+      cmd.add("-cp");
+      cmd.add(System.getProperty("java.class.path"));
+      cmd.add(Worker.class.getName());
+
+      proc = new ProcessBuilder(cmd).start();
+      req = new DataOutputStream( new BufferedOutputStream( proc.getOutputStream()));
+      rsp = new DataInputStream( new BufferedInputStream( proc.getInputStream()));
+
+      // whatever the worker prints outside of jobs goes to our stderr
+      final InputStream err = proc.getErrorStream();
+      Thread t = new Thread(new Runnable(){
+        public void run(){
+          byte[] buf = new byte[1024];
+          try {
+            for (int n = err.read(buf); n >= 0; n = err.read(buf)){
+              System.err.write(buf, 0, n);
+            }
+          } catch (IOException iox){
+            // worker is gone
+          }
+        }
+      });
+      t.setDaemon(true);
+      t.start();
+    }
+
+    void execute (Job job) throws IOException {
+      req.writeUTF(job.clsName);
+      req.writeUTF(job.mthName);
+      req.flush();
+
+      try {
+        status = rsp.readInt();
+        output = new byte[rsp.readInt()];
+        rsp.readFully(output);
+      } catch (EOFException x){
+        throw new IOException("worker exited while running " + job.clsName + '.' + job.mthName);
+      }
+    }
+
+    void destroy (){
+      try {
+        req.close(); // lets the worker terminate gracefully
+      } catch (IOException iox){
+        // ignore
+      }
+      proc.destroy();
+    }
+  }
+
+  /**
+   * the worker VM main, which reads jobs from stdin and writes results to
+   * stdout. Everything the test prints is captured
+   */
+  public static class Worker {
+    public static void main (String[] args) throws IOException {
+      DataInputStream req = new DataInputStream( new BufferedInputStream( System.in));
+      DataOutputStream rsp = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(FileDescriptor.out)));
+
+      TestJPF.hideSummary = true;
+
+      while (true){
+        String clsName;
+        try {
+          clsName = req.readUTF();
+        } catch (EOFException x){
+          break; // no more jobs
+        }
+        String mthName = req.readUTF();
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(buf, true);
+        System.setOut(ps);
+        System.setErr(ps);
+        TestJPF.out = ps;
+
+        int status;
+        try {
+          Class<? extends TestJPF> testCls = Class.forName(clsName).asSubclass(TestJPF.class);
+          status = TestJPF.runTests(testCls, mthName) ? PASSED : FAILED;
+        } catch (Throwable t){
+          t.printStackTrace(ps);
+          status = ERROR;
+        }
+        ps.flush();
+
+        byte[] output = buf.toByteArray();
+        rsp.writeInt(status);
+        rsp.writeInt(output.length);
+        rsp.write(output);
+        rsp.flush();
+      }
+    }
+  }
+
+  public static void main (String[] args){
+    int nWorkers = Runtime.getRuntime().availableProcessors();
+    File dir = null;
+    List<String> specs = new ArrayList<String>();
+
+    for (int i=0; i<args.length; i++){
+      String a = args[i];
+      if ("-j".equals(a) && i+1 < args.length){
+        nWorkers = Integer.parseInt(args[++i]);
+      } else if ("-dir".equals(a) && i+1 < args.length){
+        dir = new File(args[++i]);
+      } else {
+        specs.add(a);
+      }
+    }
+
+    List<String> clsNames = (dir != null) ? findTestClasses(dir, specs) : specs;
+    List<Job> jobs = new ArrayList<Job>();
+
+    for (String clsName : clsNames){
+      try {
+        Class<?> cls = Class.forName(clsName);
+        if (isTestClass(cls)){
+          jobs.addAll( getJobs(cls.asSubclass(TestJPF.class)));
+        }
+      } catch (Throwable t){
+        System.err.println("cannot load test class: " + clsName + " : " + t);
+      }
+    }
+
+    ParallelTestRunner runner = new ParallelTestRunner(nWorkers);
+    if (!runner.run(jobs, System.out)){
+      System.exit(1);
+    }
+  }
+}
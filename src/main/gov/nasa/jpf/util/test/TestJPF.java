@@ -451,8 +451,10 @@ public abstract class TestJPF implements JPFShell  {
   /**
    * this is the main test loop if this TestJPF instance is executed directly
    * or called from RunTest. It is *not* called if this is executed from JUnit
+   *
+   * @return true if there were no test failures or errors
    */
-  protected static void runTests (Class<? extends TestJPF> testCls, String... args){
+  protected static boolean runTests (Class<? extends TestJPF> testCls, String... args){
     int nTests = 0;
     int nFailures = 0;
     int nErrors = 0;
@@ -565,7 +567,10 @@ public abstract class TestJPF implements JPFShell  {
         // we need to reportTestFinished this test has failed
         throw new RunTest.Failed();
       }
+      return false;
     }
+
+    return true;
   }
 
   static void runTestOfClass(String args[]) throws Throwable {
@@ -292,7 +292,7 @@ public class JPF_java_lang_System {
   }
 
   public static void gc____V (MJIEnv env, int clsObjRef) {
-    env.getSystemState().activateGC();
+    env.getSystemState().requestGC();
   }
 
   public static int identityHashCode__Ljava_lang_Object_2__I (MJIEnv env, int clsObjRef, int objref) {
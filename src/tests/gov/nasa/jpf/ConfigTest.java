@@ -2,7 +2,10 @@ package gov.nasa.jpf;
 
 import gov.nasa.jpf.util.test.TestJPF;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.util.regex.Matcher;
 
 import org.junit.Test;
@@ -148,4 +151,125 @@ public class ConfigTest extends TestJPF {
     assertTrue(a[0] == -42 && a[1] == 0xff && a[2] == 0);
     
   }
+
+  File createAppProperties (File dir, String value) throws Exception {
+    File f = new File(dir, "configSnapshotApp.jpf");
+    FileWriter w = new FileWriter(f);
+    w.write("target = urgh.org.MySystemUnderTest\n");
+    w.write("mySUT.location = ${config_path}\n");
+    w.write("mySUT.value = " + value + "\n");
+    w.close();
+    return f;
+  }
+
+  @Test
+  public void testConfigSnapshot () throws Exception {
+    File dir = File.createTempFile("config", "");
+    dir.delete();
+    dir.mkdirs();
+    File app = createAppProperties(dir, "one");
+
+    String siteArg = "+site=src/tests/gov/nasa/jpf/configTestSite.properties";
+    String[] args = { "+jpf.config_cache=" + dir.getPath(), siteArg, app.getPath(), "+foo=bar" };
+
+    Config conf = new Config(args);
+    Config ref = new Config( new String[] { siteArg, app.getPath(), "+foo=bar" });
+    assert conf.equals(ref);
+    assert "one".equals(conf.getString("mySUT.value"));
+
+    File snap = new ConfigSnapshot(dir, conf.getString("jpf.site"), conf.getString("jpf.app")).getFile();
+    assert snap.isFile();
+
+    // this one should be restored from the snapshot
+    conf = new Config(args);
+    assert conf.equals(ref);
+    assert conf.getSources().equals(ref.getSources());
+    assert "bar".equals(conf.getString("foo"));
+
+    // change the app properties, which has to invalidate the snapshot
+    app.setLastModified(app.lastModified() - 10000);
+    createAppProperties(dir, "two");
+    app.setLastModified(app.lastModified() + 20000);
+    conf = new Config(args);
+    assert "two".equals(conf.getString("mySUT.value"));
+
+    app.delete();
+    snap.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testPlantedConfigSnapshot () throws Exception {
+    File dir = File.createTempFile("config", "");
+    dir.delete();
+    dir.mkdirs();
+    File app = createAppProperties(dir, "one");
+
+    String siteArg = "+site=src/tests/gov/nasa/jpf/configTestSite.properties";
+    String[] args = { "+jpf.config_cache=" + dir.getPath(), siteArg, app.getPath() };
+
+    // a snapshot that doesn't record any sources is never up-to-date
+    Config conf = new Config( new String[] { siteArg, app.getPath() });
+    File snap = new ConfigSnapshot(dir, conf.getString("jpf.site"), conf.getString("jpf.app")).getFile();
+    DataOutputStream out = new DataOutputStream( new FileOutputStream(snap));
+    out.writeInt(ConfigSnapshot.MAGIC);
+    out.writeInt(ConfigSnapshot.VERSION);
+    out.writeInt(0); // sources
+    out.writeInt(0); // dirs
+    out.writeInt(0); // sequence
+    out.writeInt(1);
+    out.writeUTF("mySUT.value");
+    out.writeUTF("planted");
+    out.close();
+
+    conf = new Config(args);
+    assert "one".equals(conf.getString("mySUT.value"));
+
+    // a valid snapshot in a dir that is writable by others is not used
+    snap.delete();
+    new Config(args); // creates the snapshot
+    assert snap.isFile();
+
+    if (dir.setWritable(true, false)){ // not supported on all file systems
+      assert !new ConfigSnapshot(dir, conf.getString("jpf.site"), conf.getString("jpf.app")).restore(conf);
+    }
+
+    app.delete();
+    snap.delete();
+    dir.delete();
+  }
+
+  public static class NoArgs {
+  }
+
+  public static class ConfigArg {
+    Config config;
+    public ConfigArg (Config config){
+      this.config = config;
+    }
+  }
+
+  @Test
+  public void testCachedCtors () {
+    Config conf = new Config( new String[] { "+a.class=gov.nasa.jpf.ConfigTest$ConfigArg",
+                                             "+b.class=gov.nasa.jpf.ConfigTest$NoArgs" });
+
+    Class<?>[] argTypes = { Config.class, JPF.class };
+    Object[] args = { conf, null };
+
+    for (int i=0; i<2; i++){
+      ConfigArg a = conf.getInstance("a.class", ConfigArg.class, argTypes, args);
+      assert a != null && a.config == conf;
+
+      NoArgs b = conf.getInstance("b.class", NoArgs.class, argTypes, args);
+      assert b != null;
+    }
+
+    assert Config.ctorCache.get(ConfigArg.class).get() != null;
+
+    // different Config, same cached ctor
+    Config conf2 = new Config( new String[] { "+a.class=gov.nasa.jpf.ConfigTest$ConfigArg" });
+    ConfigArg a = conf2.getInstance("a.class", ConfigArg.class, argTypes, new Object[] { conf2, null });
+    assert a.config == conf2;
+  }
 }
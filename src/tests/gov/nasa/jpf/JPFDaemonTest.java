@@ -0,0 +1,210 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+
+package gov.nasa.jpf;
+
+import gov.nasa.jpf.tool.RunDaemonClient;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.junit.Test;
+
+/**
+ * unit test for the JPFDaemon job protocol
+ */
+public class JPFDaemonTest extends TestJPF {
+
+  // we don't want to run JPF here, just echo the job args
+  static class EchoDaemon extends JPFDaemon {
+    EchoDaemon (Config conf){
+      super(conf);
+    }
+
+    protected int runJob (String[] args, PrintStream ps){
+      for (String a : args){
+        ps.println(a);
+      }
+      return args.length > 1 ? ERRORS : NO_ERRORS;
+    }
+  }
+
+  @Test
+  public void testJobs () throws Exception {
+    Config conf = new Config(new String[] { "+jpf.daemon.port=0" });
+    final EchoDaemon daemon = new EchoDaemon(conf);
+    daemon.open();
+    int port = daemon.getPort();
+    assert port > 0;
+
+    Thread t = new Thread(new Runnable(){
+      public void run(){
+        daemon.start(new String[0]);
+      }
+    });
+    t.start();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int status = RunDaemonClient.runJob(port, new String[] {"+foo=bar", "x.y.Z"}, out);
+    assert status == JPFDaemon.ERRORS;
+    assert out.toString().equals("+foo=bar\nx.y.Z\n".replace("\n", System.getProperty("line.separator")));
+
+    out.reset();
+    status = RunDaemonClient.runJob(port, new String[] {"x.y.Z"}, out);
+    assert status == JPFDaemon.NO_ERRORS;
+
+    RunDaemonClient.shutdown(port);
+    t.join(5000);
+    assert !t.isAlive();
+    assert daemon.getNumberOfJobs() == 2;
+  }
+
+  @Test
+  public void testInvalidToken () throws Exception {
+    Config conf = new Config(new String[] { "+jpf.daemon.port=0" });
+    final EchoDaemon daemon = new EchoDaemon(conf);
+    daemon.open();
+    int port = daemon.getPort();
+    assert JPFDaemon.getTokenFile(port).isFile();
+
+    Thread t = new Thread(new Runnable(){
+      public void run(){
+        daemon.start(new String[0]);
+      }
+    });
+    t.start();
+
+    // a request without the right token is dropped without response
+    Socket socket = new Socket(InetAddress.getByName(null), port);
+    try {
+      DataOutputStream req = new DataOutputStream(socket.getOutputStream());
+      req.writeUTF("not-the-token");
+      req.writeInt(JPFDaemon.SHUTDOWN);
+      req.flush();
+
+      DataInputStream rsp = new DataInputStream(socket.getInputStream());
+      try {
+        rsp.readByte();
+        assert false : "daemon answered request with invalid token";
+      } catch (EOFException x){
+        // expected
+      }
+    } finally {
+      socket.close();
+    }
+
+    assert t.isAlive();
+    assert daemon.getNumberOfJobs() == 0;
+
+    RunDaemonClient.shutdown(port);
+    t.join(5000);
+    assert !t.isAlive();
+    assert !JPFDaemon.getTokenFile(port).exists();
+  }
+
+  @Test
+  public void testInvalidNumberOfArgs () throws Exception {
+    Config conf = new Config(new String[] { "+jpf.daemon.port=0" });
+    final EchoDaemon daemon = new EchoDaemon(conf);
+    daemon.open();
+    int port = daemon.getPort();
+
+    Thread t = new Thread(new Runnable(){
+      public void run(){
+        daemon.start(new String[0]);
+      }
+    });
+    t.start();
+
+    int[] invalid = { -5, JPFDaemon.MAX_ARGS + 1, Integer.MAX_VALUE };
+    for (int nArgs : invalid){
+      Socket socket = new Socket(InetAddress.getByName(null), port);
+      try {
+        DataOutputStream req = new DataOutputStream(socket.getOutputStream());
+        req.writeUTF(daemon.token);
+        req.writeInt(nArgs);
+        req.flush();
+
+        // we get an error message and a FAILED status
+        DataInputStream rsp = new DataInputStream(socket.getInputStream());
+        int type;
+        while ((type = rsp.readByte()) == JPFDaemon.OUTPUT){
+          rsp.skipBytes(rsp.readInt());
+        }
+        assertEquals(JPFDaemon.EXIT, type);
+        assertEquals(JPFDaemon.FAILED, rsp.readInt());
+
+      } finally {
+        socket.close();
+      }
+    }
+
+    assertTrue(t.isAlive());
+    assertEquals(0, daemon.getNumberOfJobs());
+
+    RunDaemonClient.shutdown(port);
+    t.join(5000);
+    assertFalse(t.isAlive());
+  }
+
+  @Test
+  public void testAbsolutePathArgs (){
+    String cwd = new File("").getAbsolutePath();
+    String abs = new File("/x/y").getAbsolutePath();
+
+    String[] args = { "", "+classpath=build/a,lib/b.jar;" + abs,
+                      "+jpf-core.sourcepath+=src", "+native_classpath=${jpf-core}/build",
+                      "+foo=bar", "+site=site.properties", "x.y.Z", "some.arg.jpf" };
+    String[] a = RunDaemonClient.getAbsolutePathArgs(args.clone());
+
+    assertEquals("", a[0]);
+    assertEquals("+classpath=" + new File(cwd, "build/a").getPath() + ',' +
+                 new File(cwd, "lib/b.jar").getPath() + ';' + abs, a[1]);
+    assertEquals("+jpf-core.sourcepath+=" + new File(cwd, "src").getPath(), a[2]);
+    assertEquals(args[3], a[3]);
+    assertEquals(args[4], a[4]);
+    assertEquals("+site=" + new File(cwd, "site.properties").getPath(), a[5]);
+    assertEquals(args[6], a[6]);
+    assertEquals(args[7], a[7]); // does not exist
+  }
+
+  @Test
+  public void testFailingJob () throws Exception {
+    // a real job with an unknown target fails, but doesn't kill the daemon
+    Config conf = new Config(new String[] { "+jpf.daemon.port=0" });
+    JPFDaemon daemon = new JPFDaemon(conf);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PrintStream ps = new PrintStream(out, true);
+    PrintStream sysOut = System.out;
+
+    int status = daemon.runJob(new String[] {"+vm.class=NoSuchVM", "x.y.Z"}, ps);
+    assert status == JPFDaemon.FAILED;
+    assert System.out == sysOut;
+    assert out.size() > 0;
+  }
+}
@@ -0,0 +1,148 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf;
+
+import gov.nasa.jpf.jvm.JVM;
+import gov.nasa.jpf.jvm.NoUncaughtExceptionsProperty;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * unit test for ResultCache entry storage and replay (we can't check the
+ * classfile validation without running JPF)
+ */
+public class ResultCacheTest extends TestJPF {
+
+  public static class SomeProperty extends GenericProperty {
+    public boolean check (Search search, JVM vm){
+      return true;
+    }
+    public String getExplanation(){
+      return "some explanation";
+    }
+  }
+
+  // we only need the errors
+  static class MockJPF extends JPF {
+    List<Error> errors = new ArrayList<Error>();
+
+    public List<Error> getSearchErrors(){
+      return errors;
+    }
+  }
+
+  File createDir () throws Exception {
+    File dir = File.createTempFile("results", "");
+    dir.delete();
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  @Test
+  public void testKey () throws Exception {
+    String dir = "+jpf.result_cache.dir=" + createDir().getPath();
+    ResultCache rc1 = new ResultCache(new Config(new String[] { dir, "x.y.Z" }));
+    ResultCache rc2 = new ResultCache(new Config(new String[] { dir, "x.y.Z" }));
+    ResultCache rc3 = new ResultCache(new Config(new String[] { dir, "+search.multiple_errors=true", "x.y.Z" }));
+    ResultCache rc4 = new ResultCache(new Config(new String[] { dir, "x.y.Z", "arg" }));
+
+    assert rc1.getFile().equals(rc2.getFile());
+    assert !rc1.getFile().equals(rc3.getFile());
+    assert !rc1.getFile().equals(rc4.getFile());
+  }
+
+  @Test
+  public void testStoreAndReplay () throws Exception {
+    File dir = createDir();
+    String[] args = { "+jpf.result_cache.dir=" + dir.getPath(), "x.y.Z" };
+
+    ResultCache rc = new ResultCache(new Config(args));
+    MockJPF jpf = new MockJPF();
+    jpf.errors.add( new Error(1, new SomeProperty(), "some details"));
+
+    PrintStream sysOut = System.out;
+    assert !rc.replay(jpf);
+
+    rc.startRecording();
+    System.out.println("@@ recorded output");
+    rc.stopRecording(jpf, true);
+    assert System.out == sysOut;
+    assert rc.getFile().isFile();
+
+    //--- now replay it
+    rc = new ResultCache(new Config(args));
+    MockJPF jpf2 = new MockJPF();
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    boolean isReplayed;
+    try {
+      System.setOut(new PrintStream(buf, true));
+      isReplayed = rc.replay(jpf2);
+    } finally {
+      System.setOut(sysOut);
+    }
+
+    assert isReplayed;
+    assert buf.toString().contains("@@ recorded output");
+    assert jpf2.errors.size() == 1;
+
+    Error e = jpf2.errors.get(0);
+    assert e.getProperty() instanceof SomeProperty;
+    assert e.getDetails().equals("some details");
+    assert e.getDescription().contains("some explanation");
+
+    // entries in dirs that others can write to are not used
+    if (dir.setWritable(true, false)){ // not supported on all file systems
+      assert !new ResultCache(new Config(args)).replay(new MockJPF());
+    }
+
+    rc.getFile().delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testUncaughtExceptionNotStored () throws Exception {
+    File dir = createDir();
+    Config config = new Config(new String[] { "+jpf.result_cache.dir=" + dir.getPath(), "x.y.Z" });
+    ResultCache rc = new ResultCache(config);
+    MockJPF jpf = new MockJPF();
+    jpf.errors.add( new Error(1, new NoUncaughtExceptionsProperty(config), "java.lang.AssertionError"));
+
+    rc.startRecording();
+    rc.stopRecording(jpf, true);
+    assert !rc.getFile().exists();
+  }
+
+  @Test
+  public void testIncompleteRun () throws Exception {
+    File dir = createDir();
+    ResultCache rc = new ResultCache(new Config(new String[] { "+jpf.result_cache.dir=" + dir.getPath(), "x.y.Z" }));
+
+    rc.startRecording();
+    rc.stopRecording(new MockJPF(), false);
+    assert !rc.getFile().exists();
+  }
+}
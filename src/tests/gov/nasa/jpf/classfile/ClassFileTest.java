@@ -0,0 +1,89 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+
+package gov.nasa.jpf.classfile;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * unit test for lazy constpool decoding of ClassFile
+ */
+public class ClassFileTest extends TestJPF {
+
+  static final String CLSNAME = "gov.nasa.jpf.classfile.ClassFileTest";
+
+  static class MethodCounter extends ClassFileReaderAdapter {
+    String clsName;
+    int nMethods;
+    int nFields;
+
+    public void setClass(ClassFile cf, String clsName, String superClsName, int flags, int cpCount) {
+      this.clsName = clsName;
+    }
+    public void setField(ClassFile cf, int fieldIndex, int accessFlags, String name, String descriptor) {
+      nFields++;
+    }
+    public void setMethod(ClassFile cf, int methodIndex, int accessFlags, String name, String descriptor) {
+      nMethods++;
+    }
+  }
+
+  @Test
+  public void testLazyConstantPool () throws Exception {
+    byte[] data = ConstantPoolCacheTest.getClassData(ClassFileTest.class);
+
+    ClassFile cfRef = new ClassFile(CLSNAME, data);
+    MethodCounter rRef = new MethodCounter();
+    cfRef.parse(rRef);
+
+    try {
+      ClassFile.setLazyConstantPool(true);
+
+      ClassFile cf = new ClassFile(CLSNAME, data);
+      MethodCounter r = new MethodCounter();
+      cf.parse(r);
+
+      assert rRef.clsName.equals(r.clsName);
+      assert rRef.nMethods == r.nMethods;
+      assert rRef.nFields == r.nFields;
+
+      // our string constant is not decoded before we ask for it
+      int n = cf.getNumberOfCpEntries();
+      int iConst = -1;
+      for (int i=1; i<n; i++){
+        if (cf.cpPos[i] > 0 && cf.getCpTag(i) == ClassFile.CONSTANT_STRING
+            && CLSNAME.equals(cfRef.getCpValue(i))){
+          iConst = i;
+        }
+      }
+      assert iConst > 0;
+      assert cf.cpValue[iConst] == null;
+      assert CLSNAME.equals(cf.stringAt(iConst));
+      assert cf.cpValue[iConst] != null;
+
+      ConstantPoolCacheTest.assertSameConstPool(cfRef, cf);
+
+    } finally {
+      ClassFile.setLazyConstantPool(false);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+
+package gov.nasa.jpf.classfile;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+/**
+ * unit test for ConstantPoolCache
+ */
+public class ConstantPoolCacheTest extends TestJPF {
+
+  public static byte[] getClassData (Class<?> cls) throws Exception {
+    String rn = cls.getName().replace('.', '/') + ".class";
+    InputStream is = cls.getClassLoader().getResourceAsStream(rn);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int n;
+    while ((n = is.read(buf)) > 0){
+      os.write(buf, 0, n);
+    }
+    is.close();
+    return os.toByteArray();
+  }
+
+  static class ClassNameReader extends ClassFileReaderAdapter {
+    String clsName;
+    int nMethods;
+
+    public void setClass(ClassFile cf, String clsName, String superClsName, int flags, int cpCount) {
+      this.clsName = clsName;
+    }
+    public void setMethod(ClassFile cf, int methodIndex, int accessFlags, String name, String descriptor) {
+      nMethods++;
+    }
+  }
+
+  static void assertSameConstPool (ClassFile cf1, ClassFile cf2){
+    int n = cf1.getNumberOfCpEntries();
+    assert n == cf2.getNumberOfCpEntries();
+
+    for (int i=1; i<n; i++){
+      Object v1 = cf1.getCpValue(i);
+      Object v2 = cf2.getCpValue(i);
+      assert (v1 == null) ? (v2 == null) : v1.equals(v2) : "different cp value at " + i;
+      if (v1 != null){
+        assert cf1.getCpTag(i) == cf2.getCpTag(i) : "different cp tag at " + i;
+      }
+    }
+  }
+
+  @Test
+  public void testCachedParse () throws Exception {
+    byte[] data = getClassData(ConstantPoolCacheTest.class);
+    ConstantPoolCache cache = new ConstantPoolCache(16);
+
+    ClassFile cfRef = new ClassFile("gov.nasa.jpf.classfile.ConstantPoolCacheTest", data);
+    ClassNameReader rRef = new ClassNameReader();
+    cfRef.parse(rRef);
+
+    try {
+      ClassFile.setConstantPoolCache(cache);
+
+      ClassFile cf1 = new ClassFile("gov.nasa.jpf.classfile.ConstantPoolCacheTest", data);
+      ClassNameReader r1 = new ClassNameReader();
+      cf1.parse(r1);
+      assert cache.getNumberOfMisses() == 1;
+      assert cache.getNumberOfHits() == 0;
+
+      ClassFile cf2 = new ClassFile("gov.nasa.jpf.classfile.ConstantPoolCacheTest", data.clone());
+      ClassNameReader r2 = new ClassNameReader();
+      cf2.parse(r2);
+      assert cache.getNumberOfHits() == 1;
+
+      assert rRef.clsName.equals(r2.clsName);
+      assert rRef.nMethods == r2.nMethods;
+      assertSameConstPool(cfRef, cf1);
+      assertSameConstPool(cfRef, cf2);
+
+      // a classfile embedded at some offset should also hit
+      byte[] buf = new byte[data.length + 42];
+      System.arraycopy(data, 0, buf, 42, data.length);
+      ClassFile cf3 = new ClassFile("gov.nasa.jpf.classfile.ConstantPoolCacheTest", buf, 42);
+      ClassNameReader r3 = new ClassNameReader();
+      cf3.parse(r3);
+      assert cache.getNumberOfHits() == 2;
+      assert rRef.clsName.equals(r3.clsName);
+      assertSameConstPool(cfRef, cf3);
+
+      // but a different class shouldn't
+      ClassFile cf4 = new ClassFile("gov.nasa.jpf.classfile.ConstantPoolCacheTest$ClassNameReader",
+                                    getClassData(ClassNameReader.class));
+      cf4.parse(new ClassNameReader());
+      assert cache.getNumberOfHits() == 2;
+      assert cache.getNumberOfMisses() == 2;
+
+    } finally {
+      ClassFile.setConstantPoolCache(null);
+    }
+  }
+}
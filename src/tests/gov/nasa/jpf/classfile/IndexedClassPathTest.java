@@ -0,0 +1,219 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+
+package gov.nasa.jpf.classfile;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+
+/**
+ * unit test for IndexedClassPath
+ */
+public class IndexedClassPathTest extends TestJPF {
+
+  static byte[] makeData (String clsName, int len){
+    byte[] data = new byte[len];
+    for (int i=0; i<len; i++){
+      data[i] = (byte)(clsName.charAt(i % clsName.length()) + i/7);
+    }
+    return data;
+  }
+
+  static void addEntry (JarOutputStream jos, String name, byte[] data, boolean isStored) throws Exception {
+    ZipEntry e = new ZipEntry(name);
+    if (isStored){
+      CRC32 crc = new CRC32();
+      crc.update(data);
+      e.setMethod(ZipEntry.STORED);
+      e.setSize(data.length);
+      e.setCompressedSize(data.length);
+      e.setCrc(crc.getValue());
+    }
+    jos.putNextEntry(e);
+    jos.write(data);
+    jos.closeEntry();
+  }
+
+  static File makeJar (File dir, String jarName, String prefix, String... clsNames) throws Exception {
+    File jar = new File(dir, jarName);
+    JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar));
+    boolean isStored = false;
+    for (String cn : clsNames){
+      String en = prefix + cn.replace('.', '/') + ".class";
+      addEntry(jos, en, makeData(jarName + cn, 1000), isStored);
+      isStored = !isStored;
+    }
+    addEntry(jos, prefix + "x/readme.txt", makeData("readme", 100), false);
+    jos.close();
+    return jar;
+  }
+
+  static File makeDir (File dir, String dirName, String... clsNames) throws Exception {
+    File d = new File(dir, dirName);
+    for (String cn : clsNames){
+      File f = new File(d, cn.replace('.', File.separatorChar) + ".class");
+      f.getParentFile().mkdirs();
+      FileOutputStream fos = new FileOutputStream(f);
+      fos.write(makeData(dirName + cn, 500));
+      fos.close();
+    }
+    return d;
+  }
+
+  static File createTempDir () throws Exception {
+    File dir = File.createTempFile("jpfcp", "");
+    dir.delete();
+    dir.mkdirs();
+    return dir;
+  }
+
+  static void delete (File f){
+    File[] list = f.listFiles();
+    if (list != null){
+      for (File c : list){
+        delete(c);
+      }
+    }
+    f.delete();
+  }
+
+  static void assertSameMatch (ClassPath cp, ClassPath icp, String clsName) throws Exception {
+    ClassPath.Match m = cp.findMatch(clsName);
+    ClassPath.Match im = icp.findMatch(clsName);
+    if (m == null){
+      assert im == null : "indexed classpath found non-existing " + clsName;
+    } else {
+      assert im != null : "indexed classpath did not find " + clsName;
+      assert m.container.getName().equals(im.container.getName()) : "wrong container for " + clsName;
+      assert Arrays.equals(m.getBytes(), im.getBytes()) : "wrong data for " + clsName;
+    }
+  }
+
+  @Test
+  public void testLookup () throws Exception {
+    File tmp = createTempDir();
+    try {
+      String[] pn = {
+        makeDir(tmp, "d1", "a.A", "a.B").getPath(),
+        makeJar(tmp, "j1.jar", "", "a.B", "a.C", "b.D", "b.E").getPath(),
+        makeDir(tmp, "d2", "b.D", "b.F").getPath(),
+        makeJar(tmp, "j2.jar", "", "b.E", "b.F", "c.G").getPath(),
+        makeJar(tmp, "j3.jar", "classes/", "c.G", "c.H").getPath() + "/classes"
+      };
+
+      ClassPath cp = new ClassPath(pn);
+      IndexedClassPath icp = new IndexedClassPath(pn, null);
+
+      assert icp.getNumberOfIndexedClasses() == 7;
+
+      String[] clsNames = { "a.A", "a.B", "a.C", "b.D", "b.E", "b.F", "c.G", "c.H", "x.readme", "c.X" };
+      for (String cn : clsNames){
+        assertSameMatch(cp, icp, cn);
+      }
+
+    } finally {
+      delete(tmp);
+    }
+  }
+
+  @Test
+  public void testPersistentIndex () throws Exception {
+    File tmp = createTempDir();
+    try {
+      File idxDir = new File(tmp, "idx");
+      File jar = makeJar(tmp, "j1.jar", "", "a.A", "a.B");
+      String[] pn = { jar.getPath() };
+
+      IndexedClassPath icp = new IndexedClassPath(pn, idxDir);
+      File idxFile = icp.getIndexFile();
+      assert !idxFile.isFile();
+      assert icp.getNumberOfIndexedClasses() == 2;
+      assert idxFile.isFile();
+
+      // the same classpath should get the stored index
+      IndexedClassPath icp1 = new IndexedClassPath(pn, idxDir);
+      assert icp1.getIndexFile().equals(idxFile);
+      assert icp1.load(idxFile);
+      assertSameMatch(new ClassPath(pn), icp1, "a.B");
+
+      // but not after we changed the jar
+      jar.delete();
+      makeJar(tmp, "j1.jar", "", "a.A", "a.B", "a.C");
+      jar.setLastModified(jar.lastModified() + 2000);
+
+      IndexedClassPath icp2 = new IndexedClassPath(pn, idxDir);
+      assert !icp2.load(idxFile);
+      assert icp2.getNumberOfIndexedClasses() == 3;
+      assertSameMatch(new ClassPath(pn), icp2, "a.C");
+
+    } finally {
+      delete(tmp);
+    }
+  }
+
+  static class LoadRecorder extends IndexedClassPath {
+    boolean loaded;
+
+    LoadRecorder (String[] pathNames, File indexDir){
+      super(pathNames, indexDir);
+    }
+
+    protected boolean load (File file) throws java.io.IOException {
+      loaded = true;
+      return super.load(file);
+    }
+  }
+
+  @Test
+  public void testNonPrivateIndex () throws Exception {
+    File tmp = createTempDir();
+    try {
+      File idxDir = new File(tmp, "idx");
+      File jar = makeJar(tmp, "j1.jar", "", "a.A", "a.B");
+      String[] pn = { jar.getPath() };
+
+      IndexedClassPath icp = new IndexedClassPath(pn, idxDir);
+      assert icp.getNumberOfIndexedClasses() == 2;
+      assert icp.getIndexFile().isFile();
+
+      LoadRecorder icp1 = new LoadRecorder(pn, idxDir);
+      assert icp1.getNumberOfIndexedClasses() == 2;
+      assert icp1.loaded;
+
+      // an index in a dir that others can write to might be planted
+      if (idxDir.setWritable(true, false)){ // not supported on all file systems
+        LoadRecorder icp2 = new LoadRecorder(pn, idxDir);
+        assert icp2.getNumberOfIndexedClasses() == 2;
+        assert !icp2.loaded;
+      }
+
+    } finally {
+      delete(tmp);
+    }
+  }
+}
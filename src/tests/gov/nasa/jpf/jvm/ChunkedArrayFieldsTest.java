@@ -0,0 +1,131 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.util.IntVector;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * unit test for chunked ArrayFields
+ */
+public class ChunkedArrayFieldsTest extends TestJPF {
+
+  static final int SHIFT = 5; // 32 elements per chunk
+
+  @Test
+  public void testCopyOnWrite() {
+    ChunkedIntArrayFields f = new ChunkedIntArrayFields(1000, SHIFT, false);
+    ArrayChunks chunks = f.getChunks();
+
+    assert f.arrayLength() == 1000;
+    assert chunks.getNumberOfChunks() == 32;
+    assert chunks.getNumberOfModifiedChunks() == 1; // the partial last chunk
+
+    for (int i=0; i<1000; i++){
+      f.setIntValue(i, i);
+    }
+    assert chunks.getNumberOfModifiedChunks() == 32;
+
+    ChunkedIntArrayFields f1 = f.clone();
+    assert f1.getChunks().getNumberOfModifiedChunks() == 0;
+    assert chunks.getNumberOfModifiedChunks() == 0;
+    assert f1.equals(f);
+    assert f1.hashCode() == f.hashCode();
+
+    f1.setIntValue(500, -1);
+    assert f1.getChunks().getNumberOfModifiedChunks() == 1;
+    assert f1.getChunks().isModified(500 >> SHIFT);
+
+    assert f.getIntValue(500) == 500;
+    assert f1.getIntValue(500) == -1;
+    assert !f1.equals(f);
+    assert f1.hashCode() != f.hashCode();
+
+    f1.setIntValue(500, 500);
+    assert f1.equals(f);
+    assert f1.hashCode() == f.hashCode();
+  }
+
+  @Test
+  public void testSerialization() {
+    int len = 1000;
+    ChunkedByteArrayFields cf = new ChunkedByteArrayFields(len, SHIFT, false);
+    ByteArrayFields ff = new ByteArrayFields(len);
+
+    for (int i=0; i<len; i+=3){
+      cf.setByteValue(i, (byte)i);
+      ff.setByteValue(i, (byte)i);
+    }
+
+    IntVector vc = new IntVector();
+    IntVector vf = new IntVector();
+    cf.appendTo(vc);
+    ff.appendTo(vf);
+    assert vc.compareTo(vf) == 0;
+
+    ChunkedCharArrayFields cc = new ChunkedCharArrayFields(len, SHIFT, true);
+    cc.appendTo(vc = new IntVector());
+    assert vc.size() == cc.getChunks().getNumberOfChunks();
+  }
+
+  @Test
+  public void testArrayCopy() {
+    ChunkedCharArrayFields f = new ChunkedCharArrayFields(100, SHIFT, false);
+    f.setCharValues("0123456789".toCharArray());
+    assert f.asString(0, 10).equals("0123456789");
+    assert f.equals(0, 10, "0123456789");
+
+    // overlapping self copy across chunk boundaries
+    f.copyElementsFrom(f, 0, 28, 10);
+    assert f.asString(28, 10).equals("0123456789");
+    f.copyElementsFrom(f, 28, 30, 10);
+    assert f.asString(28, 12).equals("010123456789");
+
+    // chunked to flat
+    CharArrayFields ff = new CharArrayFields(12);
+    ff.copyElementsFrom(f, 28, 0, 12);
+    assert ff.asString(0, 12).equals("010123456789");
+
+    try {
+      f.copyElementsFrom(ff, 0, 95, 12);
+      assert false : "copyElementsFrom did not throw";
+    } catch (ArrayIndexOutOfBoundsException x){
+      System.out.println("caught " + x);
+    }
+
+    try {
+      f.copyElementsFrom(new IntArrayFields(10), 0, 0, 10);
+      assert false : "copyElementsFrom did not throw";
+    } catch (ArrayStoreException x){
+      System.out.println("caught " + x);
+    }
+  }
+
+  @Test
+  public void testFlatEquals() {
+    IntArrayFields ff = new IntArrayFields(64);
+    ChunkedIntArrayFields cf = new ChunkedIntArrayFields(64, SHIFT, false);
+
+    assert !ff.equals(cf);
+    assert !cf.equals(ff);
+  }
+}
@@ -0,0 +1,80 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+
+package gov.nasa.jpf.jvm;
+
+import gov.nasa.jpf.classfile.ClassPath;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * unit test for parallel startup class prefetching
+ */
+public class ClassPrefetcherTest extends TestJPF {
+
+  interface Marker {}
+  static class Base implements Marker {}
+  static class Derived extends Base implements Runnable {
+    public void run(){}
+  }
+
+  static ClassPath getTestClassPath (){
+    File dir = new File(ClassPrefetcherTest.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+    return new ClassPath( new String[] { dir.getPath() });
+  }
+
+  @Test
+  public void testTransitivePrefetch () throws Exception {
+    ClassPath cp = getTestClassPath();
+    ClassPrefetcher prefetcher = new ClassPrefetcher(cp, 3);
+
+    try {
+      String clsName = Derived.class.getName();
+      prefetcher.prefetch(clsName);
+
+      ClassPath.Match m = prefetcher.getMatch(clsName);
+      assert m != null;
+      assert Arrays.equals(m.getBytes(), cp.findMatch(clsName).getBytes());
+
+      // the super class and its interface got fetched too
+      ClassPath.Match mBase = prefetcher.getMatch(Base.class.getName());
+      assert mBase != null;
+      assert Arrays.equals(mBase.getBytes(), cp.findMatch(Base.class.getName()).getBytes());
+
+      ClassPath.Match mMarker = prefetcher.getMatch(Marker.class.getName());
+      assert mMarker != null;
+
+      // system classes are not in our classpath, which is not an error
+      assert prefetcher.getMatch("java.lang.Runnable") == null;
+
+      // and unknown ones are just not prefetched
+      assert prefetcher.getMatch("x.y.Z") == null;
+
+      assert prefetcher.getNumberOfFetchedClasses() == 5; // incl. Object and Runnable
+
+    } finally {
+      prefetcher.shutdown();
+    }
+  }
+}
@@ -21,6 +21,8 @@ package gov.nasa.jpf.jvm;
 
 import gov.nasa.jpf.classfile.ClassFile;
 import gov.nasa.jpf.classfile.ClassFileException;
+import gov.nasa.jpf.classfile.ConstantPoolCacheTest;
+import gov.nasa.jpf.jvm.bytecode.Instruction;
 import gov.nasa.jpf.util.test.TestJPF;
 
 import java.io.File;
@@ -113,4 +115,96 @@ public class MethodInfoTest extends TestJPF {
       fail("ClassFileException: " + cfx);
     }
   }
+
+  @Test
+  public void testLazyCode() throws Exception {
+    byte[] data = ConstantPoolCacheTest.getClassData(MyClass.class);
+    String clsName = MyClass.class.getName();
+
+    ClassInfo ciRef = new NonResolvedClassInfo(new ClassFile(clsName, data));
+
+    boolean isLazy = ClassInfo.isLazyCode;
+    try {
+      ClassInfo.isLazyCode = true;
+      ClassInfo ci = new NonResolvedClassInfo(new ClassFile(clsName, data));
+
+      MethodInfo miRef = ciRef.getMethod("instanceIntString", "(ILjava/lang/String;)D", false);
+      MethodInfo mi = ci.getMethod("instanceIntString", "(ILjava/lang/String;)D", false);
+
+      assertTrue(miRef.isLinked());
+      assertFalse(mi.isLinked());
+      assertTrue(mi.hasCode());
+      assertEquals(miRef.getMaxLocals(), mi.getMaxLocals());
+      assertEquals(miRef.getMaxStack(), mi.getMaxStack());
+      assertFalse(mi.isLinked());
+
+      // the first code access links
+      int n = mi.getNumberOfInstructions();
+      assertTrue(mi.isLinked());
+      assertTrue(n > 0);
+      assertEquals(miRef.getNumberOfInstructions(), n);
+      for (int i=0; i<n; i++){
+        Instruction insn = mi.getInstruction(i);
+        Instruction insnRef = miRef.getInstruction(i);
+        assertEquals(insnRef.getClass(), insn.getClass());
+        assertEquals(insnRef.getPosition(), insn.getPosition());
+        assertTrue(insn.getMethodInfo() == mi);
+        assertEquals(miRef.getLineNumber(insnRef), mi.getLineNumber(insn));
+      }
+
+      LocalVarInfo[] args = mi.getArgumentLocalVars();
+      LocalVarInfo[] argsRef = miRef.getArgumentLocalVars();
+      if (argsRef == null){ // not compiled with debug info
+        assertTrue(args == null);
+      } else {
+        assertTrue(args != null);
+        assertEquals(argsRef.length, args.length);
+        for (int i=0; i<args.length; i++){
+          assertEquals(argsRef[i].getName(), args[i].getName());
+        }
+      }
+
+      // other methods are still not linked
+      MethodInfo mi2 = ci.getMethod("staticInt", "(I)D", false);
+      assertFalse(mi2.isLinked());
+      mi2.linkCode();
+      assertTrue(mi2.isLinked());
+      assertEquals(ciRef.getMethod("staticInt", "(I)D", false).getNumberOfInstructions(), mi2.getNumberOfInstructions());
+
+    } finally {
+      ClassInfo.isLazyCode = isLazy;
+    }
+  }
+
+  @Test
+  public void testLazyCodeFailure() throws Exception {
+    byte[] data = ConstantPoolCacheTest.getClassData(MyClass.class);
+    String clsName = MyClass.class.getName();
+
+    boolean isLazy = ClassInfo.isLazyCode;
+    try {
+      ClassInfo.isLazyCode = true;
+      ClassFile cf = new ClassFile(clsName, data);
+      ClassInfo ci = new NonResolvedClassInfo(cf);
+      MethodInfo mi = ci.getMethod("staticInt", "(I)D", false);
+
+      // a Code attribute position that can't be parsed
+      mi.setUnlinkedCode(cf, data.length - 2);
+
+      // a failed parse does not leave us with a linked method without code,
+      // every access throws
+      for (int i=0; i<2; i++){
+        try {
+          mi.getNumberOfInstructions();
+          fail("linking corrupted code did not throw");
+        } catch (RuntimeException x){
+          System.out.println("-- got expected: " + x);
+        }
+        assertFalse(mi.isLinked());
+      }
+
+    } finally {
+      ClassInfo.isLazyCode = isLazy;
+    }
+  }
 }
@@ -0,0 +1,173 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * unit test and benchmark for BucketPriorityQueue
+ */
+public class BucketPriorityQueueTest extends TestJPF {
+
+  public static void main (String[] args){
+
+    // our performance evals
+    if (args.length == 1){
+      String mthName = args[0];
+      if (mthName.equals("evalStaticPriorityQueue")){
+        evalStaticPriorityQueue();
+        return;
+      } else if (mthName.equals("evalBucketPriorityQueue")){
+        evalBucketPriorityQueue();
+        return;
+      }
+    }
+
+    // the regression tests
+    runTestsOfThisClass(args);
+  }
+
+  //--- regression tests
+
+  @Test
+  public void testOrder() {
+    BucketPriorityQueue q = new BucketPriorityQueue(-1);
+    int[] values = { 3, 1, 2, 1, 3, 0 };
+    for (int i=0; i<values.length; i++){
+      assert q.add(new PrioritizedState(i, values[i]));
+    }
+
+    assert q.size() == 6;
+    assert q.getNumberOfBuckets() == 4;
+
+    // by priority, then insertion order
+    int[] expected = { 5, 1, 3, 2, 0, 4 };
+    for (int id : expected){
+      PrioritizedState s = q.pollFirst();
+      assert s.getStateId() == id;
+    }
+
+    assert q.size() == 0;
+    assert q.pollFirst() == null;
+    assert q.getNumberOfBuckets() == 0;
+  }
+
+  @Test
+  public void testLimit() {
+    BucketPriorityQueue q = new BucketPriorityQueue(4);
+
+    assert q.add(new PrioritizedState(0, 5));
+    assert q.add(new PrioritizedState(1, 5));
+    assert q.add(new PrioritizedState(2, 3));
+    assert q.add(new PrioritizedState(3, 4));
+    assert q.isQueueLimitReached();
+
+    // not better than the worst one
+    assert !q.add(new PrioritizedState(4, 5));
+    assert !q.add(new PrioritizedState(5, 6));
+    assert q.size() == 4;
+
+    // this drops one of the '5's
+    assert q.add(new PrioritizedState(6, 1));
+    assert q.size() == 4;
+
+    // this drops the whole '5' bucket
+    assert q.add(new PrioritizedState(7, 2));
+    assert q.size() == 4;
+    assert q.getNumberOfBuckets() == 4;
+
+    int[] expected = { 6, 7, 2, 3 };
+    for (int id : expected){
+      assert q.pollFirst().getStateId() == id;
+    }
+    assert q.pollFirst() == null;
+  }
+
+  @Test
+  public void testSameOrderAsStaticQueue() {
+    Random r = new Random(42);
+    BucketPriorityQueue bq = new BucketPriorityQueue(100);
+    StaticPriorityQueue sq = new StaticPriorityQueue(createConfig(100));
+
+    int id = 0;
+    for (int i=0; i<10000; i++){
+      if (r.nextInt(3) > 0){
+        int v = r.nextInt(20);
+        bq.add(new PrioritizedState(id, v));
+        sq.add(new PrioritizedState(id, v));
+        id++;
+      } else {
+        PrioritizedState s1 = bq.pollFirst();
+        PrioritizedState s2 = sq.pollFirst();
+        assert (s1 == null) ? (s2 == null) : (s1.equals(s2));
+      }
+      assert bq.size() == sq.size();
+    }
+  }
+
+  static gov.nasa.jpf.Config createConfig (int limit){
+    return new gov.nasa.jpf.Config( new String[] { "+search.heuristic.queue_limit=" + limit });
+  }
+
+  //--- performance section
+
+  static final int NROUNDS = 200;
+  static final int NSTATES = 50000;
+  static final int LIMIT = 20000;
+
+  // a BFS like workload - values are mostly increasing depths
+  static void runWorkload (PrioritizedStateQueue q){
+    Random r = new Random(0);
+    int id = 0;
+
+    for (int j=0; j<NROUNDS; j++){
+      q.clear();
+      int depth = 0;
+      for (int i=0; i<NSTATES; i++){
+        q.add(new PrioritizedState(id++, depth + r.nextInt(3)));
+        if ((i % 3) == 0){
+          PrioritizedState s = q.pollFirst();
+          depth = s.getPriority();
+        }
+      }
+    }
+  }
+
+  public static void evalStaticPriorityQueue() {
+    StaticPriorityQueue q = new StaticPriorityQueue(createConfig(LIMIT));
+
+    long t1 = System.currentTimeMillis();
+    runWorkload(q);
+    long t2 = System.currentTimeMillis();
+    System.out.println("StaticPriorityQueue: " + (t2-t1));
+  }
+
+  public static void evalBucketPriorityQueue() {
+    BucketPriorityQueue q = new BucketPriorityQueue(LIMIT);
+
+    long t1 = System.currentTimeMillis();
+    runWorkload(q);
+    long t2 = System.currentTimeMillis();
+    System.out.println("BucketPriorityQueue: " + (t2-t1));
+  }
+}
@@ -0,0 +1,174 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.JPFException;
+import gov.nasa.jpf.util.FileUtils;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * unit test for the external memory BFS frontier
+ */
+public class DiskFrontierTest extends TestJPF {
+
+  public static void main (String[] args){
+    runTestsOfThisClass(args);
+  }
+
+  static File getBaseDir(){
+    return new File(System.getProperty("java.io.tmpdir"), "jpf-bfs-test");
+  }
+
+  @Test
+  public void testDuplicates() {
+    DiskFrontier f = new DiskFrontier(getBaseDir(), 4);
+
+    try {
+      // level 1, with duplicates in the same and in different runs
+      long[] fps = { 5, 3, 5, 1, 3, 7, 1, 9, 3 };
+      for (int i=0; i<fps.length; i++){
+        f.add(fps[i], new int[] { 1, i });
+      }
+      assert f.getNumberOfRuns() == 2;
+
+      assert f.nextLevel() == 5;
+      assert f.getNumberOfVisitedStates() == 5;
+
+      long nextFp = 1;
+      int[] path;
+      int n = 0;
+      while ((path = f.next()) != null){
+        assert path.length == 2;
+        n++;
+
+        // level 2, partly revisiting level 1 states
+        f.add(nextFp, new int[] { 1, path[1], 1, 0 });
+        nextFp += 2;
+      }
+      assert n == 5;
+
+      // 1,3,5,7,9 are all visited
+      assert f.nextLevel() == 0;
+      assert f.getNumberOfVisitedStates() == 5;
+
+    } finally {
+      f.dispose();
+    }
+
+    assert !f.getDir().exists();
+  }
+
+  @Test
+  public void testRandomLevels() {
+    Random r = new Random(42);
+    DiskFrontier f = new DiskFrontier(getBaseDir(), 100);
+    HashSet<Long> visited = new HashSet<Long>();
+
+    try {
+      for (int level=0; level<5; level++){
+        int nNew = 0;
+        for (int i=0; i<1000; i++){
+          long fp = r.nextInt(3000);
+          int[] path = { level, i };
+          f.add(fp, path);
+          if (visited.add(fp)){
+            nNew++;
+          }
+        }
+
+        assert f.nextLevel() == nNew;
+        assert f.getNumberOfVisitedStates() == visited.size();
+
+        int n = 0;
+        int[] path;
+        while ((path = f.next()) != null){
+          assert path[0] == level;
+          n++;
+        }
+        assert n == nNew;
+      }
+
+    } finally {
+      f.dispose();
+    }
+  }
+
+  @Test
+  public void testBoundedFanIn() {
+    Random r = new Random(42);
+    DiskFrontier f = new DiskFrontier(getBaseDir(), 10, 3);
+    HashSet<Long> visited = new HashSet<Long>();
+
+    try {
+      for (int level=0; level<3; level++){
+        int nNew = 0;
+        for (int i=0; i<500; i++){
+          long fp = r.nextInt(1500);
+          f.add(fp, new int[] { level, i });
+          if (visited.add(fp)){
+            nNew++;
+          }
+        }
+        assert f.getNumberOfRuns() == 50;
+
+        assert f.nextLevel() == nNew;
+        assert f.getNumberOfVisitedStates() == visited.size();
+        assert f.getNumberOfRuns() == 0;
+
+        int n = 0;
+        while (f.next() != null){
+          n++;
+        }
+        assert n == nNew;
+      }
+
+      // 50 runs -> 24 passes of 3 each level, until there are 3 left
+      assert f.getNumberOfMergePasses() == 3*24;
+
+    } finally {
+      f.dispose();
+    }
+  }
+
+  @Test
+  public void testNonPrivateDir() {
+    File dir = new File(getBaseDir(), "shared");
+    dir.mkdirs();
+
+    try {
+      // not supported on all file systems
+      if (dir.setWritable(true, false) && !FileUtils.isPrivate(dir)){
+        try {
+          new DiskFrontier(dir, 10);
+          assert false : "DiskFrontier used non-private dir";
+        } catch (JPFException x){
+          // expected
+        }
+      }
+    } finally {
+      dir.delete();
+    }
+  }
+}
@@ -0,0 +1,102 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.search.heuristic;
+
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * unit test for the memory bounded SMA* queue
+ */
+public class SMAStarQueueTest extends TestJPF {
+
+  public static void main (String[] args){
+    runTestsOfThisClass(args);
+  }
+
+  @Test
+  public void testForgetAndRegenerate() {
+    SMAStarQueue q = new SMAStarQueue(3);
+
+    PrioritizedState root = new PrioritizedState(0, 0);
+    q.add(root);
+    assert q.pollFirst() == root;
+
+    // expand root
+    q.add(new PrioritizedState(1, 5));
+    q.add(new PrioritizedState(2, 3));
+    assert q.getNumberOfForgottenStates() == 0;
+    q.add(new PrioritizedState(3, 7));
+
+    // the worst leaf was forgotten, the root got re-queued with its value
+    assert q.getNumberOfForgottenStates() == 1;
+    assert q.isForgotten(3);
+    assert q.getNumberOfRetainedStates() == 3;
+    assert q.size() == 3;
+
+    // expand 2
+    PrioritizedState s = q.pollFirst();
+    assert s.getStateId() == 2;
+    q.add(new PrioritizedState(4, 4));
+
+    assert q.isForgotten(1);
+    assert q.getNumberOfRetainedStates() == 3;
+
+    // expand 4, which has no children
+    s = q.pollFirst();
+    assert s.getStateId() == 4;
+
+    // this releases 4 and 2, and re-opens the root with the backed up value
+    s = q.pollFirst();
+    assert s == root;
+    assert q.getNumberOfRetainedStates() == 1;
+    assert q.size() == 0;
+
+    // regenerate the forgotten children of the root
+    q.add(new PrioritizedState(1, 5));
+    q.add(new PrioritizedState(3, 7));
+    assert !q.isForgotten(1);
+    assert !q.isForgotten(3);
+    assert q.getNumberOfRegeneratedStates() == 2;
+
+    assert q.pollFirst().getStateId() == 1;
+    assert q.pollFirst().getStateId() == 3;
+    assert q.pollFirst() == null;
+    assert q.getNumberOfRetainedStates() == 0;
+  }
+
+  @Test
+  public void testNoLimit() {
+    SMAStarQueue q = new SMAStarQueue(Integer.MAX_VALUE);
+
+    q.add(new PrioritizedState(0, 0));
+    q.pollFirst();
+    for (int i=1; i<100; i++){
+      q.add(new PrioritizedState(i, 100-i));
+    }
+    assert q.getNumberOfForgottenStates() == 0;
+    assert !q.isQueueLimitReached();
+
+    for (int i=99; i>0; i--){
+      assert q.pollFirst().getStateId() == i;
+    }
+    assert q.pollFirst() == null;
+  }
+}
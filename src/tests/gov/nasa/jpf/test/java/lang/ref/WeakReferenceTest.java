@@ -71,6 +71,57 @@ public class WeakReferenceTest extends TestJPF
       testGCClearsRef();
    }
    
+   @Test
+   public void testIncrementalGCClearsDroppedRef()
+   {
+      WeakReference<Target> ref;
+
+      if (verifyNoPropertyViolation("+vm.gc.incremental=true"))
+      {
+         ref = new WeakReference<Target>(new Target());
+
+         Verify.breakTransition(); // no System.gc(), the dropped reference has to trigger it
+
+         assertNull(ref.get());
+      }
+   }
+
+   @Test
+   public void testIncrementalGCKeepsLocalRef()
+   {
+      WeakReference<Target> ref;
+      Target target;
+
+      if (verifyNoPropertyViolation("+vm.gc.incremental=true"))
+      {
+         target = new Target();
+         ref    = new WeakReference<Target>(target);
+
+         Verify.breakTransition();
+
+         assertSame(target, ref.get());
+      }
+   }
+
+   @Test
+   public void testParallelMarkClearsRef()
+   {
+      WeakReference<Target> ref;
+      Target target;
+
+      if (verifyNoPropertyViolation("+vm.gc.parallel_min_objects=0", "+vm.gc.parallel_workers=4"))
+      {
+         target = new Target();
+         ref    = new WeakReference<Target>(new Target());
+         WeakReference<Target> ref2 = new WeakReference<Target>(target);
+
+         forceGC();
+
+         assertNull(ref.get());
+         assertSame(target, ref2.get());
+      }
+   }
+
    private static void forceGC()
    {
       System.gc();         // Mark that GC is needed
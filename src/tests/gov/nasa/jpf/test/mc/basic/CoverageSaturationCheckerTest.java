@@ -0,0 +1,50 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for the CoverageSaturationChecker listener
+ */
+public class CoverageSaturationCheckerTest extends TestJPF {
+
+  static final String LISTENER = "+listener=.listener.CoverageSaturationChecker";
+
+  int n;
+
+  @Test
+  public void testSaturatedLoop (){
+    // this would not terminate without the listener, since each iteration is
+    // a new state, but there is no new code to cover after the first one
+    if (verifyNoPropertyViolation(LISTENER, "+saturation.min_time=500",
+                                  "+saturation.window=100", "+saturation.count_states=false")){
+      while (true){
+        if (Verify.getBoolean()){
+          n++;
+        } else {
+          n += 2;
+        }
+      }
+    }
+  }
+}
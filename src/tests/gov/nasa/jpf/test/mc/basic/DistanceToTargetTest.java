@@ -0,0 +1,141 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.jvm.ClassInfo;
+import gov.nasa.jpf.jvm.MethodInfo;
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for the DistanceToTarget heuristic
+ */
+public class DistanceToTargetTest extends TestJPF {
+
+  static final String SEARCH_OPT = "+search.class=.search.heuristic.DistanceToTarget";
+  static final String BFS_OPT = "+search.class=.search.heuristic.BFSHeuristic";
+  static final String STAT_OPT = "+report.statistics=true";
+
+  static void deep (int n){
+    if (n > 0){
+      deep(n-1);
+    }
+  }
+
+  static void check (int a, int b){
+    assert (a != 3 || b != 1) : "gotcha";
+  }
+
+  @Test
+  public void testAssertTarget(){
+    if (verifyAssertionError( SEARCH_OPT, "+search.heuristic.target=assert")){
+      int a = Verify.getInt(0, 5);
+      if (a == 0){
+        deep(10);
+      }
+      int b = Verify.getInt(0, 3);
+      check(a, b);
+    }
+  }
+
+  @Test
+  public void testMethodTarget(){
+    if (verifyAssertionError( SEARCH_OPT, "+search.heuristic.target=gov.nasa.jpf.test.mc.basic.DistanceToTargetTest.check")){
+      int a = Verify.getInt(0, 5);
+      int b = Verify.getInt(0, 3);
+      check(a, b);
+    }
+  }
+
+  @Test
+  public void testNoTargetHit(){
+    if (verifyNoPropertyViolation( SEARCH_OPT, "+search.heuristic.target=assert")){
+      int a = Verify.getInt(0, 3);
+      check(a, 0);
+    }
+  }
+
+  //--- the heuristic has to find the error expanding fewer states than BFS
+
+  // only the middle choice of 'a' leads to the assert, i.e. BFS has to expand
+  // other states of the same level first, regardless of its order. The
+  // heuristic goes straight to the branch that can reach the assert
+  public void findTarget (){
+    int a = Verify.getInt(0, 8);
+    if (a == 4){
+      int b = Verify.getInt(0, 4);
+      check(a-1, b-1);
+    } else {
+      Verify.getInt(0, 4);
+    }
+  }
+
+  // the number of states that were taken from the queue and expanded
+  long getExpandedStates (String... args){
+    JPF jpf = assertionError(args);
+    assert jpf.getSearchErrors().size() == 1 : "no unique error found";
+    Statistics stat = jpf.getReporter().getStatistics();
+    assert stat != null : "no statistics";
+    return stat.restored;
+  }
+
+  void checkFewerStatesThanBFS (String target){
+    long nDirected = getExpandedStates(SEARCH_OPT, STAT_OPT, "+search.heuristic.target=" + target,
+                               "gov.nasa.jpf.util.test.TestJPFHelper", getClass().getName(), "findTarget");
+    long nBFS = getExpandedStates(BFS_OPT, STAT_OPT,
+                               "gov.nasa.jpf.util.test.TestJPFHelper", getClass().getName(), "findTarget");
+
+    System.out.println("expanded states DistanceToTarget: " + nDirected + ", BFSHeuristic: " + nBFS);
+    assert nDirected < nBFS : "DistanceToTarget does not expand fewer states than BFSHeuristic";
+  }
+
+  @Test
+  public void testAssertTargetFewerStatesThanBFS (){
+    if (!isJPFRun()){
+      checkFewerStatesThanBFS("assert");
+    }
+  }
+
+  @Test
+  public void testMethodTargetFewerStatesThanBFS (){
+    if (!isJPFRun()){
+      checkFewerStatesThanBFS("gov.nasa.jpf.test.mc.basic.DistanceToTargetTest.check");
+    }
+  }
+
+  @Test
+  public void testLazyCode (){
+    if (!isJPFRun()){
+      // the heuristic must not force linking code that doesn't get executed
+      getExpandedStates(SEARCH_OPT, STAT_OPT, "+search.heuristic.target=assert", "+vm.lazy_code=true",
+                        "gov.nasa.jpf.util.test.TestJPFHelper", getClass().getName(), "findTarget");
+
+      ClassInfo ci = ClassInfo.tryGetResolvedClassInfo(getClass().getName());
+      assertTrue("SUT class not loaded", ci != null);
+      MethodInfo mi = ci.getMethod("deep(I)V", false);
+      assertTrue("method not found", mi != null);
+      assertFalse("DistanceToTarget linked a method that was not executed", mi.isLinked());
+      assertTrue(ci.getMethod("check(II)V", false).isLinked());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.search.FastSimulation;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for the stateless FastSimulation
+ */
+public class FastSimulationTest extends TestJPF {
+
+  static final String SEARCH_OPT = "+search.class=.search.FastSimulation";
+
+  @Test
+  public void testNumberOfRuns(){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation( SEARCH_OPT, "+search.sim.runs=20")){
+      Verify.getInt(0, 5);
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assert Verify.getCounter(0) == 20;
+    }
+  }
+
+  @Test
+  public void testFailure(){
+    if (verifyAssertionError( SEARCH_OPT, "+search.sim.runs=1000")){
+      int a = Verify.getInt(0, 9);
+      int b = Verify.getInt(0, 9);
+      assert (a != 4 || b != 2) : "gotcha";
+    }
+  }
+
+  @Test
+  public void testReplay(){
+    // find the first run seed of worker 0 that hits a=7 (host VM only, the
+    // FastSimulation class is not visible to the SUT)
+    long seed = 0;
+    if (!isJPFRun()){
+      for (int i=0; ; i++){
+        seed = FastSimulation.getRunSeed(42, 0, i);
+        if (new java.util.Random(seed).nextInt(10) == 7){
+          break;
+        }
+      }
+    }
+
+    if (verifyAssertionError( SEARCH_OPT, "+search.sim.replay=" + seed)){
+      int a = Verify.getInt(0, 9);
+      assert a != 7 : "gotcha";
+    }
+  }
+}
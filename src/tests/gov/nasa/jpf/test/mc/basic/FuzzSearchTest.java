@@ -0,0 +1,120 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.mc.basic;
+
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.util.FileUtils;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * regression test for the coverage guided FuzzSearch
+ */
+public class FuzzSearchTest extends TestJPF {
+
+  static final String SEARCH_OPT = "+search.class=.search.FuzzSearch";
+
+  @Test
+  public void testNestedChoices(){
+    // each level needs the right choice to get to new branches
+    if (verifyAssertionError( SEARCH_OPT, "+search.fuzz.max_runs=100000")){
+      int a = Verify.getInt(0, 9);
+      if (a == 3){
+        int b = Verify.getInt(0, 9);
+        if (b == 7){
+          int c = Verify.getInt(0, 9);
+          if (c == 1){
+            assert false : "gotcha";
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMaxRuns(){
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyNoPropertyViolation( SEARCH_OPT, "+search.fuzz.max_runs=10")){
+      Verify.getInt(0, 100);
+      Verify.incrementCounter(0);
+    }
+
+    if (!isJPFRun()){
+      assert Verify.getCounter(0) == 10;
+    }
+  }
+
+  static byte[] getSeqData (int... values) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bos);
+    for (int v : values){
+      out.writeInt(v);
+    }
+    out.close();
+    return bos.toByteArray();
+  }
+
+  @Test
+  public void testCorruptedCorpus() throws IOException {
+    File dir = new File(System.getProperty("java.io.tmpdir"), "jpf-fuzz-test");
+
+    if (!isJPFRun()){
+      FileUtils.removeRecursively(dir);
+      dir.mkdirs();
+
+      // entries of other workers we have to skip
+      FileUtils.setContents(new File(dir, "x-0.seq"), getSeqData(-1));
+      FileUtils.setContents(new File(dir, "x-1.seq"), getSeqData(Integer.MAX_VALUE, 1, 2));
+      FileUtils.setContents(new File(dir, "x-2.seq"), getSeqData(2, 1, 2));
+      FileUtils.setContents(new File(dir, "x-3.seq"), getSeqData(1, 5, 2));
+      FileUtils.setContents(new File(dir, "x-4.seq"), getSeqData(1, 0, 0));
+      FileUtils.setContents(new File(dir, "x-5.seq"), getSeqData(1, -1, 3));
+      // and a valid one
+      FileUtils.setContents(new File(dir, "x-6.seq"), getSeqData(1, 42, 101));
+
+      Verify.resetCounter(0);
+    }
+
+    try {
+      if (verifyNoPropertyViolation( SEARCH_OPT, "+search.fuzz.max_runs=10",
+                                     "+search.fuzz.corpus_dir=" + dir.getPath())){
+        Verify.getInt(0, 100);
+        Verify.incrementCounter(0);
+      }
+
+      if (!isJPFRun()){
+        assert Verify.getCounter(0) == 10;
+      }
+
+    } finally {
+      if (!isJPFRun()){
+        FileUtils.removeRecursively(dir);
+      }
+    }
+  }
+}
@@ -19,7 +19,9 @@
 
 package gov.nasa.jpf.test.mc.basic;
 
+import gov.nasa.jpf.ListenerAdapter;
 import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.search.Search;
 import gov.nasa.jpf.util.test.TestJPF;
 
 import org.junit.Test;
@@ -102,4 +104,47 @@ public class SearchMultipleTest extends TestJPF {
       assertTrue( Verify.getCounter(0) == 2);
     }
   }
+
+  public static class ErrorCounter extends ListenerAdapter {
+    static int nErrors;
+    static int nDuplicates;
+
+    public void searchFinished (Search search){
+      nErrors = search.getNumberOfErrors();
+      nDuplicates = search.getNumberOfDuplicateErrors();
+    }
+  }
+
+  static void failHere (){
+    assert false : "here";
+  }
+
+  static void failThere (){
+    assert false : "there";
+  }
+
+  @Test
+  public void testDedup() {
+    if (!isJPFRun()){
+      Verify.resetCounter(0);
+    }
+
+    if (verifyAssertionError("+search.multiple_errors", "+search.multiple_errors.dedup",
+                             "+listener=.test.mc.basic.SearchMultipleTest$ErrorCounter")){
+      int i = Verify.getInt(0, 4);
+      Verify.incrementCounter(0);
+
+      if (i < 3){
+        failHere();
+      } else {
+        failThere();
+      }
+    }
+
+    if (!isJPFRun()){
+      assertTrue( Verify.getCounter(0) == 5);
+      assertTrue("wrong number of errors: " + ErrorCounter.nErrors, ErrorCounter.nErrors == 2);
+      assertTrue("wrong number of duplicates: " + ErrorCounter.nDuplicates, ErrorCounter.nDuplicates == 3);
+    }
+  }
 }
@@ -278,4 +278,32 @@ public class CrossingTest extends TestJPF {
       run();
     }
   }
+
+  @Test public void testBFSHeuristicReplay() {
+    // a tiny snapshot cache, so that most states have to be replayed
+    if (verifyAssertionError("+search.class=gov.nasa.jpf.search.heuristic.BFSHeuristic",
+                             "+search.heuristic.replay=true",
+                             "+search.heuristic.replay.cache_size=2")){
+      run();
+    }
+  }
+
+  @Test public void testExternalBFS() {
+    // a tiny buffer, so that each level gets merged from several runs
+    if (verifyAssertionError("+search.class=gov.nasa.jpf.search.heuristic.ExternalBFSearch",
+                             "+vm.storage.class=gov.nasa.jpf.jvm.FingerprintStateSet",
+                             "+search.external_bfs.buffer_size=16")){
+      run();
+    }
+  }
+
+  @Test public void testSMAStar() {
+    // few enough retained states so that we have to regenerate
+    if (verifyAssertionError("+search.class=gov.nasa.jpf.search.heuristic.BFSHeuristic",
+                             "+search.heuristic.astar=true",
+                             "+search.heuristic.queue.class=gov.nasa.jpf.search.heuristic.SMAStarQueue",
+                             "+search.heuristic.sma.max_states=20")){
+      run();
+    }
+  }
 }
@@ -0,0 +1,92 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.test.mc.threads;
+
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.search.IterativeContextBounding;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for the IterativeContextBounding search
+ */
+public class IterativeContextBoundingTest extends TestJPF {
+
+  static final String SEARCH_OPT = "+search.class=.search.IterativeContextBounding";
+
+  public static class A implements Runnable {
+    static int d = 0;  // shared field
+
+    public void run(){
+      int s = 0;
+      for (int i=1; i<=5; i++){ // use loop var to make sure there always is a state change
+        s = d*10 + i;  // a shared GETSTATIC scheduling point
+      }
+
+      assert s/10 != 0 : "gotcha";
+    }
+  }
+
+  static void runA (){
+    Thread t = new Thread(new A());
+    t.start();
+
+    for (int i=0; i<10; i++){
+      A.d = i; // that's a PUTSTATIC scheduling point per cycle
+    }
+  }
+
+  static int errorPreemptions; // just outside JPF
+
+  public static class Listener extends ListenerAdapter {
+    public void propertyViolated (Search search){
+      IterativeContextBounding icb = (IterativeContextBounding)search;
+      errorPreemptions = icb.getErrorPreemptions(search.getNumberOfErrors()-1);
+    }
+  }
+
+  @Test
+  public void testMinimalPreemptions(){
+    String listener = null;
+    if (!isJPFRun()){
+      errorPreemptions = -1;
+      listener = "+listener=" + Listener.class.getName();
+    }
+
+    // we have to preempt main before it sets A.d to 1
+    if (verifyAssertionError( SEARCH_OPT, listener)){
+      runA();
+    }
+
+    if (!isJPFRun()){
+      assertTrue("error should require one preemption: " + errorPreemptions,
+                 errorPreemptions == 1);
+    }
+  }
+
+  @Test
+  public void testBound(){
+    if (verifyNoPropertyViolation( SEARCH_OPT, "+search.icb.max_bound=0")){
+      runA();
+    }
+  }
+}
@@ -0,0 +1,218 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+package gov.nasa.jpf.test.vm.basic;
+
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test for CompactHeap, which shares the Monitor and referencing
+ * thread set of new objects. Besides running the SUTs with CompactHeap, we
+ * check that we get the same state space as with the default heap
+ */
+public class CompactHeapTest extends TestJPF {
+
+  static final String HEAP_ARG = "+vm.heap.class=gov.nasa.jpf.jvm.CompactHeap";
+
+  // does not canonicalize references, i.e. states only match if objects got
+  // the same references
+  static final String SERIALIZER_ARG = "+vm.serializer.class=gov.nasa.jpf.jvm.serialize.FilteringSerializer";
+
+  static class Node {
+    int id;
+    Node next;
+
+    Node (int id, Node next){
+      this.id = id;
+      this.next = next;
+    }
+  }
+
+  static Node list;
+  static Object keep;
+
+  //--- the SUTs
+
+  public void allocate (){
+    Node head = null;
+    for (int i=0; i<1000; i++){
+      head = new Node(i, head);
+    }
+
+    int[][] a = new int[10][10];
+    for (int i=0; i<a.length; i++){
+      a[i][i] = i;
+    }
+    String s = "x" + a[3][3];
+
+    for (int i=999; i>=0; i--){
+      assertEquals(i, head.id);
+      head = head.next;
+    }
+    assertTrue(head == null);
+    assertEquals(9, a[9][9]);
+    assertEquals("x3", s);
+  }
+
+  public void lockAlongPaths (){
+    Node o = new Node(0, null);
+    Node p = new Node(1, null);
+
+    if (Verify.getInt(0, 1) == 0){
+      synchronized (o){
+        o.id = 42;
+        // the monitor of 'o' was the shared empty one, 'p' still has it
+        assertTrue(Thread.holdsLock(o));
+        assertFalse(Thread.holdsLock(p));
+
+        Verify.getBoolean(); // store a state while we hold the lock
+      }
+
+    } else {
+      // we backtracked, nothing of the other path is visible
+      assertEquals(0, o.id);
+      assertFalse(Thread.holdsLock(o));
+      assertFalse(Thread.holdsLock(p));
+
+      synchronized (p){
+        assertTrue(Thread.holdsLock(p));
+        assertFalse(Thread.holdsLock(o));
+      }
+    }
+  }
+
+  static void makeGarbage (){
+    for (int i=0; i<100; i++){
+      keep = new Node(i, null);
+    }
+  }
+
+  public void garbageAlongPaths (){
+    if (Verify.getBoolean()){
+      makeGarbage();
+    }
+    keep = null;
+
+    Verify.getBoolean(); // the garbage is collected before we store this state
+
+    keep = new Node(-1, null);
+    Verify.getBoolean();
+  }
+
+  static class Worker extends Thread {
+    public void run (){
+      synchronized (CompactHeapTest.class){
+        list = new Node(list.id + 1, list);
+      }
+    }
+  }
+
+  public void shareBetweenThreads (){
+    list = new Node(0, null);
+
+    Worker w1 = new Worker();
+    Worker w2 = new Worker();
+    w1.start();
+    w2.start();
+
+    synchronized (CompactHeapTest.class){
+      list = new Node(list.id + 1, list);
+    }
+
+    try {
+      w1.join();
+      w2.join();
+    } catch (InterruptedException ix){
+      fail("unexpected interrupt");
+    }
+
+    assertEquals(3, list.id);
+  }
+
+  //--- the tests
+
+  long[] getStateCounts (String sutMethod, String... args){
+    String[] a = new String[args.length + 4];
+    System.arraycopy(args, 0, a, 0, args.length);
+    int i = args.length;
+    a[i++] = "+report.statistics=true";
+    a[i++] = "gov.nasa.jpf.util.test.TestJPFHelper";
+    a[i++] = getClass().getName();
+    a[i++] = sutMethod;
+
+    JPF jpf = noPropertyViolation(a);
+    Statistics stat = jpf.getReporter().getStatistics();
+    assertTrue("no statistics", stat != null);
+    return new long[] { stat.newStates, stat.visitedStates };
+  }
+
+  void checkSameStates (String sutMethod, String... args){
+    long[] nDefault = getStateCounts(sutMethod, args);
+
+    String[] a = new String[args.length + 1];
+    System.arraycopy(args, 0, a, 0, args.length);
+    a[args.length] = HEAP_ARG;
+    long[] nCompact = getStateCounts(sutMethod, a);
+
+    assertEquals("different number of new states", nDefault[0], nCompact[0]);
+    assertEquals("different number of visited states", nDefault[1], nCompact[1]);
+  }
+
+  @Test
+  public void testAllocation (){
+    if (verifyNoPropertyViolation(HEAP_ARG)){
+      allocate();
+    }
+  }
+
+  @Test
+  public void testRestore (){
+    if (verifyNoPropertyViolation(HEAP_ARG)){
+      lockAlongPaths();
+    }
+  }
+
+  @Test
+  public void testRestoreEquivalence (){
+    if (!isJPFRun()){
+      checkSameStates("lockAlongPaths");
+      checkSameStates("lockAlongPaths", SERIALIZER_ARG);
+    }
+  }
+
+  @Test
+  public void testGCEquivalence (){
+    if (!isJPFRun()){
+      checkSameStates("garbageAlongPaths");
+      checkSameStates("garbageAlongPaths", SERIALIZER_ARG);
+    }
+  }
+
+  @Test
+  public void testThreadEquivalence (){
+    if (!isJPFRun()){
+      checkSameStates("shareBetweenThreads");
+    }
+  }
+}
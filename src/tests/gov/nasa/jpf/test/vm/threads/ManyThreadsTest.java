@@ -0,0 +1,195 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+
+package gov.nasa.jpf.test.vm.threads;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.jvm.Verify;
+import gov.nasa.jpf.report.Statistics;
+import gov.nasa.jpf.util.test.TestJPF;
+
+import org.junit.Test;
+
+/**
+ * regression test and stress benchmark for SUTs that create more threads or
+ * objects than the default heap can address (see ClusterMappingHeap)
+ */
+public class ManyThreadsTest extends TestJPF {
+
+  static final String HEAP_ARG = "+vm.heap.class=gov.nasa.jpf.jvm.ClusterMappingHeap";
+
+  public static void main (String[] args){
+
+    // our stress benchmark
+    if (args.length >= 1 && args[0].equals("evalManyThreads")){
+      evalManyThreads( (args.length > 1) ? Integer.parseInt(args[1]) : 1000);
+      return;
+    }
+
+    // the regression tests
+    runTestsOfThisClass(args);
+  }
+
+  static class Worker extends Thread {
+    int[] data;
+
+    Worker (int n){
+      data = new int[n];
+    }
+
+    public void run(){
+      Object[] garbage = new Object[8];
+      for (int i=0; i<garbage.length; i++){
+        garbage[i] = new Object();
+      }
+
+      for (int i=0; i<data.length; i++){
+        data[i] = i;
+      }
+    }
+  }
+
+  static int spawnSequentially (int nThreads){
+    int sum = 0;
+
+    for (int i=0; i<nThreads; i++){
+      Worker w = new Worker(4);
+      w.start();
+      try {
+        w.join();
+      } catch (InterruptedException ix){
+        throw new RuntimeException("unexpected interrupt");
+      }
+      sum += w.data[3];
+    }
+
+    return sum;
+  }
+
+  @Test
+  public void testMoreThreadsThanDefaultClusters(){
+    if (verifyNoPropertyViolation(HEAP_ARG, "+vm.heap.cluster_bits=20",
+                                  "+cg.threads.break_start=false")){
+      int n = 300; // the default heap can only address 128 threads
+      int sum = spawnSequentially(n);
+      assert sum == n*3 : "wrong thread results: " + sum;
+    }
+  }
+
+  @Test
+  public void testClusterOverflow(){
+    if (verifyNoPropertyViolation(HEAP_ARG, "+vm.heap.cluster_bits=8")){
+      // 256 objects per cluster, so we need several clusters for this thread
+      Object[] a = new Object[1000];
+      for (int i=0; i<a.length; i++){
+        a[i] = new Integer(i);
+      }
+
+      for (int i=0; i<a.length; i++){
+        assert ((Integer)a[i]).intValue() == i : "wrong object at: " + i;
+      }
+    }
+  }
+
+  @Test
+  public void testClusterRecycling(){
+    if (verifyNoPropertyViolation(HEAP_ARG, "+vm.heap.cluster_bits=24",
+                                  "+cg.threads.break_start=false")){
+      // there are only 128 clusters of 16M, so we have to recycle the ones of
+      // terminated threads once their objects are collected
+      int n = 200;
+      int sum = spawnSequentially(n);
+      assert sum == n*3 : "wrong thread results: " + sum;
+    }
+  }
+
+  static Object keep;
+
+  public void allocateAlongTwoPaths (){
+    // fill more than one cluster, and then free the objects again
+    Object[] a = new Object[300];
+    for (int i=0; i<a.length; i++){
+      a[i] = new Object();
+    }
+    a = null;
+
+    Verify.getBoolean(); // the garbage is collected before we store this state
+
+    // both paths have to allocate this object in the same cluster, regardless
+    // of whether we got here by backtracking or not
+    keep = new Object();
+
+    Verify.getBoolean();
+  }
+
+  // FilteringSerializer does not canonicalize references, i.e. states only
+  // match if the objects got the same references along both paths
+  long getNewStates (String... heapArgs){
+    String[] args = new String[heapArgs.length + 5];
+    System.arraycopy(heapArgs, 0, args, 0, heapArgs.length);
+    int i = heapArgs.length;
+    args[i++] = "+report.statistics=true";
+    args[i++] = "+vm.serializer.class=gov.nasa.jpf.jvm.serialize.FilteringSerializer";
+    args[i++] = "gov.nasa.jpf.util.test.TestJPFHelper";
+    args[i++] = getClass().getName();
+    args[i++] = "allocateAlongTwoPaths";
+
+    JPF jpf = noPropertyViolation(args);
+    Statistics stat = jpf.getReporter().getStatistics();
+    assertTrue("no statistics", stat != null);
+    return stat.newStates;
+  }
+
+  @Test
+  public void testAllocationIsPathIndependent (){
+    if (!isJPFRun()){
+      long nDefault = getNewStates();
+      long nCluster = getNewStates(HEAP_ARG, "+vm.heap.cluster_bits=8");
+      assertEquals("state after allocation was not matched", nDefault, nCluster);
+    }
+  }
+
+
+  //--- the benchmark section
+
+  public static class Spawner {
+    public static void main (String[] args){
+      int n = Integer.parseInt(args[0]);
+      int sum = spawnSequentially(n);
+      System.out.println("spawned " + n + " threads: " + sum);
+    }
+  }
+
+  static void evalManyThreads (int nThreads){
+    String[] args = { HEAP_ARG,
+                      "+cg.threads.break_start=false",
+                      "+vm.storage.class=null",
+                      Spawner.class.getName(), Integer.toString(nThreads) };
+
+    Config conf = JPF.createConfig(args);
+    JPF jpf = new JPF(conf);
+
+    long t1 = System.currentTimeMillis();
+    jpf.run();
+    long t2 = System.currentTimeMillis();
+
+    System.out.println("ClusterMappingHeap with " + nThreads + " sequential threads: " + (t2 - t1) + " ms");
+  }
+}
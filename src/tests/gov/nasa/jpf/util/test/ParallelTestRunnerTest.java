@@ -0,0 +1,88 @@
+//
+// Copyright (C) 2010 United States Government as represented by the
+// Administrator of the National Aeronautics and Space Administration
+// (NASA).  All Rights Reserved.
+//
+// This software is distributed under the NASA Open Source Agreement
+// (NOSA), version 1.3.  The NOSA has been approved by the Open Source
+// Initiative.  See the file NOSA-1.3-JPF at the top of the distribution
+// directory tree for the complete NOSA document.
+//
+// THE SUBJECT SOFTWARE IS PROVIDED "AS IS" WITHOUT ANY WARRANTY OF ANY
+// KIND, EITHER EXPRESSED, IMPLIED, OR STATUTORY, INCLUDING, BUT NOT
+// LIMITED TO, ANY WARRANTY THAT THE SUBJECT SOFTWARE WILL CONFORM TO
+// SPECIFICATIONS, ANY IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+// A PARTICULAR PURPOSE, OR FREEDOM FROM INFRINGEMENT, ANY WARRANTY THAT
+// THE SUBJECT SOFTWARE WILL BE ERROR FREE, OR ANY WARRANTY THAT
+// DOCUMENTATION, IF PROVIDED, WILL CONFORM TO THE SUBJECT SOFTWARE.
+//
+package gov.nasa.jpf.util.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * regression test for ParallelTestRunner
+ */
+public class ParallelTestRunnerTest extends TestJPF {
+
+  // the test class we run in the workers (has no Test suffix so that it
+  // doesn't get picked up by the test targets)
+  public static class Sample extends TestJPF {
+    @Test
+    public void failing (){
+      System.out.println("@@ failing output");
+      assert false : "expected failure";
+    }
+
+    @Test
+    public void passing (){
+      System.out.println("@@ passing output");
+    }
+
+    @Test
+    public void passingToo (){
+      System.out.println("@@ passingToo output");
+    }
+  }
+
+  @Test
+  public void testJobs (){
+    List<ParallelTestRunner.Job> jobs = ParallelTestRunner.getJobs(Sample.class);
+
+    assert jobs.size() == 3;
+    assert jobs.get(0).mthName.equals("failing");
+    assert jobs.get(1).mthName.equals("passing");
+    assert jobs.get(2).mthName.equals("passingToo");
+  }
+
+  @Test
+  public void testParallelRun (){
+    List<ParallelTestRunner.Job> jobs = ParallelTestRunner.getJobs(Sample.class);
+    ParallelTestRunner runner = new ParallelTestRunner(2);
+
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    PrintStream ps = new PrintStream(buf, true);
+
+    assert !runner.run(jobs, ps);
+
+    assert jobs.get(0).getStatus() == ParallelTestRunner.FAILED;
+    assert jobs.get(1).getStatus() == ParallelTestRunner.PASSED;
+    assert jobs.get(2).getStatus() == ParallelTestRunner.PASSED;
+
+    for (ParallelTestRunner.Job job : jobs){
+      assert job.getOutput().contains("@@ " + job.mthName + " output");
+    }
+
+    // output has to be in job order, regardless of which worker finished first
+    String out = buf.toString();
+    int i0 = out.indexOf("@@ failing output");
+    int i1 = out.indexOf("@@ passing output");
+    int i2 = out.indexOf("@@ passingToo output");
+    assert i0 >= 0 && i0 < i1 && i1 < i2;
+    assert out.contains("tests: 3, failures: 1, errors: 0");
+  }
+}